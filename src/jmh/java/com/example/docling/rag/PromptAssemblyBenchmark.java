@@ -0,0 +1,60 @@
+package com.example.docling.rag;
+
+import com.example.docling.rag.service.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Context and prompt assembly in {@link RagQueryRoute} by number and size of retrieved chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+    
+    @Param({"1", "5", "20"})
+    int chunkCount;
+    
+    @Param({"500", "2000"})
+    int chunkSize;
+    
+    private final RagQueryRoute route = new RagQueryRoute();
+    private List<String> chunks;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            chunks.add(BenchmarkData.document(chunkSize, random));
+        }
+    }
+    
+    @Benchmark
+    public String buildRagPrompt() {
+        // Same context layout as the rag-query-endpoint route
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < chunks.size(); i++) {
+            context.append("Context ").append(i + 1).append(":\n");
+            context.append(chunks.get(i)).append("\n\n");
+        }
+        return route.buildRagPrompt("What are the main topics discussed in the documents?", context.toString());
+    }
+}
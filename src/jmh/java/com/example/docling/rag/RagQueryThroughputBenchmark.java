@@ -0,0 +1,91 @@
+package com.example.docling.rag;
+
+import com.example.docling.rag.config.ChatModelFactory;
+import com.example.docling.rag.config.VectorStoreSettings;
+import com.example.docling.rag.service.BenchmarkData;
+import com.example.docling.rag.service.VectorStoreService;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end throughput of the {@code direct:rag-query} route with the mock embedding and chat models:
+ * query embedding, retrieval, prompt assembly and the langchain4j-chat call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class RagQueryThroughputBenchmark {
+    
+    @Param({"100", "1000"})
+    int documents;
+    
+    @Param({"true", "false"})
+    boolean queryCache;
+    
+    private final AtomicInteger next = new AtomicInteger();
+    private CamelContext context;
+    private ProducerTemplate template;
+    private String[] questions;
+    
+    @Setup
+    public void setUp() throws Exception {
+        VectorStoreSettings settings = new VectorStoreSettings();
+        if (!queryCache) {
+            settings.setQueryEmbeddingCacheSize(0);
+            settings.setRetrievalCacheSize(0);
+        }
+        VectorStoreService vectorStoreService = new VectorStoreService(new InMemoryEmbeddingStore<>(), settings);
+        Random random = new Random(42);
+        for (int i = 0; i < documents; i++) {
+            vectorStoreService.ingestDocument(BenchmarkData.document(4000, random), "document-" + i + ".md");
+        }
+        
+        context = new DefaultCamelContext();
+        context.getRegistry().bind("vectorStoreService", vectorStoreService);
+        context.getRegistry().bind("chatModel", ChatModelFactory.createMockChatModel());
+        context.addService(vectorStoreService, true);
+        context.addRoutes(new RagQueryRoute());
+        context.start();
+        template = context.createProducerTemplate();
+        
+        // A small set of recurring questions, like dashboard and support bot traffic
+        questions = new String[64];
+        for (int i = 0; i < questions.length; i++) {
+            questions[i] = "Question " + i + ": how does the document pipeline handle chunk metadata?";
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        template.stop();
+        context.stop();
+    }
+    
+    @Benchmark
+    public Object directRagQuery() {
+        return template.requestBody("direct:rag-query", questions[next.getAndIncrement() & (questions.length - 1)]);
+    }
+}
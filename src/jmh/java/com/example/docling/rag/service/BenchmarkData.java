@@ -0,0 +1,59 @@
+package com.example.docling.rag.service;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs shared by the benchmarks.
+ */
+public final class BenchmarkData {
+    
+    private static final String[] WORDS = {
+        "camel", "route", "document", "parser", "embedding", "vector", "store", "query", "context",
+        "chunk", "model", "answer", "index", "search", "metadata", "pipeline", "token", "prompt"
+    };
+    
+    private BenchmarkData() {
+    }
+    
+    /**
+     * Markdown-like text of the given length: sentences of 5-20 words, paragraphs of 2-6 sentences
+     * and an occasional heading.
+     */
+    public static String document(int length, Random random) {
+        StringBuilder text = new StringBuilder(length + 200);
+        while (text.length() < length) {
+            if (random.nextInt(8) == 0) {
+                text.append("## ").append(sentence(random, 3)).append("\n\n");
+            }
+            int sentences = 2 + random.nextInt(5);
+            for (int i = 0; i < sentences; i++) {
+                text.append(sentence(random, 5 + random.nextInt(16))).append(". ");
+            }
+            text.append("\n\n");
+        }
+        return text.substring(0, length);
+    }
+    
+    /**
+     * Random vector with components in [-1, 1).
+     */
+    public static float[] vector(int dimension, Random random) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2f - 1f;
+        }
+        return vector;
+    }
+    
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        sentence.setCharAt(0, Character.toUpperCase(sentence.charAt(0)));
+        return sentence.toString();
+    }
+}
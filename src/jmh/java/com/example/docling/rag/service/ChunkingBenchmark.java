@@ -0,0 +1,50 @@
+package com.example.docling.rag.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunking cost by document size, chunk size and overlap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkingBenchmark {
+    
+    @Param({"10000", "100000", "1000000"})
+    int documentSize;
+    
+    @Param({"250", "500", "1000"})
+    int chunkSize;
+    
+    @Param({"0", "50", "100"})
+    int overlap;
+    
+    private String document;
+    
+    @Setup
+    public void setUp() {
+        document = BenchmarkData.document(documentSize, new Random(42));
+    }
+    
+    @Benchmark
+    public List<String> split() {
+        return MarkdownChunker.split(document, chunkSize, overlap);
+    }
+}
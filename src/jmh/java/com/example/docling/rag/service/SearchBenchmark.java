@@ -0,0 +1,98 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.config.VectorStoreSettings;
+import com.example.docling.rag.store.MappedEmbeddingStore;
+import com.example.docling.rag.store.QuantizedVectors;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VectorStoreService#searchRelevantChunks} over mapped stores of 10k to 1M vectors, with the
+ * query caches disabled so every call embeds the query and scans the store.
+ * <p>
+ * Stores are generated once under {@code build/jmh/stores/<size>} and reused by later runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SearchBenchmark {
+    
+    private static final int DIMENSION = 384;
+    private static final int BATCH_SIZE = 10_000;
+    
+    @Param({"10000", "100000", "1000000"})
+    int storeSize;
+    
+    @Param({"none", "int8"})
+    String quantization;
+    
+    @Param({"5"})
+    int maxResults;
+    
+    private VectorStoreService service;
+    private String[] queries;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        QuantizedVectors.Parameters parameters = quantization.equals("none")
+                ? null
+                : new QuantizedVectors.Parameters(QuantizedVectors.Encoding.parse(quantization), 4);
+        Path directory = Paths.get("build", "jmh", "stores", String.valueOf(storeSize));
+        MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, DIMENSION, null, parameters);
+        
+        Random random = new Random(storeSize);
+        for (int first = store.size(); first < storeSize; first += BATCH_SIZE) {
+            int count = Math.min(BATCH_SIZE, storeSize - first);
+            List<Embedding> embeddings = new ArrayList<>(count);
+            List<TextSegment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                embeddings.add(Embedding.from(BenchmarkData.vector(DIMENSION, random)));
+                segments.add(TextSegment.from("Synthetic chunk " + (first + i)));
+            }
+            store.addAll(embeddings, segments);
+        }
+        
+        VectorStoreSettings settings = new VectorStoreSettings();
+        settings.setQueryEmbeddingCacheSize(0);
+        settings.setRetrievalCacheSize(0);
+        service = new VectorStoreService(store, settings);
+        
+        queries = new String[256];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = "What does synthetic chunk " + random.nextInt(storeSize) + " say?";
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        service.stop();
+    }
+    
+    @Benchmark
+    public List<String> searchRelevantChunks() {
+        return service.searchRelevantChunks(queries[next++ & (queries.length - 1)], maxResults);
+    }
+}
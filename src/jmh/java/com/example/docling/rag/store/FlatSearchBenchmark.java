@@ -0,0 +1,84 @@
+package com.example.docling.rag.store;
+
+import com.example.docling.rag.service.BenchmarkData;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact search on the in-memory {@link FlatEmbeddingStore}: scalar against Vector API kernel, on one
+ * thread and split across the common ForkJoin pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FlatSearchBenchmark {
+    
+    private static final int DIMENSION = 384;
+    
+    @Param({"10000", "100000", "500000"})
+    int storeSize;
+    
+    @Param({"scalar", "simd"})
+    String kernel;
+    
+    @Param({"1", "0"})
+    int parallelism;
+    
+    private FlatEmbeddingStore store;
+    private Embedding[] queries;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        store = new FlatEmbeddingStore(DIMENSION,
+                new FlatEmbeddingStore.Parameters(kernel.equals("simd"), parallelism, 16384));
+        Random random = new Random(storeSize);
+        for (int first = 0; first < storeSize; first += 10_000) {
+            int count = Math.min(10_000, storeSize - first);
+            List<Embedding> embeddings = new ArrayList<>(count);
+            List<TextSegment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                embeddings.add(Embedding.from(BenchmarkData.vector(DIMENSION, random)));
+                segments.add(TextSegment.from("Synthetic chunk " + (first + i)));
+            }
+            store.addAll(embeddings, segments);
+        }
+        queries = new Embedding[64];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = Embedding.from(BenchmarkData.vector(DIMENSION, random));
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        store.close();
+    }
+    
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> search() {
+        Embedding query = queries[next++ & (queries.length - 1)];
+        return store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(5).build());
+    }
+}
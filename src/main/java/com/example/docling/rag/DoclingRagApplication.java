@@ -2,6 +2,7 @@ package com.example.docling.rag;
 
 import com.example.docling.rag.config.ChatModelFactory;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import org.apache.camel.main.Main;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,18 +19,8 @@ public class DoclingRagApplication {
     public static void main(String[] args) throws Exception {
         LOG.info("Starting Camel Docling RAG Application...");
         
-        Main main = new Main();
-        
-        // Create and bind chat model
-        ChatModel chatModel = ChatModelFactory.createChatModel();
-        main.bind("chatModel", chatModel);
-        LOG.info("Chat model configured and bound to registry");
+        Main main = createMain(ChatModelFactory.createChatModel(), ChatModelFactory.createStreamingChatModel());
         
-        // Configure the application
-        main.configure().addRoutesBuilder(new DocumentIngestionRoute());
-        main.configure().addRoutesBuilder(new RagQueryRoute());
-        
-        LOG.info("Routes configured successfully");
         LOG.info("HTTP endpoints available:");
         LOG.info("  - POST http://localhost:8080/api/ingest - Upload and ingest documents");
         LOG.info("  - POST http://localhost:8080/api/query - Query the RAG system");
@@ -49,4 +40,25 @@ public class DoclingRagApplication {
         // Start the application
         main.run(args);
     }
+    
+    /**
+     * Create the application with the given chat models bound and its routes configured, ready to run.
+     * Other components, such as a stand-in for {@code docling}, can be bound before it starts.
+     */
+    public static Main createMain(ChatModel chatModel, StreamingChatModel streamingChatModel) {
+        Main main = new Main();
+        
+        // Bind chat models
+        main.bind("chatModel", chatModel);
+        main.bind("streamingChatModel", streamingChatModel);
+        LOG.info("Chat model configured and bound to registry");
+        
+        // Configure the application
+        main.configure().addRoutesBuilder(new DocumentIngestionRoute());
+        main.configure().addRoutesBuilder(new RagQueryRoute());
+        main.configure().addRoutesBuilder(new ShardRoute());
+        
+        LOG.info("Routes configured successfully");
+        return main;
+    }
 }
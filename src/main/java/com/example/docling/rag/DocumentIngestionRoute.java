@@ -1,63 +1,296 @@
 package com.example.docling.rag;
 
+import com.example.docling.rag.config.EmbeddingModelFactory;
+import com.example.docling.rag.config.EmbeddingStoreFactory;
+import com.example.docling.rag.config.RagProperties;
+import com.example.docling.rag.config.VectorStoreSettings;
+import com.example.docling.rag.metrics.Histogram;
+import com.example.docling.rag.metrics.MetricsRegistry;
+import com.example.docling.rag.service.CollectionManager;
+import com.example.docling.rag.service.IngestJob;
+import com.example.docling.rag.service.IngestJobQueue;
+import com.example.docling.rag.service.IngestResult;
+import com.example.docling.rag.service.PageRangeParser;
+import com.example.docling.rag.service.ParseCache;
+import com.example.docling.rag.service.StageExecutors;
+import com.example.docling.rag.service.StoreCompactor;
+import com.example.docling.rag.service.UploadSpool;
 import com.example.docling.rag.service.VectorStoreService;
+import com.example.docling.rag.store.PartitionFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
+import org.apache.camel.InvalidPayloadException;
+import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.docling.DoclingConfiguration;
+import org.apache.camel.component.seda.SedaEndpoint;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.support.service.ServiceSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
 /**
  * Camel route for ingesting documents using the docling component.
  * This route watches a directory for new documents, parses them using docling,
  * and stores the extracted text in a vector store.
+ * <p>
+ * Files from the watched directory go through a staged pipeline (parse, chunk, embed, index) connected
+ * by bounded SEDA queues, so each stage runs with its own concurrency and a full queue blocks the
+ * previous stage instead of buffering documents on the heap.
+ * <p>
+ * HTTP uploads are spooled to a file instead of being buffered in the heap, and the parsed text is chunked
+ * as it is read. Uploads are ingested on the request by default. With {@code ?async=true} (or
+ * {@code Prefer: respond-async}) they are spooled to an {@link IngestJobQueue} and answered with
+ * {@code 202} and a job id, whose progress is served on {@code GET /api/ingest/{id}}.
+ * <p>
+ * Documents go to the collection named by the {@code collection} header of an upload, or by the
+ * subdirectory of {@code ingest.input.path} a watched file is in, and to the default collection otherwise.
  */
 public class DocumentIngestionRoute extends RouteBuilder {
     
     private static final Logger LOG = LoggerFactory.getLogger(DocumentIngestionRoute.class);
-    private final VectorStoreService vectorStoreService = new VectorStoreService();
+    private static final String PARSE_START = "ragParseStart";
+    private static final String DOCLING_PARSE = "docling:parse?outputFormat=markdown";
+    private static final String PARSE = "direct:docling-parse";
+    private static final String COLLECTION = "collection";
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private VectorStoreService vectorStoreService;
+    private CollectionManager collections;
     
     @Override
     public void configure() throws Exception {
         
-        // Bind the VectorStoreService to the registry
+        // Metrics shared by the ingestion and query routes, served on /api/metrics
+        MetricsRegistry metrics = new MetricsRegistry();
+        getContext().getRegistry().bind("metricsRegistry", metrics);
+        Histogram parseSeconds = metrics.histogram("rag_parse_duration_seconds",
+                "Time to convert one document with docling", MetricsRegistry.LATENCY_BUCKETS);
+        
+        // Create the VectorStoreService on the configured embedding store and embedding model
+        RagProperties properties = new RagProperties(getContext());
+        EmbeddingModel embeddingModel = EmbeddingModelFactory.createEmbeddingModel(properties);
+        VectorStoreSettings settings = VectorStoreSettings.from(properties);
+        vectorStoreService = new VectorStoreService(EmbeddingStoreFactory.createEmbeddingStore(properties),
+                embeddingModel, settings, metrics);
+        
+        // Bind the VectorStoreService to the registry and close it with the context
         getContext().getRegistry().bind("vectorStoreService", vectorStoreService);
+        getContext().addService(vectorStoreService, true);
+        
+        // Named collections share the embedding model, batcher, query embedding cache and metrics of the
+        // default collection, but each has its own store under <vectorstore.path>/collections, loaded on
+        // demand and evicted least recently used first once the loaded collections exceed their memory budget
+        collections = new CollectionManager(vectorStoreService,
+                Paths.get(properties.getString("vectorstore.path", "data/vectorstore")).resolve("collections"),
+                properties.getLong("collections.memory.budget.bytes", 512L * 1024 * 1024),
+                directory -> new VectorStoreService(EmbeddingStoreFactory.createCollectionStore(properties, directory),
+                        vectorStoreService),
+                metrics);
+        getContext().getRegistry().bind("collectionManager", collections);
+        getContext().addService(collections, true);
+        
+        // Deletes and replaces only flag records as deleted; a background worker compacts the loaded
+        // collections once enough of their records are deleted. Added last, so it stops before the stores close
+        StoreCompactor compactor = new StoreCompactor(collections,
+                properties.getLong("vectorstore.compaction.interval.ms", 60000),
+                properties.getInt("vectorstore.compaction.min.deleted", 1000),
+                properties.getDouble("vectorstore.compaction.deleted.ratio", 0.2), metrics);
+        getContext().getRegistry().bind("storeCompactor", compactor);
+        getContext().addService(compactor, true);
+        
+        // Synchronous HTTP uploads are spooled to temporary files, which docling reads
+        UploadSpool uploadSpool = new UploadSpool(Paths.get(properties.getString("ingest.spool.path", "data/spool")), metrics);
+        
+        // Docling output is cached on disk by document content, so identical files are converted once
+        ParseCache parseCache = new ParseCache(Paths.get(properties.getString("ingest.parse.cache.path", "data/parse-cache")),
+                properties.getLong("ingest.parse.cache.max.bytes", 256L * 1024 * 1024), uploadSpool, metrics);
+        getContext().getRegistry().bind("parseCache", parseCache);
+        ProducerTemplate template = getContext().createProducerTemplate();
+        
+        // Documents with more pages than the threshold are converted a range of pages at a time, in parallel,
+        // and chunked in page order as the ranges complete. Docling is asked for a range with extra arguments
+        String[] rangeArguments = properties.getString("ingest.parse.pages.arguments", "--page-range {first}-{last}")
+                .strip().split("\\s+");
+        PageRangeParser pageRanges = new PageRangeParser(properties.getInt("ingest.parse.pages.threshold", 0),
+                properties.getInt("ingest.parse.pages.per.range", 20),
+                properties.getInt("ingest.parse.pages.concurrency", 4),
+                properties.getInt("ingest.parse.pages.queue.size", 256),
+                Set.copyOf(Arrays.asList(properties.getString("ingest.parse.pages.formats", "pdf").split(","))),
+                (document, first, last) -> convert(template, document, first, last, rangeArguments), metrics);
+        getContext().addService(pageRanges, true);
         
-        // Route 1: Watch directory for new documents and ingest them
-        from("file:data/input?delete=true&moveFailed=data/failed")
+        // Docling calls mostly wait on the docling backend, so the parse stage runs on virtual threads
+        ThreadPoolExecutor parseStage = StageExecutors.newVirtualStage("docling-parse",
+                properties.getInt("ingest.parse.concurrency", 4), 0);
+        getContext().addService(new ServiceSupport() {
+            @Override
+            protected void doStop() {
+                parseStage.shutdown();
+            }
+        }, true);
+        
+        String parseQueue = "seda:ingest-parse?size={{ingest.queue.size:100}}&blockWhenFull=true";
+        String chunkQueue = "seda:ingest-chunk?size={{ingest.queue.size:100}}&blockWhenFull=true";
+        
+        // Watched directory, processing results and files that failed
+        String inputDirectory = properties.getString("ingest.input.path", "data/input");
+        String outputDirectory = properties.getString("ingest.output.path", "data/output");
+        String failedDirectory = Paths.get(properties.getString("ingest.failed.path", "data/failed"))
+                .toAbsolutePath().toString();
+        
+        // File-consumer backlog: files not picked up yet, documents in the pipeline and stage queues
+        metrics.gauge("rag_ingest_input_files",
+                "Files waiting in " + inputDirectory + " and its collection subdirectories",
+                () -> countFiles(inputDirectory));
+        metrics.gauge("rag_ingest_inflight_documents", "Documents taken from the input directory and not finished yet",
+                () -> getContext().getInflightRepository().size("document-ingestion"));
+        SedaEndpoint parseEndpoint = getContext().getEndpoint(parseQueue, SedaEndpoint.class);
+        SedaEndpoint chunkEndpoint = getContext().getEndpoint(chunkQueue, SedaEndpoint.class);
+        metrics.gauge("rag_ingest_parse_queue_size", "Documents waiting for the parse stage",
+                parseEndpoint::getCurrentQueueSize);
+        metrics.gauge("rag_ingest_chunk_queue_size", "Parsed documents waiting for the chunk stage",
+                chunkEndpoint::getCurrentQueueSize);
+        metrics.gauge("rag_ingest_parse_active", "Documents being parsed", parseStage::getActiveCount);
+        
+        // Asynchronous HTTP uploads are spooled to disk and ingested by the job queue workers
+        IngestJobQueue jobQueue = new IngestJobQueue(Paths.get(properties.getString("ingest.jobs.path", "data/jobs")),
+                properties.getInt("ingest.jobs.queue.size", 100), properties.getInt("ingest.jobs.concurrency", 2),
+                properties.getInt("ingest.jobs.retention", 1000), (job, upload) -> {
+                    long parseStart = System.nanoTime();
+                    Exchange parsed = template.send(PARSE, exchange -> exchange.getIn().setBody(upload.toFile()));
+                    if (parsed.getException() != null) {
+                        throw parsed.getException();
+                    }
+                    job.recordStage("parse", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parseStart));
+                    
+                    long ingestStart = System.nanoTime();
+                    try (CollectionManager.Lease lease = collections.acquire(job.collection(), true)) {
+                        IngestResult result = lease.service().ingestDocument(parsedText(parsed), job.documentName(), job.tags());
+                        job.recordStage("ingest", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ingestStart));
+                        return result;
+                    }
+                }, metrics);
+        getContext().getRegistry().bind("ingestJobQueue", jobQueue);
+        getContext().addService(jobQueue, true);
+        
+        // Parse through the cache: a hit skips docling, a miss is converted, whole or by page ranges, and
+        // stored for the next time. The parsed text is a reader, which the routes that carry it do not stream
+        // cache, since that would read it to the end before it is chunked
+        from(PARSE)
+            .routeId("docling-parse")
+            .streamCache("false")
+            .process(exchange -> parseCache.lookup(exchange, DOCLING_PARSE))
+            .filter(exchangeProperty(ParseCache.HIT).isNull())
+                .process(pageRanges::parse)
+                .filter(exchangeProperty(PageRangeParser.RANGES).isNull())
+                    .process(exchange -> exchange.setProperty(PARSE_START, System.nanoTime()))
+                    .to(DOCLING_PARSE)
+                    .process(exchange -> parseSeconds.observeSince(exchange.getProperty(PARSE_START, Long.class)))
+                .end()
+                .process(parseCache::store)
+            .end();
+        
+        // Route 1: Watch directory for new documents and hand them to the ingestion pipeline.
+        // Files in a subdirectory go to the collection of that name, the others to the default collection.
+        // The file is deleted, or moved to the failed directory, once the last stage is done with it.
+        from("file:" + inputDirectory + "?recursive=true&maxDepth=2&delete=true&moveFailed=" + failedDirectory)
             .routeId("document-ingestion")
             .log("Processing document: ${header.CamelFileName}")
-            
-            // Parse document using docling component
-            .to("docling:parse?outputFormat=markdown")
-            
-            // Extract the parsed text
+            .process(DocumentIngestionRoute::selectWatchedCollection)
+            .to(parseQueue);
+        
+        // Parse stage: convert documents with docling (or the parse cache) on a bounded pool of virtual threads
+        from(parseQueue)
+            .routeId("document-ingestion-parse")
+            .streamCache("false")
+            .threads().executorService(parseStage)
+            .to(PARSE)
+            .to(chunkQueue);
+        
+        // Ingests complete on the embedding index thread, which every collection writes through, so the rest
+        // of the exchange, with its output file, input file deletion and collection eviction, runs elsewhere
+        Executor ingestCompletion = task -> Thread.ofVirtual().name("ingest-complete").start(task);
+        
+        // Chunk stage: split the parsed text into segments, skipping documents and chunks already stored
+        from(chunkQueue + "&concurrentConsumers={{ingest.chunk.concurrency:2}}")
+            .routeId("document-ingestion-chunk")
+            .streamCache("false")
             .process(exchange -> {
                 String fileName = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
-                String parsedText = exchange.getIn().getBody(String.class);
+                exchange.getIn().setBody(parsedText(exchange));
                 
-                LOG.info("Document {} parsed successfully. Text length: {}", fileName, parsedText != null ? parsedText.length() : 0);
-                
-                // Store in vector store
-                if (parsedText != null && !parsedText.isEmpty()) {
-                    vectorStoreService.ingestDocument(parsedText, fileName);
-                    exchange.getIn().setBody("Document ingested successfully: " + fileName);
-                } else {
-                    throw new IllegalStateException("Parsed document text is empty");
+                LOG.info("Document {} parsed successfully", fileName);
+            })
+            
+            // Embed and index stages: batched in the VectorStoreService, completing the exchange asynchronously
+            .process(new AsyncProcessorSupport() {
+                @Override
+                public boolean process(Exchange exchange, AsyncCallback callback) {
+                    String fileName = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+                    String documentName = exchange.getIn().getHeader("documentName", String.class);
+                    Reader parsedText = exchange.getIn().getBody(Reader.class);
+                    
+                    // The lease keeps the collection loaded until its chunks are stored
+                    CollectionManager.Lease lease;
+                    try {
+                        lease = collections.acquire(exchange.getIn().getHeader(COLLECTION, String.class), true);
+                    } catch (RuntimeException e) {
+                        exchange.setException(e);
+                        callback.done(true);
+                        return true;
+                    }
+                    lease.service().ingestDocumentAsync(parsedText, documentName).whenCompleteAsync((result, error) -> {
+                        lease.close();
+                        if (error != null) {
+                            exchange.setException(error instanceof CompletionException ? error.getCause() : error);
+                        } else if (result.unchanged()) {
+                            exchange.getIn().setBody("Document unchanged, skipped: " + fileName);
+                        } else {
+                            exchange.getIn().setBody(String.format(
+                                    "Document ingested successfully: %s (%d chunks, %d embedded, %d reused, %d removed)",
+                                    fileName, result.totalChunks(), result.embeddedChunks(), result.reusedChunks(),
+                                    result.removedChunks()));
+                        }
+                        callback.done(false);
+                    }, ingestCompletion);
+                    return false;
                 }
             })
             
             // Save processing result
-            .to("file:data/output?fileName=${header.CamelFileName}.processed.txt")
+            .to("file:" + outputDirectory + "?fileName=${header.CamelFileName}.processed.txt")
             .log("Document ${header.CamelFileName} ingested successfully. Total embeddings: ${body}");
         
         // Route 2: Direct endpoint for programmatic document ingestion
         from("direct:ingest-document")
             .routeId("direct-document-ingestion")
+            .streamCache("false")
             .log("Direct ingestion request received")
             
-            // Parse using docling
-            .to("docling:parse?outputFormat=markdown")
+            // Parse using docling, unless the document is in the parse cache
+            .to(PARSE)
             
             // Store in vector store
             .process(exchange -> {
@@ -66,23 +299,34 @@ public class DocumentIngestionRoute extends RouteBuilder {
                     fileName = "document-" + System.currentTimeMillis();
                 }
                 
-                String parsedText = exchange.getIn().getBody(String.class);
-                vectorStoreService.ingestDocument(parsedText, fileName);
+                Set<String> tags = PartitionFilter.parseTags(exchange.getIn().getHeader("tags", String.class));
+                try (CollectionManager.Lease lease = collections.acquire(exchange.getIn().getHeader(COLLECTION, String.class), true)) {
+                    lease.service().ingestDocument(parsedText(exchange), fileName, tags);
+                }
                 
                 exchange.getIn().setBody("Successfully ingested: " + fileName);
             })
             .log("Direct ingestion completed: ${body}");
         
         // Route 3: HTTP endpoint for document upload
-        from("undertow:http://0.0.0.0:8080/api/ingest?httpMethodRestrict=POST")
+        from("undertow:http://0.0.0.0:8080/api/ingest?httpMethodRestrict=POST&useStreaming=true")
             .routeId("http-document-upload")
+            .streamCache("false")
             .log("Document upload received via HTTP")
             
-            // Extract document name from header
+            // Extract document name, optional collection and comma-separated tags from headers
             .setHeader("documentName", simple("${header.documentName}"))
             
-            // Parse with docling
-            .to("docling:parse?outputFormat=markdown")
+            // Asynchronous mode: queue the upload and answer 202 with the job id right away
+            .choice()
+                .when(DocumentIngestionRoute::isAsyncRequest)
+                    .process(exchange -> submitJob(exchange, jobQueue))
+                    .stop()
+            .end()
+            
+            // Spool the body to a file and parse it with docling, unless the document is in the parse cache
+            .process(exchange -> spoolUpload(exchange, uploadSpool))
+            .to(PARSE)
             
             // Ingest into vector store
             .process(exchange -> {
@@ -91,13 +335,226 @@ public class DocumentIngestionRoute extends RouteBuilder {
                     docName = "uploaded-doc-" + System.currentTimeMillis();
                 }
                 
-                String parsedText = exchange.getIn().getBody(String.class);
-                vectorStoreService.ingestDocument(parsedText, docName);
-                
-                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
-                exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
-                exchange.getIn().setBody("{\"status\":\"success\",\"message\":\"Document ingested: " + docName + "\",\"embeddings\":" + vectorStoreService.getStoredEmbeddingsCount() + "}");
+                Set<String> tags = PartitionFilter.parseTags(exchange.getIn().getHeader("tags", String.class));
+                try (CollectionManager.Lease lease = collections.acquire(exchange.getIn().getHeader(COLLECTION, String.class), true)) {
+                    IngestResult result = lease.service().ingestDocument(parsedText(exchange), docName, tags);
+                    
+                    exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+                    exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+                    exchange.getIn().setBody("{\"status\":\"" + (result.unchanged() ? "unchanged" : "success")
+                            + "\",\"message\":\"Document ingested: " + docName + "\",\"collection\":\"" + lease.collection()
+                            + "\",\"embeddings\":" + lease.service().getStoredEmbeddingsCount()
+                            + ",\"chunks\":" + result.totalChunks() + ",\"embedded\":" + result.embeddedChunks()
+                            + ",\"removed\":" + result.removedChunks() + "}");
+                }
             })
             .log("HTTP ingestion completed");
+        
+        // Route 4: status of an asynchronous ingest job, GET /api/ingest/{id}
+        from("undertow:http://0.0.0.0:8080/api/ingest/{id}?httpMethodRestrict=GET")
+            .routeId("http-ingest-job-status")
+            .process(exchange -> {
+                String id = exchange.getIn().getHeader("id", String.class);
+                IngestJob job = id == null ? null : jobQueue.get(id);
+                
+                exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+                if (job == null) {
+                    exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 404);
+                    exchange.getIn().setBody(objectMapper.writeValueAsString(Map.of("error", "Unknown ingest job: " + id)));
+                } else {
+                    exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+                    exchange.getIn().setBody(objectMapper.writeValueAsString(job.toMap()));
+                }
+            });
+        
+        // Route 5: replace (PUT, with the new version as the body) or delete (DELETE) a document,
+        // /api/documents/{source}. Its chunks are flagged as deleted at once and compacted away in the background
+        from("undertow:http://0.0.0.0:8080/api/documents/{source}?httpMethodRestrict=PUT,DELETE&useStreaming=true")
+            .routeId("http-document-update")
+            .streamCache("false")
+            .choice()
+                .when(header(Exchange.HTTP_METHOD).isEqualTo("DELETE"))
+                    .process(exchange -> deleteDocument(exchange, compactor))
+                .otherwise()
+                    .setHeader("documentName", header("source"))
+                    .process(exchange -> spoolUpload(exchange, uploadSpool))
+                    .to(PARSE)
+                    .process(exchange -> replaceDocument(exchange, compactor))
+            .end();
+    }
+    
+    /**
+     * Delete the document named by the path, answering 404 if the collection has no such document.
+     */
+    private void deleteDocument(Exchange exchange, StoreCompactor compactor) throws IOException {
+        String source = exchange.getIn().getHeader("source", String.class);
+        Map<String, Object> response = new LinkedHashMap<>();
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+        try (CollectionManager.Lease lease = collections.acquire(exchange.getIn().getHeader(COLLECTION, String.class), false)) {
+            IngestResult result = lease.service().deleteDocument(source);
+            response.put("collection", lease.collection());
+            response.put("source", source);
+            if (result == null) {
+                response.put("status", "not_found");
+                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 404);
+            } else {
+                response.put("status", "deleted");
+                response.put("removed", result.removedChunks());
+                response.put("embeddings", lease.service().getStoredEmbeddingsCount());
+                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+                compactor.nudge();
+            }
+        }
+        exchange.getIn().setBody(objectMapper.writeValueAsString(response));
+    }
+    
+    /**
+     * Replace the document named by the path with the parsed body, or ingest it if it is new.
+     */
+    private void replaceDocument(Exchange exchange, StoreCompactor compactor) throws IOException {
+        String source = exchange.getIn().getHeader("source", String.class);
+        Set<String> tags = PartitionFilter.parseTags(exchange.getIn().getHeader("tags", String.class));
+        Map<String, Object> response = new LinkedHashMap<>();
+        try (CollectionManager.Lease lease = collections.acquire(exchange.getIn().getHeader(COLLECTION, String.class), true)) {
+            IngestResult result = lease.service().replaceDocument(parsedText(exchange), source, tags);
+            response.put("status", result.removedChunks() > 0 ? "replaced" : "created");
+            response.put("collection", lease.collection());
+            response.put("source", source);
+            response.put("chunks", result.totalChunks());
+            response.put("embedded", result.embeddedChunks());
+            response.put("removed", result.removedChunks());
+            response.put("embeddings", lease.service().getStoredEmbeddingsCount());
+            if (result.removedChunks() > 0) {
+                compactor.nudge();
+            }
+        }
+        exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+        exchange.getIn().setBody(objectMapper.writeValueAsString(response));
+    }
+    
+    /**
+     * Send a watched file in a subdirectory of the input directory to the collection named after the
+     * subdirectory, under its name within it; files directly in the input directory go to the default collection.
+     */
+    private static void selectWatchedCollection(Exchange exchange) {
+        String fileName = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+        int separator = fileName.replace('\\', '/').indexOf('/');
+        exchange.getIn().setHeader(COLLECTION,
+                CollectionManager.collectionName(separator > 0 ? fileName.substring(0, separator) : null));
+        exchange.getIn().setHeader("documentName", fileName.substring(separator + 1));
+    }
+    
+    /**
+     * Spool the upload to a file, which becomes the body, and delete the file once the exchange is done.
+     */
+    private static void spoolUpload(Exchange exchange, UploadSpool uploadSpool) throws IOException {
+        String docName = exchange.getIn().getHeader("documentName", String.class);
+        try (InputStream content = exchange.getIn().getMandatoryBody(InputStream.class)) {
+            Path upload = uploadSpool.spool(content, docName != null ? docName : "");
+            exchange.getExchangeExtension().addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(Exchange done) {
+                    uploadSpool.release(upload);
+                }
+            });
+            exchange.getIn().setBody(upload.toFile());
+        } catch (InvalidPayloadException e) {
+            throw new IllegalArgumentException("Upload body is missing", e);
+        }
+    }
+    
+    /**
+     * The parsed text in the body as a reader, so it is chunked as it is read instead of being copied into
+     * one more string.
+     *
+     * @throws IllegalStateException if the text is empty
+     */
+    private static Reader parsedText(Exchange exchange) throws IOException {
+        Reader body = exchange.getIn().getBody(Reader.class);
+        if (body == null) {
+            throw new IllegalStateException("Parsed document text is empty");
+        }
+        PushbackReader text = new PushbackReader(body);
+        int first = text.read();
+        if (first < 0) {
+            text.close();
+            throw new IllegalStateException("Parsed document text is empty");
+        }
+        text.unread(first);
+        return text;
+    }
+    
+    /**
+     * Convert a document, or pages {@code first} to {@code last} of it, with docling. The range is passed
+     * as extra command-line arguments, with {@code {first}} and {@code {last}} replaced by the page numbers.
+     */
+    private static String convert(ProducerTemplate template, Path document, int first, int last,
+                                  String[] rangeArguments) throws Exception {
+        Exchange converted = template.send(DOCLING_PARSE, exchange -> {
+            exchange.getIn().setBody(document.toFile());
+            if (first > 0) {
+                List<String> arguments = Arrays.stream(rangeArguments).map(argument -> argument
+                        .replace("{first}", String.valueOf(first)).replace("{last}", String.valueOf(last))).toList();
+                exchange.getIn().setHeader(PageRangeParser.DOCLING_ARGUMENTS, arguments);
+            }
+        });
+        if (converted.getException() != null) {
+            throw converted.getException();
+        }
+        return converted.getMessage().getBody(String.class);
+    }
+    
+    /**
+     * Whether the upload asked to be ingested asynchronously, with {@code ?async=true} or {@code Prefer: respond-async}.
+     */
+    private static boolean isAsyncRequest(Exchange exchange) {
+        String prefer = exchange.getIn().getHeader("Prefer", String.class);
+        return "true".equalsIgnoreCase(exchange.getIn().getHeader("async", String.class))
+                || (prefer != null && prefer.contains("respond-async"));
+    }
+    
+    /**
+     * Spool the upload as a job and answer 202 with its id and status URL, or 503 when the queue is full.
+     */
+    private void submitJob(Exchange exchange, IngestJobQueue jobQueue) throws IOException {
+        String docName = exchange.getIn().getHeader("documentName", String.class);
+        if (docName == null || docName.isEmpty()) {
+            docName = "uploaded-doc-" + System.currentTimeMillis();
+        }
+        String collection = CollectionManager.collectionName(exchange.getIn().getHeader(COLLECTION, String.class));
+        Set<String> tags = PartitionFilter.parseTags(exchange.getIn().getHeader("tags", String.class));
+        IngestJob.Priority priority = IngestJob.Priority.parse(exchange.getIn().getHeader("priority", String.class));
+        
+        Map<String, Object> response = new LinkedHashMap<>();
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+        try (InputStream content = exchange.getIn().getMandatoryBody(InputStream.class)) {
+            IngestJob job = jobQueue.submit(docName, collection, tags, priority, content);
+            String statusUrl = "/api/ingest/" + job.id();
+            response.put("jobId", job.id());
+            response.put("status", "queued");
+            response.put("statusUrl", statusUrl);
+            exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 202);
+            exchange.getIn().setHeader("Location", statusUrl);
+        } catch (RejectedExecutionException e) {
+            response.put("status", "rejected");
+            response.put("message", e.getMessage());
+            exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 503);
+            exchange.getIn().setHeader("Retry-After", "30");
+        } catch (InvalidPayloadException e) {
+            throw new IllegalArgumentException("Upload body is missing", e);
+        }
+        exchange.getIn().setBody(objectMapper.writeValueAsString(response));
+    }
+    
+    /**
+     * Number of regular files in the directory and its collection subdirectories, or 0 if it does not exist.
+     */
+    private static long countFiles(String directory) {
+        try (Stream<Path> files = Files.walk(Paths.get(directory), 2)) {
+            return files.filter(Files::isRegularFile).count();
+        } catch (IOException e) {
+            return 0;
+        }
     }
 }
@@ -1,26 +1,84 @@
 package com.example.docling.rag;
 
+import com.example.docling.rag.config.ChatModelFactory;
+import com.example.docling.rag.config.RagProperties;
+import com.example.docling.rag.metrics.Counter;
+import com.example.docling.rag.metrics.Histogram;
+import com.example.docling.rag.metrics.MetricsRegistry;
+import com.example.docling.rag.service.AdaptiveConcurrencyLimit;
+import com.example.docling.rag.service.CollectionManager;
+import com.example.docling.rag.service.ContextPacker;
+import com.example.docling.rag.service.GuardedChatModel;
+import com.example.docling.rag.service.ParseCache;
+import com.example.docling.rag.service.RetrievedChunk;
+import com.example.docling.rag.service.ServerSentEventStream;
+import com.example.docling.rag.service.StoreCompactor;
 import com.example.docling.rag.service.VectorStoreService;
+import com.example.docling.rag.store.PartitionFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
 import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.support.service.ServiceSupport;
+import org.apache.camel.util.ObjectHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * Camel route for handling RAG queries using LangChain4j.
  * This route receives user queries, retrieves relevant document chunks from the vector store,
  * and uses LangChain4j to generate AI-powered responses.
+ * <p>
+ * Queries search the default collection unless they name another with a {@code collection} field or header.
  */
 public class RagQueryRoute extends RouteBuilder {
     
     private static final Logger LOG = LoggerFactory.getLogger(RagQueryRoute.class);
     private static final int MAX_RELEVANT_CHUNKS = 5;
+    private static final String STREAM_RESPONSE = "streamResponse";
+    private static final String QUERY_FILTER = "ragQueryFilter";
+    private static final String QUERY_COLLECTION = "ragQueryCollection";
+    private static final String SSE_CONTENT_TYPE = "text/event-stream";
+    private static final String LLM_START = "ragLlmStart";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private Histogram promptChars;
+    private Histogram llmSeconds;
+    private Histogram firstTokenSeconds;
+    private Semaphore batchLlmPermits;
+    private ContextPacker contextPacker;
+    private int maxRelevantChunks;
+    private Histogram contextTokens;
+    private Counter contextTokensSaved;
+    private ExecutorService batchLlmExecutor;
+    private CollectionManager collections;
     
     @Override
     public void configure() throws Exception {
@@ -32,10 +90,80 @@ public class RagQueryRoute extends RouteBuilder {
         if (vectorStoreService == null) {
             throw new IllegalStateException("VectorStoreService not found in registry");
         }
+        collections = getContext().getRegistry().lookupByNameAndType("collectionManager", CollectionManager.class);
+        if (collections == null) {
+            throw new IllegalStateException("CollectionManager not found in registry");
+        }
+        
+        // Metrics registered by DocumentIngestionRoute; a private registry keeps the route usable on its own
+        MetricsRegistry registered = getContext().getRegistry().lookupByNameAndType("metricsRegistry", MetricsRegistry.class);
+        MetricsRegistry metrics = registered != null ? registered : new MetricsRegistry();
+        promptChars = metrics.histogram("rag_prompt_chars", "Characters in the prompt sent to the chat model",
+                500, 1000, 2000, 4000, 8000, 16000, 32000, 64000);
+        llmSeconds = metrics.histogram("rag_llm_duration_seconds", "Time until the chat model returned the full answer",
+                MetricsRegistry.LATENCY_BUCKETS);
+        firstTokenSeconds = metrics.histogram("rag_llm_first_token_seconds",
+                "Time until a streaming chat model returned the first token", MetricsRegistry.LATENCY_BUCKETS);
+        contextTokens = metrics.histogram("rag_context_tokens", "Tokens of the packed context in the prompt",
+                100, 250, 500, 1000, 1500, 2000, 4000, 8000);
+        contextTokensSaved = metrics.counter("rag_context_tokens_saved_total",
+                "Redundant tokens kept out of prompts by merging overlapping chunks and dropping near-duplicates");
+        
+        // Chat calls share an adaptive concurrency limit and fail fast past it, and identical concurrent
+        // requests share one call. The routes call the chat model bound as guardedChatModel
+        RagProperties properties = new RagProperties(getContext());
+        AdaptiveConcurrencyLimit chatLimit = ChatModelFactory.createConcurrencyLimit(properties);
+        ChatModel boundChatModel = getContext().getRegistry().lookupByNameAndType("chatModel", ChatModel.class);
+        GuardedChatModel chatModel = boundChatModel == null ? null
+                : ChatModelFactory.createGuardedChatModel(boundChatModel, chatLimit, properties.getBoolean("chat.coalesce", true));
+        if (chatModel != null) {
+            getContext().getRegistry().bind("guardedChatModel", chatModel);
+            metrics.counter("rag_llm_coalesced_total", "Chat requests answered by an identical request in flight",
+                    chatModel::coalesced);
+        }
+        metrics.gauge("rag_llm_concurrency_limit", "Current adaptive limit on concurrent chat model calls", chatLimit::limit);
+        metrics.gauge("rag_llm_in_flight", "Chat model calls in flight", chatLimit::inFlight);
+        metrics.gauge("rag_llm_waiting", "Chat model calls waiting for the concurrency limit", chatLimit::waiting);
+        metrics.counter("rag_llm_rejected_total", "Chat model calls rejected at the concurrency limit", chatLimit::rejected);
+        
+        // Optional: without a streaming chat model, streaming requests get the complete JSON answer
+        StreamingChatModel boundStreamingChatModel = getContext().getRegistry()
+                .lookupByNameAndType("streamingChatModel", StreamingChatModel.class);
+        StreamingChatModel streamingChatModel = boundStreamingChatModel == null ? null
+                : ChatModelFactory.createGuardedStreamingChatModel(boundStreamingChatModel, chatLimit);
+        if (streamingChatModel == null) {
+            LOG.warn("No streamingChatModel in registry, /api/query answers will not be streamed");
+        }
+        
+        // Retrieved chunks are packed into a token budget: neighbours merged, near-duplicates dropped
+        maxRelevantChunks = properties.getInt("document.max.relevant.chunks", MAX_RELEVANT_CHUNKS);
+        contextPacker = new ContextPacker(
+                new OpenAiTokenCountEstimator(properties.getString("query.context.token.model", "gpt-3.5-turbo")),
+                properties.getInt("query.context.max.tokens", 1500),
+                properties.getDouble("query.context.mmr.lambda", 0.7),
+                properties.getDouble("query.context.duplicate.threshold", 0.8));
+        
+        // Batch queries call the chat model directly, at most query.batch.llm.parallelism at a time
+        int maxBatchSize = properties.getInt("query.batch.max.size", 1000);
+        batchLlmPermits = new Semaphore(properties.getInt("query.batch.llm.parallelism", 8));
+        batchLlmExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-batch-llm-", 0).factory());
+        getContext().addService(new ServiceSupport() {
+            @Override
+            protected void doStop() {
+                batchLlmExecutor.shutdownNow();
+            }
+        }, true);
         
         // Route 1: HTTP endpoint for RAG queries
-        from("undertow:http://0.0.0.0:8080/api/query?httpMethodRestrict=POST")
+        // With "stream": true in the request (or Accept: text/event-stream) the answer is sent as
+        // Server-Sent Events: the sources first, then each token as the model produces it
+        from("undertow:http://0.0.0.0:8080/api/query?httpMethodRestrict=POST&useStreaming=true")
             .routeId("rag-query-endpoint")
+            // The chat model is saturated: answer 503 right away instead of queueing the request
+            .onException(RejectedExecutionException.class)
+                .handled(true)
+                .process(this::rejectQuery)
+            .end()
             .log("Received RAG query via HTTP")
             
             // Parse incoming JSON query
@@ -45,9 +173,18 @@ public class RagQueryRoute extends RouteBuilder {
                 
                 // Extract query from JSON or use raw text
                 String query;
+                boolean stream = false;
+                exchange.setProperty(QUERY_COLLECTION, exchange.getIn().getHeader("collection", String.class));
                 try {
                     Map<String, Object> jsonMap = objectMapper.readValue(body, Map.class);
                     query = (String) jsonMap.get("query");
+                    stream = Boolean.TRUE.equals(jsonMap.get("stream"));
+                    if (jsonMap.get("collection") instanceof String collection) {
+                        exchange.setProperty(QUERY_COLLECTION, collection);
+                    }
+                    // Optional restriction to a source document, a source prefix and/or tags
+                    exchange.setProperty(QUERY_FILTER, PartitionFilter.of((String) jsonMap.get("source"),
+                            (String) jsonMap.get("sourcePrefix"), jsonMap.get("tags")));
                 } catch (Exception e) {
                     query = body; // Fallback to raw text
                 }
@@ -56,6 +193,10 @@ public class RagQueryRoute extends RouteBuilder {
                     throw new IllegalArgumentException("Query cannot be empty");
                 }
                 
+                String accept = exchange.getIn().getHeader("Accept", String.class);
+                stream |= accept != null && accept.contains(SSE_CONTENT_TYPE);
+                exchange.setProperty(STREAM_RESPONSE, stream && streamingChatModel != null);
+                
                 exchange.getIn().setHeader("userQuery", query);
                 exchange.getIn().setBody(query);
             })
@@ -63,21 +204,16 @@ public class RagQueryRoute extends RouteBuilder {
             // Search for relevant document chunks
             .process(exchange -> {
                 String query = exchange.getIn().getHeader("userQuery", String.class);
-                List<String> relevantChunks = vectorStoreService.searchRelevantChunks(query, MAX_RELEVANT_CHUNKS);
+                PartitionFilter filter = exchange.getProperty(QUERY_FILTER, PartitionFilter.class);
+                List<RetrievedChunk> relevantChunks = retrieveChunks(exchange.getProperty(QUERY_COLLECTION, String.class),
+                        query, filter);
                 
                 LOG.info("Found {} relevant chunks for query", relevantChunks.size());
                 
-                // Store chunks in header for later use
-                exchange.getIn().setHeader("relevantChunks", relevantChunks);
-                
-                // Build context from relevant chunks
-                StringBuilder context = new StringBuilder();
-                for (int i = 0; i < relevantChunks.size(); i++) {
-                    context.append("Context ").append(i + 1).append(":\n");
-                    context.append(relevantChunks.get(i)).append("\n\n");
-                }
-                
-                exchange.getIn().setHeader("documentContext", context.toString());
+                // Build context from relevant chunks and store the passages it uses for later use
+                ContextPacker.PackedContext context = packContext(relevantChunks);
+                exchange.getIn().setHeader("relevantChunks", context.passages());
+                exchange.getIn().setHeader("documentContext", context.text());
             })
             
             // Build prompt for LLM
@@ -89,28 +225,37 @@ public class RagQueryRoute extends RouteBuilder {
                 exchange.getIn().setBody(prompt);
                 exchange.getIn().setHeader("prompt", prompt);
                 
+                promptChars.observe(prompt.length());
                 LOG.info("Built RAG prompt with {} characters", prompt.length());
             })
             
-            // Call LangChain4j chat component
-            .to("langchain4j-chat:rag-chat?chatModel=#chatModel")
-            
-            // Format response
-            .process(exchange -> {
-                String aiResponse = exchange.getIn().getBody(String.class);
-                List<String> chunks = exchange.getIn().getHeader("relevantChunks", List.class);
-                
-                Map<String, Object> response = new HashMap<>();
-                response.put("answer", aiResponse);
-                response.put("sources", chunks.size());
-                response.put("timestamp", System.currentTimeMillis());
-                
-                String jsonResponse = objectMapper.writeValueAsString(response);
-                
-                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
-                exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
-                exchange.getIn().setBody(jsonResponse);
-            })
+            .choice()
+                // Stream the answer as it is generated
+                .when(exchangeProperty(STREAM_RESPONSE).isEqualTo(true))
+                    .process(exchange -> streamAnswer(exchange, streamingChatModel))
+                .otherwise()
+                    // Call LangChain4j chat component
+                    .process(exchange -> exchange.setProperty(LLM_START, System.nanoTime()))
+                    .to("langchain4j-chat:rag-chat?chatModel=#guardedChatModel")
+                    .process(exchange -> llmSeconds.observeSince(exchange.getProperty(LLM_START, Long.class)))
+                    
+                    // Format response
+                    .process(exchange -> {
+                        String aiResponse = exchange.getIn().getBody(String.class);
+                        List<String> chunks = exchange.getIn().getHeader("relevantChunks", List.class);
+                        
+                        Map<String, Object> response = new HashMap<>();
+                        response.put("answer", aiResponse);
+                        response.put("sources", chunks.size());
+                        response.put("timestamp", System.currentTimeMillis());
+                        
+                        String jsonResponse = objectMapper.writeValueAsString(response);
+                        
+                        exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+                        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+                        exchange.getIn().setBody(jsonResponse);
+                    })
+            .end()
             .log("RAG query completed successfully");
         
         // Route 2: Direct endpoint for programmatic queries
@@ -121,19 +266,20 @@ public class RagQueryRoute extends RouteBuilder {
             // Search for relevant chunks
             .process(exchange -> {
                 String query = exchange.getIn().getBody(String.class);
-                List<String> relevantChunks = vectorStoreService.searchRelevantChunks(query, MAX_RELEVANT_CHUNKS);
+                PartitionFilter filter = PartitionFilter.of(exchange.getIn().getHeader("source", String.class),
+                        exchange.getIn().getHeader("sourcePrefix", String.class), exchange.getIn().getHeader("tags"));
+                List<RetrievedChunk> relevantChunks = retrieveChunks(exchange.getIn().getHeader("collection", String.class),
+                        query, filter);
                 
-                StringBuilder context = new StringBuilder();
-                for (String chunk : relevantChunks) {
-                    context.append(chunk).append("\n\n");
-                }
-                
-                String prompt = buildRagPrompt(query, context.toString());
+                String prompt = buildRagPrompt(query, packContext(relevantChunks).text());
+                promptChars.observe(prompt.length());
                 exchange.getIn().setBody(prompt);
             })
             
             // Call LangChain4j
-            .to("langchain4j-chat:rag-chat?chatModel=#chatModel")
+            .process(exchange -> exchange.setProperty(LLM_START, System.nanoTime()))
+            .to("langchain4j-chat:rag-chat?chatModel=#guardedChatModel")
+            .process(exchange -> llmSeconds.observeSince(exchange.getProperty(LLM_START, Long.class)))
             
             .log("Direct RAG query completed: ${body}");
         
@@ -146,6 +292,22 @@ public class RagQueryRoute extends RouteBuilder {
                 Map<String, Object> health = new HashMap<>();
                 health.put("status", "UP");
                 health.put("embeddingsStored", embeddingsCount);
+                health.put("queryCache", vectorStoreService.getQueryCacheStats());
+                health.put("collections", collections.stats());
+                health.put("chatModel", chatModel != null ? chatModel.stats() : chatLimit.stats());
+                ParseCache parseCache = getContext().getRegistry().lookupByNameAndType("parseCache", ParseCache.class);
+                if (parseCache != null) {
+                    health.put("parseCache", parseCache.stats());
+                }
+                StoreCompactor compactor = getContext().getRegistry().lookupByNameAndType("storeCompactor",
+                        StoreCompactor.class);
+                if (compactor != null) {
+                    health.put("compaction", compactor.stats());
+                }
+                Map<String, Object> shards = vectorStoreService.getShardStats();
+                if (shards != null) {
+                    health.put("shards", shards);
+                }
                 health.put("timestamp", System.currentTimeMillis());
                 
                 String jsonResponse = objectMapper.writeValueAsString(health);
@@ -154,12 +316,278 @@ public class RagQueryRoute extends RouteBuilder {
                 exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
                 exchange.getIn().setBody(jsonResponse);
             });
+        
+        // Route 4: Metrics in the Prometheus text format
+        from("undertow:http://0.0.0.0:8080/api/metrics?httpMethodRestrict=GET")
+            .routeId("metrics")
+            .process(exchange -> {
+                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+                exchange.getIn().setHeader(Exchange.CONTENT_TYPE, PROMETHEUS_CONTENT_TYPE);
+                exchange.getIn().setBody(metrics.scrape());
+            });
+        
+        // Route 5: HTTP endpoint for batches of queries
+        // All queries are embedded in one pass and retrieved together; answers are streamed as
+        // newline-delimited JSON in the order they complete, followed by a summary line
+        from("undertow:http://0.0.0.0:8080/api/query/batch?httpMethodRestrict=POST&useStreaming=true")
+            .routeId("rag-query-batch-endpoint")
+            .process(exchange -> {
+                Object request = objectMapper.readValue(exchange.getIn().getBody(String.class), Object.class);
+                List<String> queries = toQueries(request, maxBatchSize);
+                PartitionFilter filter = request instanceof Map<?, ?> fields
+                        ? PartitionFilter.of((String) fields.get("source"), (String) fields.get("sourcePrefix"), fields.get("tags"))
+                        : null;
+                String collection = request instanceof Map<?, ?> fields && fields.get("collection") instanceof String named
+                        ? named : exchange.getIn().getHeader("collection", String.class);
+                List<ContextPacker.PackedContext> contexts = retrieveChunks(collection, queries, filter)
+                        .stream().map(this::packContext).toList();
+                
+                ServerSentEventStream lines = new ServerSentEventStream();
+                long start = System.currentTimeMillis();
+                answerBatch(chatModel, queries, contexts, lines::isClosed, result -> lines.sendLine(toJson(result)))
+                    .thenAccept(results -> {
+                        Map<String, Object> summary = new LinkedHashMap<>();
+                        summary.put("done", true);
+                        summary.put("queries", results.size());
+                        summary.put("failed", results.stream().filter(result -> result.containsKey("error")).count());
+                        summary.put("millis", System.currentTimeMillis() - start);
+                        lines.sendLine(toJson(summary));
+                        lines.complete();
+                        LOG.info("Answered batch of {} queries in {} ms", results.size(), System.currentTimeMillis() - start);
+                    });
+                
+                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+                exchange.getIn().setHeader(Exchange.CONTENT_TYPE, NDJSON_CONTENT_TYPE);
+                exchange.getIn().setBody(lines);
+            });
+        
+        // Route 6: Direct endpoint for batches of queries
+        // The body is a list of queries (or a JSON array); the result is the list of answers in query order
+        from("direct:rag-query-batch")
+            .routeId("direct-rag-query-batch")
+            .process(exchange -> {
+                Object body = exchange.getIn().getBody();
+                List<String> queries = toQueries(body instanceof String json ? objectMapper.readValue(json, Object.class) : body,
+                        maxBatchSize);
+                PartitionFilter filter = PartitionFilter.of(exchange.getIn().getHeader("source", String.class),
+                        exchange.getIn().getHeader("sourcePrefix", String.class), exchange.getIn().getHeader("tags"));
+                List<ContextPacker.PackedContext> contexts = retrieveChunks(exchange.getIn().getHeader("collection", String.class),
+                        queries, filter).stream().map(this::packContext).toList();
+                
+                List<Map<String, Object>> results = answerBatch(chatModel, queries, contexts, () -> false, result -> { })
+                        .join();
+                exchange.getIn().setBody(results);
+            })
+            .log("Direct RAG batch query completed");
+    }
+    
+    /**
+     * Read the queries of a batch request: a JSON array of strings, or an object with a {@code queries} array.
+     */
+    private static List<String> toQueries(Object request, int maxBatchSize) {
+        Object queries = request instanceof Map<?, ?> fields ? fields.get("queries") : request;
+        if (queries instanceof Object[] array) {
+            queries = Arrays.asList(array);
+        }
+        if (!(queries instanceof Collection<?> values) || values.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain a non-empty array of queries");
+        }
+        if (values.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch of " + values.size() + " queries exceeds the limit of " + maxBatchSize);
+        }
+        List<String> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (!(value instanceof String query) || query.isBlank()) {
+                throw new IllegalArgumentException("Query cannot be empty");
+            }
+            result.add(query);
+        }
+        return result;
+    }
+    
+    /**
+     * Ask the chat model for every query of a batch, at most {@code query.batch.llm.parallelism} calls at a
+     * time across all batches. Each result is passed to {@code onResult} as soon as its call completes; the
+     * returned future completes with all results in query order. A failed call yields a result with an
+     * {@code error} instead of failing the batch, and calls not started yet are skipped once {@code cancelled}
+     * returns true, for example when the client disconnected.
+     */
+    private CompletableFuture<List<Map<String, Object>>> answerBatch(ChatModel chatModel, List<String> queries,
+                                                                      List<ContextPacker.PackedContext> contexts,
+                                                                      BooleanSupplier cancelled,
+                                                                      Consumer<Map<String, Object>> onResult) {
+        List<CompletableFuture<Map<String, Object>>> answers = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            int index = i;
+            String query = queries.get(i);
+            ContextPacker.PackedContext context = contexts.get(i);
+            answers.add(CompletableFuture.supplyAsync(() -> {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("index", index);
+                result.put("query", query);
+                result.put("sources", context.passages().size());
+                try {
+                    batchLlmPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.put("error", "Interrupted");
+                    return result;
+                }
+                try {
+                    if (cancelled.getAsBoolean()) {
+                        result.put("error", "Cancelled");
+                        return result;
+                    }
+                    String prompt = buildRagPrompt(query, context.text());
+                    promptChars.observe(prompt.length());
+                    
+                    long start = System.nanoTime();
+                    if (chatModel == null) {
+                        throw new IllegalStateException("No chatModel in registry");
+                    }
+                    result.put("answer", chatModel.chat(prompt));
+                    llmSeconds.observeSince(start);
+                    result.put("llmMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } catch (RuntimeException e) {
+                    LOG.warn("Batch query {} failed: {}", index, e.getMessage());
+                    result.put("error", String.valueOf(e.getMessage()));
+                } finally {
+                    batchLlmPermits.release();
+                }
+                onResult.accept(result);
+                return result;
+            }, batchLlmExecutor));
+        }
+        return CompletableFuture.allOf(answers.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> answers.stream().map(CompletableFuture::join).toList());
+    }
+    
+    /**
+     * Answer 503 with a Retry-After hint for a query rejected at the chat model concurrency limit.
+     */
+    private void rejectQuery(Exchange exchange) throws JsonProcessingException {
+        RejectedExecutionException cause = ObjectHelper.getException(RejectedExecutionException.class,
+                exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class));
+        LOG.warn("Rejected RAG query: {}", cause.getMessage());
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", "rejected");
+        response.put("message", cause.getMessage());
+        exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 503);
+        exchange.getIn().setHeader("Retry-After", "1");
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+        exchange.getIn().setBody(objectMapper.writeValueAsString(response));
+    }
+    
+    /**
+     * Retrieve the chunks relevant to a query from a collection, the default one if {@code collection} is null.
+     */
+    private List<RetrievedChunk> retrieveChunks(String collection, String query, PartitionFilter filter) {
+        try (CollectionManager.Lease lease = collections.acquire(collection, false)) {
+            return lease.service().retrieveChunks(query, maxRelevantChunks, filter);
+        }
+    }
+    
+    /**
+     * Retrieve the chunks relevant to every query of a batch from a collection.
+     */
+    private List<List<RetrievedChunk>> retrieveChunks(String collection, List<String> queries, PartitionFilter filter) {
+        try (CollectionManager.Lease lease = collections.acquire(collection, false)) {
+            return lease.service().retrieveChunks(queries, maxRelevantChunks, filter);
+        }
+    }
+    
+    /**
+     * Pack retrieved chunks into the prompt context and report what packing saved.
+     */
+    private ContextPacker.PackedContext packContext(List<RetrievedChunk> relevantChunks) {
+        ContextPacker.PackedContext context = contextPacker.pack(relevantChunks);
+        contextTokens.observe(context.tokens());
+        contextTokensSaved.add(context.tokensSaved());
+        LOG.info("Packed {} chunks into {} passages: {} context tokens instead of {}, {} saved "
+                        + "({} overlapping, {} near-duplicate), {} over budget",
+                context.candidates(), context.passages().size(), context.tokens(), context.candidateTokens(),
+                context.tokensSaved(), context.overlapTokens(), context.duplicateTokens(), context.overBudgetTokens());
+        return context;
+    }
+    
+    /**
+     * The passages put in the prompt context, which the retrieval step stores in the relevantChunks header.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> relevantChunks(Exchange exchange) {
+        return exchange.getIn().getHeader("relevantChunks", List.class);
+    }
+    
+    /**
+     * Send the retrieved sources as the first event, then forward answer tokens as the streaming model
+     * produces them. The exchange completes right away with the event stream as body, so the client
+     * receives the sources after retrieval instead of after the whole generation.
+     */
+    private void streamAnswer(Exchange exchange, StreamingChatModel streamingChatModel) throws Exception {
+        List<String> chunks = relevantChunks(exchange);
+        String prompt = exchange.getIn().getBody(String.class);
+        ServerSentEventStream events = new ServerSentEventStream();
+        
+        Map<String, Object> sources = new HashMap<>();
+        sources.put("sources", chunks.size());
+        sources.put("chunks", chunks);
+        events.send("sources", objectMapper.writeValueAsString(sources));
+        
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+        ChatRequest chatRequest = ChatRequest.builder()
+                .messages(UserMessage.from(prompt))
+                .build();
+        streamingChatModel.chat(chatRequest, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                if (firstToken.compareAndSet(true, false)) {
+                    firstTokenSeconds.observeSince(startNanos);
+                }
+                if (!events.send("token", toJson(Map.of("token", partialResponse.text())))) {
+                    LOG.info("Client closed the stream, cancelling generation");
+                    context.streamingHandle().cancel();
+                }
+            }
+            
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                llmSeconds.observeSince(startNanos);
+                Map<String, Object> done = new HashMap<>();
+                done.put("timestamp", System.currentTimeMillis());
+                done.put("generationMillis", System.currentTimeMillis() - start);
+                events.send("done", toJson(done));
+                events.complete();
+                LOG.info("Streamed RAG answer in {} ms", System.currentTimeMillis() - start);
+            }
+            
+            @Override
+            public void onError(Throwable error) {
+                LOG.error("Streaming chat model failed", error);
+                events.send("error", toJson(Map.of("error", String.valueOf(error.getMessage()))));
+                events.complete();
+            }
+        });
+        
+        exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, SSE_CONTENT_TYPE);
+        exchange.getIn().setBody(events);
+    }
+    
+    private String toJson(Map<String, Object> value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize event", e);
+        }
     }
     
     /**
      * Build a RAG prompt that combines user query with retrieved context.
+     * Package-private for the benchmarks.
      */
-    private String buildRagPrompt(String query, String context) {
+    String buildRagPrompt(String query, String context) {
         return String.format(
             "You are a helpful AI assistant. Answer the user's question based on the provided context.\n\n" +
             "Context:\n%s\n\n" +
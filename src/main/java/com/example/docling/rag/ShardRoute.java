@@ -0,0 +1,96 @@
+package com.example.docling.rag;
+
+import com.example.docling.rag.config.RagProperties;
+import com.example.docling.rag.service.VectorStoreService;
+import com.example.docling.rag.store.ShardProtocol;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Camel routes serving an embedding store as a shard of another node's {@code ShardedEmbeddingStore}:
+ * {@code POST /api/shard/search}, {@code /add} and {@code /remove}, in the {@link ShardProtocol} format.
+ * <p>
+ * Added to the application, the routes serve the store of the {@code vectorStoreService} when
+ * {@code shard.server.enabled} is set, on {@code shard.server.port}. A store can also be served directly,
+ * for example to run several shards in one JVM with a CamelContext each.
+ */
+public class ShardRoute extends RouteBuilder {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ShardRoute.class);
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() { };
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private EmbeddingStore<TextSegment> store;
+    private int port;
+    
+    /**
+     * Serve the application's store if {@code shard.server.enabled} is set.
+     */
+    public ShardRoute() {
+    }
+    
+    /**
+     * Serve the given store on the given port.
+     */
+    public ShardRoute(EmbeddingStore<TextSegment> store, int port) {
+        this.store = store;
+        this.port = port;
+    }
+    
+    @Override
+    public void configure() throws Exception {
+        if (store == null) {
+            RagProperties properties = new RagProperties(getContext());
+            if (!properties.getBoolean("shard.server.enabled", false)) {
+                return;
+            }
+            port = properties.getInt("shard.server.port", 8080);
+            store = getContext().getRegistry().lookupByNameAndType("vectorStoreService", VectorStoreService.class)
+                    .getEmbeddingStore();
+        }
+        String base = "undertow:http://0.0.0.0:" + port + ShardProtocol.BASE_PATH;
+        LOG.info("Serving {} as a shard on port {}", store.getClass().getSimpleName(), port);
+        
+        // Route 1: top-k search of the served store
+        from(base + "/search?httpMethodRestrict=POST")
+            .routeId("shard-search-" + port)
+            .process(exchange -> {
+                Map<String, Object> request = readJson(exchange);
+                respond(exchange, ShardProtocol.encodeResult(store.search(ShardProtocol.decodeSearch(request))));
+            });
+        
+        // Route 2: add embeddings routed to this shard
+        from(base + "/add?httpMethodRestrict=POST")
+            .routeId("shard-add-" + port)
+            .process(exchange -> {
+                ShardProtocol.applyAdd(store, readJson(exchange));
+                respond(exchange, Map.of("status", "ok"));
+            });
+        
+        // Route 3: remove embeddings by id, ids this shard does not hold are ignored
+        from(base + "/remove?httpMethodRestrict=POST")
+            .routeId("shard-remove-" + port)
+            .process(exchange -> {
+                ShardProtocol.applyRemove(store, readJson(exchange));
+                respond(exchange, Map.of("status", "ok"));
+            });
+    }
+    
+    private Map<String, Object> readJson(Exchange exchange) throws Exception {
+        return objectMapper.readValue(exchange.getIn().getMandatoryBody(byte[].class), JSON_OBJECT);
+    }
+    
+    private void respond(Exchange exchange, Map<String, Object> body) throws Exception {
+        exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/json");
+        exchange.getIn().setBody(objectMapper.writeValueAsBytes(body));
+    }
+}
@@ -1,23 +1,37 @@
 package com.example.docling.rag.config;
 
+import com.example.docling.rag.service.AdaptiveConcurrencyLimit;
+import com.example.docling.rag.service.GuardedChatModel;
+import com.example.docling.rag.service.GuardedStreamingChatModel;
 import dev.langchain4j.data.message.AiMessage;
-import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
 import dev.langchain4j.model.openai.OpenAiChatModel;
-import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.time.Duration;
 
 /**
  * Configuration factory for LangChain4j chat models.
- * This class creates and configures the chat model used for RAG queries.
+ * This class creates and configures the chat models used for RAG queries.
  */
 public class ChatModelFactory {
     
     private static final Logger LOG = LoggerFactory.getLogger(ChatModelFactory.class);
     
+    private static final String MOCK_RESPONSE = "This is a mock response. The actual query was processed, but no OpenAI API key is configured. " +
+            "To get real AI responses, please set the OPENAI_API_KEY environment variable with your OpenAI API key. " +
+            "\n\nYour query and the retrieved context have been processed successfully by the RAG system.";
+    private static final long MOCK_TOKEN_DELAY_MILLIS = 15;
+    
     /**
      * Create a ChatLanguageModel based on environment configuration.
      * Falls back to a mock model if OpenAI API key is not configured.
@@ -40,19 +54,145 @@ public class ChatModelFactory {
         }
     }
     
+    /**
+     * Create a streaming chat model that delivers the answer token by token.
+     * Falls back to a mock model if OpenAI API key is not configured.
+     */
+    public static StreamingChatModel createStreamingChatModel() {
+        String apiKey = System.getenv("OPENAI_API_KEY");
+        
+        if (apiKey != null && !apiKey.isEmpty()) {
+            LOG.info("Configuring OpenAI streaming chat model");
+            return OpenAiStreamingChatModel.builder()
+                    .apiKey(apiKey)
+                    .modelName("gpt-3.5-turbo")
+                    .temperature(0.7)
+                    .maxTokens(500)
+                    .build();
+        } else {
+            return createMockStreamingChatModel();
+        }
+    }
+    
+    /**
+     * Create the concurrency limit shared by the chat models, configured by the {@code chat.limit.*} properties.
+     */
+    public static AdaptiveConcurrencyLimit createConcurrencyLimit(RagProperties properties) {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                properties.getInt("chat.limit.initial", 8),
+                properties.getInt("chat.limit.min", 1),
+                properties.getInt("chat.limit.max", 64),
+                properties.getDouble("chat.limit.backoff", 0.75),
+                properties.getDouble("chat.limit.latency.tolerance", 3.0),
+                properties.getInt("chat.limit.queue.size", 32),
+                properties.getLong("chat.limit.queue.timeout.ms", 500));
+        LOG.info("Chat model concurrency limited adaptively, starting at {}", limit.limit());
+        return limit;
+    }
+    
+    /**
+     * Guard a chat model with the concurrency limit, coalescing concurrent identical requests unless
+     * {@code coalesce} is false.
+     */
+    public static GuardedChatModel createGuardedChatModel(ChatModel chatModel, AdaptiveConcurrencyLimit limit,
+                                                          boolean coalesce) {
+        return new GuardedChatModel(chatModel, limit, coalesce);
+    }
+    
+    /**
+     * Guard a streaming chat model with the concurrency limit.
+     */
+    public static GuardedStreamingChatModel createGuardedStreamingChatModel(StreamingChatModel streamingChatModel,
+                                                                            AdaptiveConcurrencyLimit limit) {
+        return new GuardedStreamingChatModel(streamingChatModel, limit);
+    }
+    
     /**
      * Create a mock chat model for testing without API keys.
      */
-    private static ChatModel createMockChatModel() {
+    public static ChatModel createMockChatModel() {
+        return createMockChatModel(Duration.ZERO);
+    }
+    
+    /**
+     * Create a mock chat model that takes {@code latency} to answer, like a remote model would.
+     */
+    public static ChatModel createMockChatModel(Duration latency) {
         LOG.warn("Using mock chat model - responses will be static");
         return new ChatModel() {
-            public Response<AiMessage> generate(List<ChatMessage> messages) {
-                LOG.info("Mock chat model received {} messages", messages.size());
-                String responseText = "This is a mock response. The actual query was processed, but no OpenAI API key is configured. " +
-                       "To get real AI responses, please set the OPENAI_API_KEY environment variable with your OpenAI API key. " +
-                       "\n\nYour query and the retrieved context have been processed successfully by the RAG system.";
-                return Response.from(AiMessage.from(responseText));
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                LOG.info("Mock chat model received {} messages", chatRequest.messages().size());
+                if (!latency.isZero()) {
+                    try {
+                        Thread.sleep(latency);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while answering", e);
+                    }
+                }
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from(MOCK_RESPONSE))
+                        .build();
+            }
+        };
+    }
+    
+    /**
+     * Create a mock streaming chat model for testing without API keys.
+     * It emits the static mock response word by word from a virtual thread, pausing between words
+     * like a remote model would.
+     */
+    public static StreamingChatModel createMockStreamingChatModel() {
+        return createMockStreamingChatModel(Duration.ofMillis(MOCK_TOKEN_DELAY_MILLIS));
+    }
+    
+    /**
+     * Create a mock streaming chat model that pauses {@code tokenDelay} before every word.
+     */
+    public static StreamingChatModel createMockStreamingChatModel(Duration tokenDelay) {
+        LOG.warn("Using mock streaming chat model - responses will be static");
+        return new StreamingChatModel() {
+            @Override
+            public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                LOG.info("Mock streaming chat model received {} messages", chatRequest.messages().size());
+                Thread.ofVirtual().name("mock-streaming-chat").start(() -> {
+                    MockStreamingHandle handle = new MockStreamingHandle();
+                    PartialResponseContext context = new PartialResponseContext(handle);
+                    try {
+                        for (String token : MOCK_RESPONSE.split("(?<= )")) {
+                            if (handle.isCancelled()) {
+                                return;
+                            }
+                            Thread.sleep(tokenDelay);
+                            handler.onPartialResponse(new PartialResponse(token), context);
+                        }
+                        handler.onCompleteResponse(ChatResponse.builder()
+                                .aiMessage(AiMessage.from(MOCK_RESPONSE))
+                                .build());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        handler.onError(e);
+                    } catch (RuntimeException e) {
+                        handler.onError(e);
+                    }
+                });
             }
         };
     }
+    
+    private static class MockStreamingHandle implements StreamingHandle {
+        
+        private volatile boolean cancelled;
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
 }
@@ -0,0 +1,164 @@
+package com.example.docling.rag.config;
+
+import com.example.docling.rag.service.OnnxEmbeddingModelPool;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Configuration factory for the embedding model behind VectorStoreService.
+ * The model is selected with the {@code embedding.model} property.
+ */
+public class EmbeddingModelFactory {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingModelFactory.class);
+    
+    /**
+     * Create the embedding model described by the application properties.
+     * Supported models are {@code minilm} (All-MiniLM-L6-v2 run in process with ONNX Runtime, default),
+     * {@code minilm-q} (its int8-quantized variant, smaller and faster at a small cost in accuracy),
+     * {@code hash} (deterministic word-hashing vectors, for load tests) and {@code mock} (random vectors,
+     * for development without the model). The ONNX models run on a pool of
+     * {@code embedding.model.sessions} sessions (0 sizes the pool to the cores) in batches of at most
+     * {@code embedding.model.batch.size} texts, and are warmed up here unless {@code embedding.model.warmup}
+     * is false.
+     */
+    public static EmbeddingModel createEmbeddingModel(RagProperties properties) {
+        String model = properties.getString("embedding.model", "minilm").trim().toLowerCase();
+        return switch (model) {
+            case "minilm" -> createOnnxEmbeddingModel(properties, OnnxEmbeddingModelPool.Variant.FP32);
+            case "minilm-q" -> createOnnxEmbeddingModel(properties, OnnxEmbeddingModelPool.Variant.QUANTIZED);
+            case "hash" -> createHashEmbeddingModel(EmbeddingStoreFactory.DEFAULT_DIMENSION);
+            case "mock" -> createMockEmbeddingModel();
+            default -> throw new IllegalArgumentException("Unknown embedding.model: " + model);
+        };
+    }
+    
+    private static EmbeddingModel createOnnxEmbeddingModel(RagProperties properties,
+                                                           OnnxEmbeddingModelPool.Variant variant) {
+        int sessions = properties.getInt("embedding.model.sessions", 0);
+        if (sessions <= 0) {
+            sessions = defaultSessionCount();
+        }
+        OnnxEmbeddingModelPool pool = new OnnxEmbeddingModelPool(variant, sessions,
+                properties.getInt("embedding.model.batch.size", 8));
+        if (properties.getBoolean("embedding.model.warmup", true)) {
+            pool.warmUp();
+        }
+        return pool;
+    }
+    
+    /**
+     * One session per two cores, at most four: each session then runs with two or more intra-op threads,
+     * and the pool stays within a few hundred megabytes of model weights.
+     */
+    private static int defaultSessionCount() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+    
+    /**
+     * Create a deterministic embedding model that costs next to nothing: every word of the text is hashed
+     * into one of {@code dimension} buckets and the counts are normalised. The same text always gets the
+     * same vector and texts sharing words score higher, so load tests see repeatable, plausible retrieval
+     * without paying for model inference.
+     */
+    public static EmbeddingModel createHashEmbeddingModel(int dimension) {
+        LOG.warn("Using hash embedding model - retrieval only matches shared words");
+        return new EmbeddingModel() {
+            @Override
+            public Response<Embedding> embed(String text) {
+                float[] vector = new float[dimension];
+                for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                    if (!word.isEmpty()) {
+                        vector[Math.floorMod(word.hashCode(), dimension)] += 1;
+                    }
+                }
+                double norm = 0;
+                for (float value : vector) {
+                    norm += value * value;
+                }
+                if (norm > 0) {
+                    float scale = (float) (1 / Math.sqrt(norm));
+                    for (int i = 0; i < dimension; i++) {
+                        vector[i] *= scale;
+                    }
+                }
+                return Response.from(Embedding.from(vector));
+            }
+            
+            @Override
+            public Response<Embedding> embed(TextSegment textSegment) {
+                return embed(textSegment.text());
+            }
+            
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+                List<Embedding> embeddings = new ArrayList<>(textSegments.size());
+                for (TextSegment segment : textSegments) {
+                    embeddings.add(embed(segment).content());
+                }
+                return Response.from(embeddings);
+            }
+            
+            @Override
+            public int dimension() {
+                return dimension;
+            }
+            
+            @Override
+            public String modelName() {
+                return "hash";
+            }
+        };
+    }
+    
+    /**
+     * Create a mock embedding model for development/testing.
+     * Vectors are random, so search results carry no meaning.
+     */
+    public static EmbeddingModel createMockEmbeddingModel() {
+        LOG.warn("Using mock embedding model - retrieval results will be random");
+        return new EmbeddingModel() {
+            private final Random random = new Random(42); // Fixed seed for consistent results
+            
+            @Override
+            public Response<Embedding> embed(TextSegment textSegment) {
+                return embed(textSegment.text());
+            }
+            
+            @Override
+            public Response<Embedding> embed(String text) {
+                // Create a simple mock embedding vector (384 dimensions)
+                float[] vector = new float[384];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = (random.nextFloat() - 0.5f) * 2.0f; // Random values between -1 and 1
+                }
+                
+                // Add some text-based variation to make embeddings somewhat meaningful
+                int textHash = text.hashCode();
+                for (int i = 0; i < Math.min(10, vector.length); i++) {
+                    vector[i] += ((textHash >> i) & 1) * 0.1f;
+                }
+                
+                return Response.from(Embedding.from(vector));
+            }
+            
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+                List<Embedding> embeddings = new ArrayList<>();
+                for (TextSegment segment : textSegments) {
+                    embeddings.add(embed(segment).content());
+                }
+                return Response.from(embeddings);
+            }
+        };
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.docling.rag.config;
+
+import com.example.docling.rag.store.FlatEmbeddingStore;
+import com.example.docling.rag.store.HnswEmbeddingStore;
+import com.example.docling.rag.store.HnswIndex;
+import com.example.docling.rag.store.MappedEmbeddingStore;
+import com.example.docling.rag.store.QuantizedVectors;
+import com.example.docling.rag.store.RemoteEmbeddingStore;
+import com.example.docling.rag.store.ShardProtocol;
+import com.example.docling.rag.store.ShardedEmbeddingStore;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration factory for the embedding store behind VectorStoreService.
+ * The store type is selected with the {@code vectorstore.type} property and the search index
+ * with {@code vectorstore.index}; {@code vectorstore.shards} splits it into shards.
+ */
+public class EmbeddingStoreFactory {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingStoreFactory.class);
+    
+    public static final int DEFAULT_DIMENSION = 384;
+    
+    /**
+     * Create the embedding store described by the application properties.
+     * Supported types are {@code memory} (default) and {@code mapped}; supported indexes are
+     * {@code flat} (exact linear scan, default) and {@code hnsw} (approximate nearest neighbours). Flat
+     * searches score with the Vector API and split large scans across threads ({@code vectorstore.flat.*}),
+     * over a primitive arena in memory or over the mapped records.
+     * The mapped store can additionally keep {@code int8} or {@code float16} copies of the vectors
+     * for the first pass of flat searches ({@code vectorstore.quantization}).
+     * <p>
+     * When {@code vectorstore.shards} lists shards, a {@link ShardedEmbeddingStore} is created over them:
+     * {@code local} for a store of the configured type in this JVM (a mapped shard {@code i} lives in
+     * {@code <vectorstore.path>/shard-i}), or the base URL of a node serving its store on the shard API.
+     */
+    public static EmbeddingStore<TextSegment> createEmbeddingStore(RagProperties properties) {
+        String shards = properties.getString("vectorstore.shards", "");
+        if (!shards.isEmpty()) {
+            return createShardedStore(properties, shards);
+        }
+        return createLocalStore(properties, Paths.get(properties.getString("vectorstore.path", "data/vectorstore")));
+    }
+    
+    /**
+     * Create the store of a named collection in {@code directory}. Collection stores are always
+     * memory-mapped, whatever {@code vectorstore.type} says, so a collection evicted from memory keeps
+     * its records on disk and is reopened from them; they use the index and quantization settings of the
+     * default store and are never sharded.
+     */
+    public static MappedEmbeddingStore createCollectionStore(RagProperties properties, Path directory) {
+        return MappedEmbeddingStore.open(directory, properties.getInt("vectorstore.dimension", DEFAULT_DIMENSION),
+                createHnswParameters(properties), createQuantizationParameters(properties),
+                createFlatParameters(properties));
+    }
+    
+    /**
+     * Create a sharded store over the comma-separated shard list.
+     */
+    private static ShardedEmbeddingStore createShardedStore(RagProperties properties, String shardList) {
+        Path root = Paths.get(properties.getString("vectorstore.path", "data/vectorstore"));
+        Duration searchTimeout = Duration.ofMillis(properties.getLong("vectorstore.shards.timeout.ms", 500));
+        Duration requestTimeout = Duration.ofMillis(properties.getLong("vectorstore.shards.request.timeout.ms", 30000));
+        
+        List<EmbeddingStore<TextSegment>> shards = new ArrayList<>();
+        boolean persistent = properties.getString("vectorstore.type", "memory").equals("mapped");
+        for (String shard : shardList.split(",")) {
+            shard = shard.strip();
+            if (shard.equals("local")) {
+                shards.add(createLocalStore(properties, root.resolve("shard-" + shards.size())));
+            } else if (shard.startsWith("http://") || shard.startsWith("https://")) {
+                String base = shard.replaceAll("/+$", "");
+                shards.add(new RemoteEmbeddingStore(URI.create(base.endsWith(ShardProtocol.BASE_PATH)
+                        ? base : base + ShardProtocol.BASE_PATH), requestTimeout));
+            } else {
+                throw new IllegalArgumentException("Unknown shard '" + shard + "' in vectorstore.shards, "
+                        + "expected local or an http(s) URL");
+            }
+        }
+        LOG.info("Configuring sharded embedding store with {} shards {} and a {} ms search timeout", shards.size(),
+                shards, searchTimeout.toMillis());
+        return new ShardedEmbeddingStore(shards, searchTimeout, persistent ? root : null);
+    }
+    
+    /**
+     * Create a store in this JVM; {@code path} is only used by the mapped store.
+     */
+    private static EmbeddingStore<TextSegment> createLocalStore(RagProperties properties, Path path) {
+        String type = properties.getString("vectorstore.type", "memory");
+        int dimension = properties.getInt("vectorstore.dimension", DEFAULT_DIMENSION);
+        HnswIndex.Parameters hnswParameters = createHnswParameters(properties);
+        QuantizedVectors.Parameters quantization = createQuantizationParameters(properties);
+        
+        switch (type) {
+            case "memory":
+                if (quantization != null) {
+                    throw new IllegalArgumentException("vectorstore.quantization requires vectorstore.type=mapped");
+                }
+                if (hnswParameters != null) {
+                    LOG.info("Configuring in-memory embedding store with HNSW index {}", hnswParameters);
+                    return new HnswEmbeddingStore(dimension, hnswParameters);
+                }
+                FlatEmbeddingStore flatStore = new FlatEmbeddingStore(dimension, createFlatParameters(properties));
+                LOG.info("Configuring in-memory embedding store with exact search ({} kernel)", flatStore.kernel());
+                return flatStore;
+            case "mapped":
+                MappedEmbeddingStore mappedStore = MappedEmbeddingStore.open(path, dimension, hnswParameters,
+                        quantization, createFlatParameters(properties));
+                LOG.info("Configuring memory-mapped embedding store at {} with {} index{}", path,
+                        hnswParameters != null ? "HNSW" : "flat (" + mappedStore.kernel() + " kernel)",
+                        quantization != null ? " and " + quantization.encoding() + " quantization" : "");
+                return mappedStore;
+            default:
+                throw new IllegalArgumentException("Unknown vectorstore.type: " + type);
+        }
+    }
+    
+    /**
+     * Read the HNSW settings, or return {@code null} when the flat index is selected.
+     */
+    private static HnswIndex.Parameters createHnswParameters(RagProperties properties) {
+        String index = properties.getString("vectorstore.index", "flat");
+        switch (index) {
+            case "flat":
+                return null;
+            case "hnsw":
+                return new HnswIndex.Parameters(
+                        properties.getInt("vectorstore.hnsw.m", 16),
+                        properties.getInt("vectorstore.hnsw.ef.construction", 200),
+                        properties.getInt("vectorstore.hnsw.ef.search", 64));
+            default:
+                throw new IllegalArgumentException("Unknown vectorstore.index: " + index);
+        }
+    }
+    
+    /**
+     * Read the settings of the exact search, used by the in-memory and the mapped flat store.
+     */
+    private static FlatEmbeddingStore.Parameters createFlatParameters(RagProperties properties) {
+        FlatEmbeddingStore.Parameters defaults = FlatEmbeddingStore.Parameters.defaults();
+        return new FlatEmbeddingStore.Parameters(
+                properties.getBoolean("vectorstore.flat.simd", defaults.vectorized()),
+                properties.getInt("vectorstore.flat.parallelism", defaults.parallelism()),
+                properties.getInt("vectorstore.flat.parallel.threshold", defaults.parallelThreshold()));
+    }
+    
+    /**
+     * Read the quantization settings, or return {@code null} when vectors are only stored at full precision.
+     */
+    private static QuantizedVectors.Parameters createQuantizationParameters(RagProperties properties) {
+        String quantization = properties.getString("vectorstore.quantization", "none");
+        if (quantization.equals("none")) {
+            return null;
+        }
+        return new QuantizedVectors.Parameters(QuantizedVectors.Encoding.parse(quantization),
+                properties.getInt("vectorstore.quantization.rescore.factor", 4));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.docling.rag.config;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.spi.PropertiesComponent;
+
+/**
+ * Typed access to the application properties loaded by Camel Main.
+ * Every lookup takes a default so routes keep working when a property is not set.
+ */
+public class RagProperties {
+    
+    private final PropertiesComponent propertiesComponent;
+    
+    public RagProperties(CamelContext camelContext) {
+        this.propertiesComponent = camelContext.getPropertiesComponent();
+    }
+    
+    public String getString(String key, String defaultValue) {
+        return propertiesComponent.resolveProperty(key)
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .orElse(defaultValue);
+    }
+    
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+    
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+    
+    public double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+    
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.docling.rag.config;
+
+/**
+ * Tuning settings for VectorStoreService.
+ * Defaults apply when the service is created without application properties.
+ */
+public class VectorStoreSettings {
+    
+    private int chunkSize = 500;
+    private int chunkOverlap = 50;
+    private int embeddingBatchSize = 32;
+    private long embeddingBatchMaxWaitMillis = 20;
+    private int embeddingBatchWorkers = 1;
+    private int embeddingBatchQueueSize = 2048;
+    private int indexConcurrency = 1;
+    private int indexQueueSize = 4;
+    private int queryEmbeddingCacheSize = 1000;
+    private int retrievalCacheSize = 1000;
+    
+    /**
+     * Read the settings from the application properties, keeping defaults for missing keys.
+     */
+    public static VectorStoreSettings from(RagProperties properties) {
+        VectorStoreSettings settings = new VectorStoreSettings();
+        settings.setChunkSize(properties.getInt("document.chunk.size", settings.getChunkSize()));
+        settings.setChunkOverlap(properties.getInt("document.chunk.overlap", settings.getChunkOverlap()));
+        settings.setEmbeddingBatchSize(properties.getInt("embedding.batch.size", settings.getEmbeddingBatchSize()));
+        settings.setEmbeddingBatchMaxWaitMillis(properties.getLong("embedding.batch.max.wait.ms",
+                settings.getEmbeddingBatchMaxWaitMillis()));
+        settings.setEmbeddingBatchWorkers(properties.getInt("embedding.batch.workers", settings.getEmbeddingBatchWorkers()));
+        settings.setEmbeddingBatchQueueSize(properties.getInt("embedding.batch.queue.size",
+                settings.getEmbeddingBatchQueueSize()));
+        settings.setIndexConcurrency(properties.getInt("ingest.index.concurrency", settings.getIndexConcurrency()));
+        settings.setIndexQueueSize(properties.getInt("ingest.index.queue.size", settings.getIndexQueueSize()));
+        settings.setQueryEmbeddingCacheSize(properties.getInt("query.cache.embeddings.size",
+                settings.getQueryEmbeddingCacheSize()));
+        settings.setRetrievalCacheSize(properties.getInt("query.cache.results.size", settings.getRetrievalCacheSize()));
+        return settings;
+    }
+    
+    public int getChunkSize() {
+        return chunkSize;
+    }
+    
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+    
+    public int getChunkOverlap() {
+        return chunkOverlap;
+    }
+    
+    public void setChunkOverlap(int chunkOverlap) {
+        this.chunkOverlap = chunkOverlap;
+    }
+    
+    public int getEmbeddingBatchSize() {
+        return embeddingBatchSize;
+    }
+    
+    public void setEmbeddingBatchSize(int embeddingBatchSize) {
+        this.embeddingBatchSize = embeddingBatchSize;
+    }
+    
+    public long getEmbeddingBatchMaxWaitMillis() {
+        return embeddingBatchMaxWaitMillis;
+    }
+    
+    public void setEmbeddingBatchMaxWaitMillis(long embeddingBatchMaxWaitMillis) {
+        this.embeddingBatchMaxWaitMillis = embeddingBatchMaxWaitMillis;
+    }
+    
+    public int getEmbeddingBatchWorkers() {
+        return embeddingBatchWorkers;
+    }
+    
+    public void setEmbeddingBatchWorkers(int embeddingBatchWorkers) {
+        this.embeddingBatchWorkers = embeddingBatchWorkers;
+    }
+    
+    public int getEmbeddingBatchQueueSize() {
+        return embeddingBatchQueueSize;
+    }
+    
+    public void setEmbeddingBatchQueueSize(int embeddingBatchQueueSize) {
+        this.embeddingBatchQueueSize = embeddingBatchQueueSize;
+    }
+    
+    public int getIndexConcurrency() {
+        return indexConcurrency;
+    }
+    
+    public void setIndexConcurrency(int indexConcurrency) {
+        this.indexConcurrency = indexConcurrency;
+    }
+    
+    public int getIndexQueueSize() {
+        return indexQueueSize;
+    }
+    
+    public void setIndexQueueSize(int indexQueueSize) {
+        this.indexQueueSize = indexQueueSize;
+    }
+    
+    public int getQueryEmbeddingCacheSize() {
+        return queryEmbeddingCacheSize;
+    }
+    
+    public void setQueryEmbeddingCacheSize(int queryEmbeddingCacheSize) {
+        this.queryEmbeddingCacheSize = queryEmbeddingCacheSize;
+    }
+    
+    public int getRetrievalCacheSize() {
+        return retrievalCacheSize;
+    }
+    
+    public void setRetrievalCacheSize(int retrievalCacheSize) {
+        this.retrievalCacheSize = retrievalCacheSize;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.docling.rag.example;
+
+import org.apache.camel.Consumer;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.support.DefaultComponent;
+import org.apache.camel.support.DefaultEndpoint;
+import org.apache.camel.support.DefaultProducer;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the {@code docling} component, bound under that name to run the application without a
+ * docling backend. Documents are expected to be text or markdown already and are returned as they are,
+ * after a delay of {@code latency} plus {@code latencyPerKilobyte} for every kilobyte of input, which
+ * approximates the conversion time of the real backend.
+ * <p>
+ * Form feeds separate the pages of a document. A {@code --page-range first-last} pair in the custom
+ * arguments header returns only those pages, so documents can be converted by page ranges.
+ */
+public class DoclingStandIn extends DefaultComponent {
+    
+    private final Duration latency;
+    private final Duration latencyPerKilobyte;
+    private final AtomicLong conversions = new AtomicLong();
+    
+    public DoclingStandIn(Duration latency, Duration latencyPerKilobyte) {
+        this.latency = latency;
+        this.latencyPerKilobyte = latencyPerKilobyte;
+    }
+    
+    /**
+     * Documents converted so far.
+     */
+    public long conversions() {
+        return conversions.get();
+    }
+    
+    @Override
+    protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) {
+        // Accept and ignore the docling options, such as outputFormat
+        parameters.clear();
+        return new DefaultEndpoint(uri, this) {
+            @Override
+            public Producer createProducer() {
+                return new DefaultProducer(this) {
+                    @Override
+                    public void process(Exchange exchange) throws Exception {
+                        String text = selectPages(read(exchange), exchange.getIn().getHeader(
+                                "CamelDoclingCustomArguments", Collection.class));
+                        Thread.sleep(latency.plus(latencyPerKilobyte.multipliedBy(text.length() / 1024)));
+                        conversions.incrementAndGet();
+                        exchange.getIn().setBody(text);
+                    }
+                };
+            }
+            
+            @Override
+            public Consumer createConsumer(Processor processor) {
+                throw new UnsupportedOperationException("The docling stand-in only converts documents");
+            }
+        };
+    }
+    
+    /**
+     * The pages of the text named by a {@code --page-range} argument, or all of them, joined by blank lines.
+     */
+    private static String selectPages(String text, Collection<?> arguments) {
+        String[] pages = text.split("\f", -1);
+        if (arguments != null) {
+            Object[] values = arguments.toArray();
+            for (int i = 0; i + 1 < values.length; i++) {
+                if ("--page-range".equals(values[i]) && String.valueOf(values[i + 1]).matches("\\d+-\\d+")) {
+                    String[] range = String.valueOf(values[i + 1]).split("-");
+                    int first = Math.max(1, Integer.parseInt(range[0]));
+                    int last = Math.min(pages.length, Integer.parseInt(range[1]));
+                    return first > last ? "" : String.join("\n\n", Arrays.copyOfRange(pages, first - 1, last));
+                }
+            }
+        }
+        return String.join("\n\n", pages);
+    }
+    
+    /**
+     * Content of the document in the body: bytes, a file, or a path or text like the docling component takes.
+     */
+    private static String read(Exchange exchange) throws Exception {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        } else if (body instanceof Path path) {
+            return Files.readString(path);
+        } else if (body instanceof File file) {
+            return Files.readString(file.toPath());
+        }
+        String text = exchange.getIn().getMandatoryBody(String.class);
+        if (text.length() < 4096 && !text.contains("\n")) {
+            try {
+                Path path = Paths.get(text);
+                if (Files.isRegularFile(path)) {
+                    return Files.readString(path);
+                }
+            } catch (InvalidPathException e) {
+                // Not a path but the document text itself
+            }
+        }
+        return text;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.docling.rag.example;
+
+import com.example.docling.rag.store.HnswIndex;
+import com.example.docling.rag.store.MappedEmbeddingStore;
+import com.example.docling.rag.store.ScoredOrdinal;
+import com.example.docling.rag.store.VectorValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import static com.example.docling.rag.example.ReportSupport.generateClustered;
+import static com.example.docling.rag.example.ReportSupport.mean;
+import static com.example.docling.rag.example.ReportSupport.p99;
+import static com.example.docling.rag.example.ReportSupport.parseInts;
+import static com.example.docling.rag.example.ReportSupport.parseOptions;
+import static com.example.docling.rag.example.ReportSupport.perturb;
+
+/**
+ * Recall-vs-latency report for the HNSW index against the exact brute-force scan.
+ * <p>
+ * With {@code --store <path>} the vectors of an existing mapped store are used, otherwise clustered
+ * synthetic vectors are generated. Every combination of {@code --m}, {@code --ef-construction} and
+ * {@code --ef-search} is built and queried, and recall@k plus mean/p99 latency are reported next to
+ * the exact scan. The table is also written as CSV to {@code --output}.
+ * <p>
+ * Run with {@code gradle hnswRecallReport -PreportArgs="--vectors 50000 --m 16,32"}.
+ */
+public class HnswRecallReport {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(HnswRecallReport.class);
+    
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        int vectorCount = Integer.parseInt(options.getOrDefault("vectors", "20000"));
+        int dimension = Integer.parseInt(options.getOrDefault("dimension", "384"));
+        int queryCount = Integer.parseInt(options.getOrDefault("queries", "200"));
+        int k = Integer.parseInt(options.getOrDefault("k", "5"));
+        int[] mValues = parseInts(options.getOrDefault("m", "8,16,32"));
+        int[] efConstructionValues = parseInts(options.getOrDefault("ef-construction", "100,200"));
+        int[] efSearchValues = parseInts(options.getOrDefault("ef-search", "16,32,64,128,256"));
+        Path output = Paths.get(options.getOrDefault("output", "build/reports/hnsw-recall.csv"));
+        
+        Random random = new Random(7);
+        VectorValues vectors;
+        int size;
+        MappedEmbeddingStore store = null;
+        if (options.containsKey("store")) {
+            store = MappedEmbeddingStore.open(Paths.get(options.get("store")), dimension);
+            vectors = store;
+            size = store.size();
+            LOG.info("Using {} vectors from {}", size, store.directory());
+        } else {
+            vectors = new ArrayVectorValues(generateClustered(vectorCount, dimension, random));
+            size = vectorCount;
+            LOG.info("Using {} synthetic vectors of dimension {}", size, dimension);
+        }
+        if (size == 0) {
+            throw new IllegalStateException("No vectors to index");
+        }
+        
+        float[][] queries = new float[queryCount][];
+        for (int i = 0; i < queryCount; i++) {
+            queries[i] = perturb(vectors.vector(random.nextInt(size)), random);
+        }
+        
+        // Ground truth and baseline latency from the exact scan
+        List<Set<Integer>> truth = new ArrayList<>();
+        long[] exactNanos = new long[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            long start = System.nanoTime();
+            truth.add(exactTopK(vectors, size, queries[i], k));
+            exactNanos[i] = System.nanoTime() - start;
+        }
+        
+        List<String> rows = new ArrayList<>();
+        rows.add("index,m,efConstruction,efSearch,buildMs,recall,meanMicros,p99Micros");
+        rows.add(String.format("flat,,,,0,1.0000,%.1f,%.1f", mean(exactNanos) / 1000.0, p99(exactNanos) / 1000.0));
+        LOG.info(String.format("%-6s %4s %6s %6s %9s %8s %12s %12s",
+                "index", "m", "efC", "efS", "build ms", "recall", "mean us", "p99 us"));
+        LOG.info(String.format("%-6s %4s %6s %6s %9d %8.4f %12.1f %12.1f",
+                "flat", "-", "-", "-", 0, 1.0, mean(exactNanos) / 1000.0, p99(exactNanos) / 1000.0));
+        
+        for (int m : mValues) {
+            for (int efConstruction : efConstructionValues) {
+                HnswIndex index = new HnswIndex(vectors, new HnswIndex.Parameters(m, efConstruction, 64));
+                long buildStart = System.currentTimeMillis();
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    index.add(ordinal);
+                }
+                long buildMs = System.currentTimeMillis() - buildStart;
+                
+                for (int efSearch : efSearchValues) {
+                    for (float[] query : queries) {
+                        index.search(query, k, efSearch, null); // warm up
+                    }
+                    long[] nanos = new long[queryCount];
+                    int found = 0;
+                    for (int i = 0; i < queryCount; i++) {
+                        long start = System.nanoTime();
+                        List<ScoredOrdinal> hits = index.search(queries[i], k, efSearch, null);
+                        nanos[i] = System.nanoTime() - start;
+                        for (ScoredOrdinal hit : hits) {
+                            if (truth.get(i).contains(hit.ordinal())) {
+                                found++;
+                            }
+                        }
+                    }
+                    double recall = (double) found / ((long) queryCount * Math.min(k, size));
+                    rows.add(String.format("hnsw,%d,%d,%d,%d,%.4f,%.1f,%.1f", m, efConstruction, efSearch, buildMs,
+                            recall, mean(nanos) / 1000.0, p99(nanos) / 1000.0));
+                    LOG.info(String.format("%-6s %4d %6d %6d %9d %8.4f %12.1f %12.1f", "hnsw", m, efConstruction,
+                            efSearch, buildMs, recall, mean(nanos) / 1000.0, p99(nanos) / 1000.0));
+                }
+            }
+        }
+        
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+            rows.forEach(writer::println);
+        }
+        LOG.info("Report written to {}", output.toAbsolutePath());
+        
+        if (store != null) {
+            store.close();
+        }
+    }
+    
+    private static Set<Integer> exactTopK(VectorValues vectors, int size, float[] query, int k) {
+        PriorityQueue<ScoredOrdinal> topK = new PriorityQueue<>();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            double score = vectors.similarity(query, ordinal);
+            if (topK.size() < k) {
+                topK.add(new ScoredOrdinal(ordinal, score));
+            } else if (score > topK.peek().score()) {
+                topK.poll();
+                topK.add(new ScoredOrdinal(ordinal, score));
+            }
+        }
+        Set<Integer> ordinals = new HashSet<>();
+        topK.forEach(hit -> ordinals.add(hit.ordinal()));
+        return ordinals;
+    }
+    
+    private static class ArrayVectorValues implements VectorValues {
+        
+        private final float[][] vectors;
+        
+        ArrayVectorValues(float[][] vectors) {
+            this.vectors = vectors;
+        }
+        
+        @Override
+        public int dimension() {
+            return vectors[0].length;
+        }
+        
+        @Override
+        public float[] vector(int ordinal) {
+            return vectors[ordinal];
+        }
+    }
+}
@@ -0,0 +1,589 @@
+package com.example.docling.rag.example;
+
+import com.example.docling.rag.DoclingRagApplication;
+import com.example.docling.rag.config.ChatModelFactory;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.apache.camel.main.Main;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static com.example.docling.rag.example.ReportSupport.parseOptions;
+import static com.example.docling.rag.example.ReportSupport.percentile;
+
+/**
+ * Open-loop load and soak test of the application, run in process with local stand-ins for its
+ * dependencies: {@link DoclingStandIn} instead of the docling backend, the mock chat models of
+ * {@link ChatModelFactory} with an artificial latency, and the deterministic {@code hash} embedding
+ * model (unless {@code embedding.model} is set as a system property).
+ * <p>
+ * Requests arrive at {@code --rate} per second with exponentially distributed gaps, however long earlier
+ * requests take, so an overloaded server builds a backlog instead of slowing the test down. Latency is
+ * measured from the scheduled arrival. {@code --mix} weighs three operations: {@code query}
+ * (POST /api/query), {@code ingest} (POST /api/ingest of a generated document) and {@code watch} (a
+ * generated document dropped into the watched directory, done when its result appears in the output
+ * directory). Documents reuse {@code --documents} names with new content, so the store keeps its size
+ * during a soak. The store, caches and watched directories live in a temporary directory that is deleted
+ * after the run, unless their paths are set as system properties.
+ * <p>
+ * Every {@code --interval} seconds throughput, p99 latency, GC pauses and the heap after GC are logged
+ * and written as CSV to {@code --output}. The final report gives p50/p95/p99 latency and throughput per
+ * operation, GC pause statistics and the growth of the heap after GC, leaving out the first
+ * {@code --warmup} seconds. Load generator and application share the JVM, so GC figures include both.
+ * <p>
+ * Run with {@code gradle loadTestReport -PreportArgs="--rate 50 --duration 3600 --chat-latency-ms 800"}.
+ */
+public class LoadTestReport {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTestReport.class);
+    
+    private static final URI BASE_URI = URI.create("http://localhost:8080");
+    private static final String[] WORDS = {
+        "document", "pipeline", "embedding", "vector", "search", "chunk", "route", "camel", "docling",
+        "parse", "markdown", "query", "answer", "context", "model", "token", "latency", "throughput",
+        "index", "shard", "cache", "batch", "queue", "worker", "memory", "heap", "garbage", "collector",
+        "table", "section", "heading", "paragraph", "source", "filter", "tag", "partition", "score",
+        "similarity", "cosine", "neighbour", "graph", "layer", "quantized", "precision", "recall",
+        "invoice", "contract", "report", "policy", "customer", "product", "release", "incident",
+        "deployment", "cluster", "node", "request", "response", "timeout", "retry", "budget"
+    };
+    
+    private enum Operation {
+        QUERY, INGEST, WATCH
+    }
+    
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final Map<Operation, Samples> samples = new EnumMap<>(Operation.class);
+    private final Map<String, Long> pendingFiles = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final GcMonitor gcMonitor = new GcMonitor();
+    private final long seed;
+    private final int documents;
+    private final int documentKilobytes;
+    private final Duration requestTimeout;
+    private final Path inputDirectory;
+    private final Path outputDirectory;
+    private final Path failedDirectory;
+    private volatile long measureFrom;
+    
+    private LoadTestReport(long seed, int documents, int documentKilobytes, Duration requestTimeout) {
+        this.seed = seed;
+        this.documents = documents;
+        this.documentKilobytes = documentKilobytes;
+        this.requestTimeout = requestTimeout;
+        this.inputDirectory = Paths.get(System.getProperty("ingest.input.path"));
+        this.outputDirectory = Paths.get(System.getProperty("ingest.output.path"));
+        this.failedDirectory = Paths.get(System.getProperty("ingest.failed.path"));
+        for (Operation operation : Operation.values()) {
+            samples.put(operation, new Samples());
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "20"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "120"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "15"));
+        long intervalSeconds = Long.parseLong(options.getOrDefault("interval", "10"));
+        double[] mix = parseMix(options.getOrDefault("mix", "query=8,ingest=1,watch=1"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "2000"));
+        Duration chatLatency = Duration.ofMillis(Long.parseLong(options.getOrDefault("chat-latency-ms", "500")));
+        Duration chatTokenDelay = Duration.ofMillis(Long.parseLong(options.getOrDefault("chat-token-delay-ms", "15")));
+        Duration doclingLatency = Duration.ofMillis(Long.parseLong(options.getOrDefault("docling-latency-ms", "200")));
+        Duration doclingPerKilobyte = Duration.ofMillis(Long.parseLong(options.getOrDefault("docling-ms-per-kb", "5")));
+        Path output = Paths.get(options.getOrDefault("output", "build/reports/load-test.csv"));
+        
+        // The store, caches, spooled uploads and watched directories live in a scratch directory, so the
+        // test neither reads nor overwrites the data of the application; it is deleted after the run
+        Path scratch = Files.createTempDirectory("load-test");
+        Map<String, String> paths = Map.of("vectorstore.path", "vectorstore", "ingest.parse.cache.path", "parse-cache",
+                "ingest.spool.path", "spool", "ingest.jobs.path", "jobs", "ingest.input.path", "input",
+                "ingest.output.path", "output", "ingest.failed.path", "failed");
+        paths.forEach((property, name) -> {
+            if (System.getProperty(property) == null) {
+                System.setProperty(property, scratch.resolve(name).toString());
+            }
+        });
+        LoadTestReport test = new LoadTestReport(Long.parseLong(options.getOrDefault("seed", "1")),
+                Integer.parseInt(options.getOrDefault("documents", "200")),
+                Integer.parseInt(options.getOrDefault("document-kb", "4")),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("request-timeout", "60"))));
+        
+        // Deterministic embeddings unless a model is chosen explicitly
+        if (System.getProperty("embedding.model") == null) {
+            System.setProperty("embedding.model", "hash");
+        }
+        Main main = DoclingRagApplication.createMain(ChatModelFactory.createMockChatModel(chatLatency),
+                ChatModelFactory.createMockStreamingChatModel(chatTokenDelay));
+        DoclingStandIn docling = new DoclingStandIn(doclingLatency, doclingPerKilobyte);
+        main.bind("docling", docling);
+        try {
+            main.start();
+            test.awaitReady();
+            LOG.info("Running {} requests/s for {} s ({} s warmup), mix query/ingest/watch {}", rate, durationSeconds,
+                    warmupSeconds, Arrays.toString(mix));
+            test.run(rate, mix, maxInFlight, durationSeconds, warmupSeconds, intervalSeconds, output);
+            LOG.info("Docling stand-in converted {} documents", docling.conversions());
+        } finally {
+            main.stop();
+            try (Stream<Path> files = Files.walk(scratch)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+    
+    private void run(double rate, double[] mix, int maxInFlight, long durationSeconds, long warmupSeconds,
+                     long intervalSeconds, Path output) throws Exception {
+        Files.createDirectories(inputDirectory);
+        gcMonitor.install();
+        
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        Thread scheduler = Thread.ofPlatform().name("load-scheduler").start(() -> schedule(rate, mix, maxInFlight, end));
+        Thread watcher = Thread.ofVirtual().name("load-watch-poller").start(() -> pollWatchedFiles(scheduler));
+        
+        List<String> rows = new ArrayList<>();
+        rows.add("elapsedSeconds,operation,completed,errors,throughput,p50Ms,p99Ms,inFlight,gcPauses,gcPauseMs,heapAfterGcMb");
+        LOG.info(String.format("%8s %-7s %9s %7s %9s %9s %9s %9s %12s %9s",
+                "elapsed", "op", "completed", "errors", "req/s", "p50 ms", "p99 ms", "in flight", "gc pauses", "heap MB"));
+        long lastReport = start;
+        while (scheduler.isAlive() || inFlight.get() > 0) {
+            Thread.sleep(200);
+            if (System.nanoTime() - lastReport >= TimeUnit.SECONDS.toNanos(intervalSeconds)) {
+                lastReport = logInterval(rows, start, lastReport);
+            }
+        }
+        logInterval(rows, start, lastReport);
+        watcher.join(TimeUnit.SECONDS.toMillis(5));
+        
+        report(Math.max(1, end - measureFrom) / 1e9);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+            rows.forEach(writer::println);
+        }
+        LOG.info("Intervals written to {}", output.toAbsolutePath());
+    }
+    
+    /**
+     * Log throughput, latency, GC pauses and heap of the interval since {@code lastReport}, returning its end.
+     */
+    private long logInterval(List<String> rows, long start, long lastReport) {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastReport) / 1e9);
+        long elapsed = TimeUnit.NANOSECONDS.toSeconds(now - start);
+        GcMonitor.Interval gc = gcMonitor.drainInterval();
+        for (Operation operation : Operation.values()) {
+            Samples.Interval interval = samples.get(operation).drainInterval();
+            long[] latencies = interval.latencies();
+            double p50 = millis(percentile(latencies, 0.5));
+            double p99 = millis(percentile(latencies, 0.99));
+            rows.add(String.format("%d,%s,%d,%d,%.2f,%.1f,%.1f,%d,%d,%d,%.1f", elapsed, operation.name().toLowerCase(),
+                    latencies.length, interval.errors(), latencies.length / seconds, p50, p99, inFlight.get(),
+                    gc.pauses(), gc.pauseMillis(), megabytes(gc.heapAfterGc())));
+            LOG.info(String.format("%7ds %-7s %9d %7d %9.1f %9.1f %9.1f %9d %4d/%5dms %9.1f", elapsed,
+                    operation.name().toLowerCase(), latencies.length, interval.errors(), latencies.length / seconds,
+                    p50, p99, inFlight.get(), gc.pauses(), gc.pauseMillis(), megabytes(gc.heapAfterGc())));
+        }
+        return now;
+    }
+    
+    /**
+     * Start requests at their scheduled arrival times, exponentially distributed around {@code rate} per second.
+     */
+    private void schedule(double rate, double[] mix, int maxInFlight, long end) {
+        Random random = new Random(seed);
+        double total = Arrays.stream(mix).sum();
+        long next = System.nanoTime();
+        while (true) {
+            next += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+            if (next >= end) {
+                return;
+            }
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            
+            double pick = random.nextDouble() * total;
+            Operation operation = Operation.values()[Operation.values().length - 1];
+            for (int i = 0; i < mix.length; i++) {
+                pick -= mix[i];
+                if (pick < 0) {
+                    operation = Operation.values()[i];
+                    break;
+                }
+            }
+            if (inFlight.get() >= maxInFlight) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            long scheduled = next;
+            Operation chosen = operation;
+            inFlight.incrementAndGet();
+            Thread.ofVirtual().start(() -> execute(chosen, scheduled));
+        }
+    }
+    
+    private void execute(Operation operation, long scheduled) {
+        long n = sequence.getAndIncrement();
+        boolean measuring = scheduled >= measureFrom;
+        boolean watched = false;
+        try {
+            if (operation == Operation.WATCH) {
+                // Completed by the poller once the document is ingested
+                watched = dropFile(n, scheduled);
+                if (!watched) {
+                    dropped.incrementAndGet();
+                }
+                return;
+            }
+            send(operation == Operation.QUERY
+                    ? HttpRequest.newBuilder(BASE_URI.resolve("/api/query"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"query\":\"" + query(new Random(seed + n)) + "\"}"))
+                    : HttpRequest.newBuilder(BASE_URI.resolve("/api/ingest"))
+                            .header("Content-Type", "application/octet-stream")
+                            .header("documentName", "load-ingest-" + (n % documents) + ".md")
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(document(new Random(seed + n)))));
+            samples.get(operation).record(System.nanoTime() - scheduled, measuring);
+        } catch (Exception e) {
+            samples.get(operation).error(measuring);
+            LOG.debug("{} failed: {}", operation, e.toString());
+        } finally {
+            if (!watched) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+    
+    private void send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(request.timeout(requestTimeout).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode());
+        }
+    }
+    
+    /**
+     * Drop a generated document into the watched directory, written under a hidden name first so the file
+     * consumer never sees it half written. Returns false if its name is still being processed.
+     */
+    private boolean dropFile(long n, long scheduled) throws IOException {
+        String name = "load-watch-" + (n % documents) + ".md";
+        if (pendingFiles.putIfAbsent(name, scheduled) != null) {
+            return false;
+        }
+        try {
+            Path hidden = inputDirectory.resolve("." + name);
+            Files.write(hidden, document(new Random(seed + n)));
+            Files.move(hidden, inputDirectory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            pendingFiles.remove(name);
+            throw e;
+        }
+    }
+    
+    /**
+     * Complete watched files once the ingestion route wrote their result, or moved them to the failed directory.
+     */
+    private void pollWatchedFiles(Thread scheduler) {
+        while (scheduler.isAlive() || !pendingFiles.isEmpty()) {
+            for (Map.Entry<String, Long> pending : pendingFiles.entrySet()) {
+                String name = pending.getKey();
+                long scheduled = pending.getValue();
+                try {
+                    Path result = outputDirectory.resolve(name + ".processed.txt");
+                    Path failed = failedDirectory.resolve(name);
+                    if (Files.deleteIfExists(result)) {
+                        samples.get(Operation.WATCH).record(System.nanoTime() - scheduled, scheduled >= measureFrom);
+                    } else if (Files.deleteIfExists(failed)) {
+                        samples.get(Operation.WATCH).error(scheduled >= measureFrom);
+                    } else if (System.nanoTime() - scheduled > requestTimeout.toNanos()) {
+                        samples.get(Operation.WATCH).error(scheduled >= measureFrom);
+                    } else {
+                        continue;
+                    }
+                } catch (IOException e) {
+                    samples.get(Operation.WATCH).error(scheduled >= measureFrom);
+                }
+                pendingFiles.remove(name);
+                inFlight.decrementAndGet();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+    }
+    
+    private void report(double measuredSeconds) {
+        LOG.info("");
+        LOG.info(String.format("%-7s %9s %7s %9s %9s %9s %9s %9s", "op", "count", "errors", "req/s", "p50 ms",
+                "p95 ms", "p99 ms", "max ms"));
+        for (Operation operation : Operation.values()) {
+            Samples.Interval measured = samples.get(operation).measured();
+            long[] latencies = measured.latencies();
+            LOG.info(String.format("%-7s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f", operation.name().toLowerCase(),
+                    latencies.length, measured.errors(), latencies.length / measuredSeconds,
+                    millis(percentile(latencies, 0.5)), millis(percentile(latencies, 0.95)),
+                    millis(percentile(latencies, 0.99)), millis(percentile(latencies, 1))));
+        }
+        if (dropped.get() > 0) {
+            LOG.info("{} requests were not sent: too many in flight or the document name still being watched",
+                    dropped.get());
+        }
+        
+        GcMonitor.Summary gc = gcMonitor.summary(measureFrom);
+        LOG.info(String.format("GC: %d pauses, %d ms paused (%.2f%% of the run), p99 %d ms, max %d ms",
+                gc.pauses().length, gc.totalPauseMillis(), gc.totalPauseMillis() / 10.0 / measuredSeconds,
+                percentile(gc.pauses(), 0.99), percentile(gc.pauses(), 1)));
+        LOG.info(String.format("Heap after GC: %.1f MB at start, %.1f MB at end, growing %.2f MB/min",
+                megabytes(gc.firstHeapAfterGc()), megabytes(gc.lastHeapAfterGc()), gc.growthBytesPerMinute() / 1e6));
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        LOG.info(String.format("Heap now: %.1f MB used, %.1f MB committed, %.1f MB max", megabytes(heap.getUsed()),
+                megabytes(heap.getCommitted()), megabytes(heap.getMax())));
+    }
+    
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            try {
+                HttpResponse<Void> response = client.send(HttpRequest.newBuilder(BASE_URI.resolve("/api/health")).GET()
+                        .build(), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("The application did not become ready within 60 s");
+    }
+    
+    /**
+     * A markdown document of about {@code documentKilobytes} with headings and paragraphs of random words.
+     */
+    private byte[] document(Random random) {
+        StringBuilder text = new StringBuilder("# ").append(words(random, 4)).append("\n\n");
+        while (text.length() < documentKilobytes * 1024) {
+            if (random.nextInt(4) == 0) {
+                text.append("## ").append(words(random, 3)).append("\n\n");
+            }
+            text.append(words(random, 40 + random.nextInt(60))).append(".\n\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String query(Random random) {
+        return "What does the " + words(random, 2 + random.nextInt(4)) + " say?";
+    }
+    
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            words.append(i > 0 ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+    
+    private static double[] parseMix(String value) {
+        double[] weights = new double[Operation.values().length];
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights[Operation.valueOf(parts[0].trim().toUpperCase()).ordinal()] = Double.parseDouble(parts[1].trim());
+        }
+        return weights;
+    }
+    
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+    
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+    
+    /**
+     * Latencies and errors of one operation, over the measured run and since the last interval.
+     */
+    private static final class Samples {
+        
+        record Interval(long[] latencies, long errors) {
+        }
+        
+        private long[] measured = new long[1024];
+        private int measuredSize;
+        private long measuredErrors;
+        private long[] interval = new long[256];
+        private int intervalSize;
+        private long intervalErrors;
+        
+        synchronized void record(long nanos, boolean measuring) {
+            if (intervalSize == interval.length) {
+                interval = Arrays.copyOf(interval, intervalSize * 2);
+            }
+            interval[intervalSize++] = nanos;
+            if (measuring) {
+                if (measuredSize == measured.length) {
+                    measured = Arrays.copyOf(measured, measuredSize * 2);
+                }
+                measured[measuredSize++] = nanos;
+            }
+        }
+        
+        synchronized void error(boolean measuring) {
+            intervalErrors++;
+            if (measuring) {
+                measuredErrors++;
+            }
+        }
+        
+        synchronized Interval drainInterval() {
+            long[] latencies = Arrays.copyOf(interval, intervalSize);
+            Arrays.sort(latencies);
+            Interval drained = new Interval(latencies, intervalErrors);
+            intervalSize = 0;
+            intervalErrors = 0;
+            return drained;
+        }
+        
+        synchronized Interval measured() {
+            long[] latencies = Arrays.copyOf(measured, measuredSize);
+            Arrays.sort(latencies);
+            return new Interval(latencies, measuredErrors);
+        }
+    }
+    
+    /**
+     * Records every stop-the-world GC pause and the heap in use after each collection, from the GC
+     * notifications of the platform MXBeans.
+     */
+    private static final class GcMonitor implements NotificationListener {
+        
+        record Interval(int pauses, long pauseMillis, long heapAfterGc) {
+        }
+        
+        record Summary(long[] pauses, long totalPauseMillis, long firstHeapAfterGc, long lastHeapAfterGc,
+                       double growthBytesPerMinute) {
+        }
+        
+        private final Set<String> heapPools = new HashSet<>();
+        private final List<long[]> pauses = new ArrayList<>();
+        private final List<long[]> heapAfterGc = new ArrayList<>();
+        private int intervalPauses;
+        private long intervalPauseMillis;
+        
+        void install() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool.getName());
+                }
+            }
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter emitter) {
+                    emitter.addNotificationListener(this, null, null);
+                }
+            }
+        }
+        
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                    (CompositeData) notification.getUserData());
+            long after = 0;
+            for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+                if (heapPools.contains(pool.getKey())) {
+                    after += pool.getValue().getUsed();
+                }
+            }
+            // Concurrent cycles (G1 Concurrent GC, ZGC Cycles) run beside the application and are not pauses
+            boolean pause = !info.getGcName().contains("Concurrent") && !info.getGcName().contains("Cycles");
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (pause) {
+                    pauses.add(new long[] {now, info.getGcInfo().getDuration()});
+                    intervalPauses++;
+                    intervalPauseMillis += info.getGcInfo().getDuration();
+                }
+                heapAfterGc.add(new long[] {now, after});
+            }
+        }
+        
+        synchronized Interval drainInterval() {
+            Interval interval = new Interval(intervalPauses, intervalPauseMillis,
+                    heapAfterGc.isEmpty() ? 0 : heapAfterGc.get(heapAfterGc.size() - 1)[1]);
+            intervalPauses = 0;
+            intervalPauseMillis = 0;
+            return interval;
+        }
+        
+        /**
+         * Pauses after {@code from}, and the least-squares slope of the heap after GC over that time.
+         */
+        synchronized Summary summary(long from) {
+            long[] durations = pauses.stream().filter(pause -> pause[0] >= from).mapToLong(pause -> pause[1]).sorted()
+                    .toArray();
+            List<long[]> heap = heapAfterGc.stream().filter(sample -> sample[0] >= from).toList();
+            double slope = 0;
+            if (heap.size() >= 2) {
+                double meanX = heap.stream().mapToDouble(sample -> (sample[0] - from) / 6e10).average().orElse(0);
+                double meanY = heap.stream().mapToDouble(sample -> sample[1]).average().orElse(0);
+                double covariance = 0;
+                double variance = 0;
+                for (long[] sample : heap) {
+                    double x = (sample[0] - from) / 6e10 - meanX;
+                    covariance += x * (sample[1] - meanY);
+                    variance += x * x;
+                }
+                slope = variance > 0 ? covariance / variance : 0;
+            }
+            return new Summary(durations, Arrays.stream(durations).sum(),
+                    heap.isEmpty() ? 0 : heap.get(0)[1], heap.isEmpty() ? 0 : heap.get(heap.size() - 1)[1], slope);
+        }
+    }
+}
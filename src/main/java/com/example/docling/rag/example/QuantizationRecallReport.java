@@ -0,0 +1,171 @@
+package com.example.docling.rag.example;
+
+import com.example.docling.rag.store.MappedEmbeddingStore;
+import com.example.docling.rag.store.QuantizedVectors;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.example.docling.rag.example.ReportSupport.generateClustered;
+import static com.example.docling.rag.example.ReportSupport.mean;
+import static com.example.docling.rag.example.ReportSupport.p99;
+import static com.example.docling.rag.example.ReportSupport.parseInts;
+import static com.example.docling.rag.example.ReportSupport.parseOptions;
+import static com.example.docling.rag.example.ReportSupport.perturb;
+
+/**
+ * Recall-vs-latency report for quantized first-pass scoring against the full-precision scan.
+ * <p>
+ * The vectors (clustered synthetic vectors, or those of an existing mapped store given with
+ * {@code --store <path>}) are copied into a scratch mapped store. Every combination of
+ * {@code --encodings} and {@code --rescore} factors is then searched through the store and compared
+ * with the exact scan: recall@k, mean/p99 latency and bytes per vector scanned. The table is also
+ * written as CSV to {@code --output}.
+ * <p>
+ * Run with {@code gradle quantizationRecallReport -PreportArgs="--vectors 50000 --rescore 1,4"}.
+ */
+public class QuantizationRecallReport {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(QuantizationRecallReport.class);
+    
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        int vectorCount = Integer.parseInt(options.getOrDefault("vectors", "20000"));
+        int dimension = Integer.parseInt(options.getOrDefault("dimension", "384"));
+        int queryCount = Integer.parseInt(options.getOrDefault("queries", "200"));
+        int k = Integer.parseInt(options.getOrDefault("k", "5"));
+        QuantizedVectors.Encoding[] encodings = Arrays.stream(options.getOrDefault("encodings", "int8,float16").split(","))
+                .map(QuantizedVectors.Encoding::parse)
+                .toArray(QuantizedVectors.Encoding[]::new);
+        int[] rescoreFactors = parseInts(options.getOrDefault("rescore", "1,2,4,8"));
+        Path output = Paths.get(options.getOrDefault("output", "build/reports/quantization-recall.csv"));
+        
+        Random random = new Random(7);
+        float[][] vectors;
+        if (options.containsKey("store")) {
+            try (MappedEmbeddingStore source = MappedEmbeddingStore.open(Paths.get(options.get("store")), dimension)) {
+                vectors = new float[source.size()][];
+                for (int ordinal = 0; ordinal < vectors.length; ordinal++) {
+                    vectors[ordinal] = source.vector(ordinal);
+                }
+                LOG.info("Using {} vectors from {}", vectors.length, source.directory());
+            }
+        } else {
+            vectors = generateClustered(vectorCount, dimension, random);
+            LOG.info("Using {} synthetic vectors of dimension {}", vectors.length, dimension);
+        }
+        if (vectors.length == 0) {
+            throw new IllegalStateException("No vectors to search");
+        }
+        
+        float[][] queries = new float[queryCount][];
+        for (int i = 0; i < queryCount; i++) {
+            queries[i] = perturb(vectors[random.nextInt(vectors.length)], random);
+        }
+        
+        Path scratch = Files.createTempDirectory("quantization-report");
+        try {
+            List<Embedding> embeddings = Arrays.stream(vectors).map(Embedding::from).toList();
+            int fullRecordSize;
+            List<Set<String>> truth = new ArrayList<>();
+            long[] exactNanos;
+            try (MappedEmbeddingStore store = MappedEmbeddingStore.open(scratch, dimension)) {
+                store.addAll(embeddings);
+                fullRecordSize = store.recordSize();
+                // Ground truth and baseline latency from the full-precision scan
+                search(store, queries, k, null);
+                exactNanos = search(store, queries, k, truth);
+            }
+            
+            List<String> rows = new ArrayList<>();
+            rows.add("encoding,rescoreFactor,bytesPerVector,recall,meanMicros,p99Micros");
+            rows.add(String.format("float32,,%d,1.0000,%.1f,%.1f", fullRecordSize,
+                    mean(exactNanos) / 1000.0, p99(exactNanos) / 1000.0));
+            LOG.info(String.format("%-8s %8s %10s %8s %12s %12s",
+                    "encoding", "rescore", "bytes/vec", "recall", "mean us", "p99 us"));
+            LOG.info(String.format("%-8s %8s %10d %8.4f %12.1f %12.1f", "float32", "-", fullRecordSize, 1.0,
+                    mean(exactNanos) / 1000.0, p99(exactNanos) / 1000.0));
+            
+            for (QuantizedVectors.Encoding encoding : encodings) {
+                for (int rescoreFactor : rescoreFactors) {
+                    QuantizedVectors.Parameters parameters = new QuantizedVectors.Parameters(encoding, rescoreFactor);
+                    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(scratch, dimension, null, parameters)) {
+                        search(store, queries, k, null); // warm up
+                        List<Set<String>> found = new ArrayList<>();
+                        long[] nanos = search(store, queries, k, found);
+                        
+                        int hits = 0;
+                        for (int i = 0; i < queryCount; i++) {
+                            for (String id : found.get(i)) {
+                                if (truth.get(i).contains(id)) {
+                                    hits++;
+                                }
+                            }
+                        }
+                        double recall = (double) hits / ((long) queryCount * Math.min(k, vectors.length));
+                        int bytesPerVector = store.quantizedVectors().recordSize();
+                        rows.add(String.format("%s,%d,%d,%.4f,%.1f,%.1f", encoding.name().toLowerCase(), rescoreFactor,
+                                bytesPerVector, recall, mean(nanos) / 1000.0, p99(nanos) / 1000.0));
+                        LOG.info(String.format("%-8s %8d %10d %8.4f %12.1f %12.1f", encoding.name().toLowerCase(),
+                                rescoreFactor, bytesPerVector, recall, mean(nanos) / 1000.0, p99(nanos) / 1000.0));
+                    }
+                }
+            }
+            
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+                rows.forEach(writer::println);
+            }
+            LOG.info("Report written to {}", output.toAbsolutePath());
+        } finally {
+            try (Stream<Path> files = Files.walk(scratch)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Run every query through the store, collecting the returned ids when {@code results} is given.
+     */
+    private static long[] search(MappedEmbeddingStore store, float[][] queries, int k, List<Set<String>> results) {
+        long[] nanos = new long[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(queries[i]))
+                    .maxResults(k)
+                    .minScore(0.0)
+                    .build();
+            long start = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> matches = store.search(request).matches();
+            nanos[i] = System.nanoTime() - start;
+            if (results != null) {
+                Set<String> ids = new HashSet<>();
+                matches.forEach(match -> ids.add(match.embeddingId()));
+                results.add(ids);
+            }
+        }
+        return nanos;
+    }
+}
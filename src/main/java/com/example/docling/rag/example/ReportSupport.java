@@ -0,0 +1,76 @@
+package com.example.docling.rag.example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic data, option parsing and latency statistics shared by the reports.
+ */
+final class ReportSupport {
+    
+    private ReportSupport() {
+    }
+    
+    /**
+     * Gaussian clusters approximate the structure of real text embeddings better than uniform noise.
+     */
+    static float[][] generateClustered(int count, int dimension, Random random) {
+        int clusters = Math.max(1, count / 500);
+        float[][] centroids = new float[clusters][dimension];
+        for (float[] centroid : centroids) {
+            for (int i = 0; i < dimension; i++) {
+                centroid[i] = (float) random.nextGaussian();
+            }
+        }
+        float[][] vectors = new float[count][];
+        for (int n = 0; n < count; n++) {
+            vectors[n] = perturb(centroids[random.nextInt(clusters)], random);
+        }
+        return vectors;
+    }
+    
+    static float[] perturb(float[] base, Random random) {
+        float[] vector = new float[base.length];
+        for (int i = 0; i < base.length; i++) {
+            vector[i] = base[i] + (float) random.nextGaussian() * 0.5f;
+        }
+        return vector;
+    }
+    
+    static double mean(long[] values) {
+        return Arrays.stream(values).average().orElse(0);
+    }
+    
+    static long p99(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return percentile(sorted, 0.99);
+    }
+    
+    /**
+     * Nearest-rank percentile of sorted values, 0 if there are none.
+     */
+    static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * fraction) - 1))];
+    }
+    
+    static int[] parseInts(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+    
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value pairs but got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
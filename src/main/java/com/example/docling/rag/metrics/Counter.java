@@ -0,0 +1,34 @@
+package com.example.docling.rag.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count.
+ */
+public class Counter implements MetricsRegistry.Metric {
+    
+    private final String help;
+    private final LongAdder count = new LongAdder();
+    
+    Counter(String help) {
+        this.help = help;
+    }
+    
+    public void increment() {
+        count.increment();
+    }
+    
+    public void add(long amount) {
+        count.add(amount);
+    }
+    
+    public long count() {
+        return count.sum();
+    }
+    
+    @Override
+    public void write(String name, StringBuilder output) {
+        MetricsRegistry.writeHeader(output, name, help, "counter");
+        output.append(name).append(' ').append(count.sum()).append('\n');
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.docling.rag.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of observed values over fixed buckets.
+ * <p>
+ * Each bucket is a {@link LongAdder}, so concurrent observations from the hot path do not contend.
+ * Buckets are cumulated only when the histogram is scraped.
+ */
+public class Histogram implements MetricsRegistry.Metric {
+    
+    private final String help;
+    private final double[] upperBounds;
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+    
+    Histogram(String help, double[] upperBounds) {
+        if (upperBounds.length == 0) {
+            throw new IllegalArgumentException("A histogram needs at least one bucket");
+        }
+        this.help = help;
+        this.upperBounds = upperBounds.clone();
+        Arrays.sort(this.upperBounds);
+        // The last bucket counts everything above the largest bound (+Inf)
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+    
+    public void observe(double value) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sum.add(value);
+    }
+    
+    /**
+     * Observe a duration measured with {@link System#nanoTime()}, in seconds.
+     */
+    public void observeNanos(long nanos) {
+        observe(nanos / 1e9);
+    }
+    
+    /**
+     * Observe the time elapsed since {@code startNanos}, taken from {@link System#nanoTime()}.
+     */
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+    
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+    
+    public double sum() {
+        return sum.sum();
+    }
+    
+    @Override
+    public void write(String name, StringBuilder output) {
+        MetricsRegistry.writeHeader(output, name, help, "histogram");
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            output.append(name).append("_bucket{le=\"");
+            MetricsRegistry.appendValue(output, i < upperBounds.length ? upperBounds[i] : Double.POSITIVE_INFINITY);
+            output.append("\"} ").append(cumulative).append('\n');
+        }
+        output.append(name).append("_sum ");
+        MetricsRegistry.appendValue(output, sum.sum());
+        output.append('\n');
+        output.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.docling.rag.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the application metrics, rendered in the Prometheus text exposition format.
+ * <p>
+ * Instruments are created once and kept in fields by the components that update them, so recording a
+ * value never touches the registry. Asking for an existing name returns the registered instrument.
+ */
+public class MetricsRegistry {
+    
+    /**
+     * Latency buckets in seconds, from 1 ms to 30 s.
+     */
+    public static final double[] LATENCY_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30
+    };
+    
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    
+    /**
+     * Metric that can write itself in the Prometheus text format.
+     */
+    interface Metric {
+        
+        void write(String name, StringBuilder output);
+    }
+    
+    public Counter counter(String name, String help) {
+        return register(name, new Counter(help), Counter.class);
+    }
+    
+    public Histogram histogram(String name, String help, double... buckets) {
+        return register(name, new Histogram(help, buckets), Histogram.class);
+    }
+    
+    /**
+     * Register a value that is read when the metrics are scraped. A later registration under the same
+     * name replaces the supplier.
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        metrics.put(name, sampled("gauge", help, value));
+    }
+    
+    /**
+     * Register a monotonically increasing value that is kept elsewhere and read when scraped.
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        metrics.put(name, sampled("counter", help, value));
+    }
+    
+    /**
+     * All metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String scrape() {
+        StringBuilder output = new StringBuilder(4096);
+        metrics.forEach((name, metric) -> metric.write(name, output));
+        return output.toString();
+    }
+    
+    private <T extends Metric> T register(String name, T metric, Class<T> type) {
+        Metric existing = metrics.putIfAbsent(name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as "
+                    + existing.getClass().getSimpleName());
+        }
+        return type.cast(existing);
+    }
+    
+    private static Metric sampled(String type, String help, DoubleSupplier value) {
+        return (name, output) -> {
+            writeHeader(output, name, help, type);
+            output.append(name).append(' ');
+            appendValue(output, value.getAsDouble());
+            output.append('\n');
+        };
+    }
+    
+    static void writeHeader(StringBuilder output, String name, String help, String type) {
+        output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    static void appendValue(StringBuilder output, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            output.append((long) value);
+        } else if (Double.isInfinite(value)) {
+            output.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            output.append(value);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.docling.rag.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to the latency of the calls it admits (AIMD).
+ * <p>
+ * The limit grows by one for every {@code limit} calls that complete within {@code latencyTolerance} times
+ * the baseline latency while the limit is in use, and is multiplied by {@code backoff} when a call is slower
+ * than that or fails, at most once per observed latency. The baseline is the fastest call of the last 30 to 60
+ * seconds: it follows a model whose unloaded latency changes, but not the queueing delay of an overload,
+ * which the shrinking limit removes before the baseline window moves on. Calls over the limit wait for a
+ * permit for at most {@code queueTimeout}, and are rejected at once when {@code queueSize} calls are
+ * already waiting, so a saturated model fails fast instead of accumulating a backlog.
+ */
+public class AdaptiveConcurrencyLimit {
+    
+    /**
+     * The baseline is the minimum latency of the current and the previous window of this length.
+     */
+    private static final long BASELINE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoff;
+    private final double latencyTolerance;
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private long previousWindowMinNanos = Long.MAX_VALUE;
+    private long windowStartNanos = System.nanoTime();
+    private long lastDecreaseNanos;
+    
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+    
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoff,
+                                    double latencyTolerance, int queueSize, long queueTimeoutMillis) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit
+                || backoff <= 0 || backoff >= 1 || latencyTolerance <= 1 || queueSize < 0 || queueTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid concurrency limit settings: initial=" + initialLimit
+                    + ", min=" + minLimit + ", max=" + maxLimit + ", backoff=" + backoff
+                    + ", latencyTolerance=" + latencyTolerance + ", queue=" + queueSize
+                    + ", queueTimeoutMillis=" + queueTimeoutMillis);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoff = backoff;
+        this.latencyTolerance = latencyTolerance;
+        this.queueSize = queueSize;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+    }
+    
+    /**
+     * Take a permit, waiting at most the queue timeout for one. Every permit must be given back with
+     * {@link #release(long)} or {@link #releaseAfterFailure()}.
+     *
+     * @throws RejectedExecutionException if the limit is reached and the queue is full, or no permit was
+     *                                    released within the queue timeout
+     */
+    public void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            if (waiting >= queueSize) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Chat model is at its concurrency limit (" + inFlight
+                        + " calls in flight, " + waiting + " waiting)");
+            }
+            waiting++;
+            try {
+                long remaining = queueTimeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected.incrementAndGet();
+                        throw new RejectedExecutionException("Chat model is at its concurrency limit (" + inFlight
+                                + " calls in flight), no capacity within "
+                                + TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos) + " ms");
+                    }
+                    remaining = permitReleased.awaitNanos(remaining);
+                }
+                inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for chat model capacity", e);
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Give back a permit after a call that succeeded in {@code latencyNanos}, adjusting the limit.
+     */
+    public void release(long latencyNanos) {
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= limit / 2;
+            inFlight--;
+            updateBaseline(latencyNanos);
+            if (latencyNanos > baselineNanos * latencyTolerance) {
+                decrease(latencyNanos);
+            } else if (saturated) {
+                // Additive increase: one more permit per round of calls completing at the full limit
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Give back a permit after a call that failed, such as one the provider rejected for its rate limit.
+     */
+    public void releaseAfterFailure() {
+        lock.lock();
+        try {
+            inFlight--;
+            decrease(baselineNanos == Long.MAX_VALUE ? 0 : baselineNanos);
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void updateBaseline(long latencyNanos) {
+        long now = System.nanoTime();
+        if (now - windowStartNanos >= BASELINE_WINDOW_NANOS) {
+            previousWindowMinNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowStartNanos = now;
+        }
+        windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+        baselineNanos = Math.min(windowMinNanos, previousWindowMinNanos);
+    }
+    
+    /**
+     * Multiplicative decrease, once per {@code latencyNanos}: the calls completing meanwhile were admitted
+     * under the old limit and would otherwise cut it again for the same congestion.
+     */
+    private void decrease(long latencyNanos) {
+        long now = System.nanoTime();
+        if (decreases.get() > 0 && now - lastDecreaseNanos < latencyNanos) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        decreases.incrementAndGet();
+        limit = Math.max(minLimit, limit * backoff);
+    }
+    
+    /**
+     * Current limit, rounded down to the permits it grants.
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Calls rejected because the limit was reached, since startup.
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+    
+    /**
+     * Limit, calls in flight and waiting, baseline latency and counts for the health endpoint.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("waiting", waiting);
+            stats.put("baselineMillis", baselineNanos == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(baselineNanos));
+        } finally {
+            lock.unlock();
+        }
+        stats.put("rejected", rejected.get());
+        stats.put("decreases", decreases.get());
+        return stats;
+    }
+}
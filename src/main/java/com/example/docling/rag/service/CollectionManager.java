@@ -0,0 +1,362 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.metrics.MetricsRegistry;
+import org.apache.camel.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Named collections of documents, each with its own {@link VectorStoreService} and index.
+ * <p>
+ * The {@value #DEFAULT_COLLECTION} collection is the service bound as {@code vectorStoreService} and stays
+ * in memory. Every other collection lives in {@code <directory>/<name>} and is opened on first use. Callers
+ * {@link #acquire} a {@link Lease} for the duration of a query or an ingest and close it afterwards. Once
+ * the open collections hold more than {@code memoryBudgetBytes}, the least recently used ones without a
+ * lease are closed: their records stay on disk and are mapped again when the collection is next acquired.
+ * Collections in use are never closed, so the budget can be exceeded while all of them are busy.
+ */
+public final class CollectionManager implements Service {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(CollectionManager.class);
+    
+    public static final String DEFAULT_COLLECTION = "default";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]{0,63}");
+    
+    private final VectorStoreService defaultCollection;
+    private final Path directory;
+    private final long memoryBudgetBytes;
+    private final Function<Path, VectorStoreService> opener;
+    // Access order: the first entries are the least recently used collections
+    private final LinkedHashMap<String, OpenCollection> open = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Void>> closing = new HashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    public CollectionManager(VectorStoreService defaultCollection, Path directory, long memoryBudgetBytes,
+                             Function<Path, VectorStoreService> opener, MetricsRegistry metrics) {
+        if (memoryBudgetBytes < 0) {
+            throw new IllegalArgumentException("Invalid collection settings: memoryBudgetBytes=" + memoryBudgetBytes);
+        }
+        this.defaultCollection = defaultCollection;
+        this.directory = directory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.opener = opener;
+        metrics.gauge("rag_collections_open", "Named collections loaded in memory", this::openCount);
+        metrics.gauge("rag_collections_resident_bytes", "Estimated memory held by the loaded named collections",
+                this::residentBytes);
+        metrics.counter("rag_collection_loads_total", "Named collections loaded from disk", loads::get);
+        metrics.counter("rag_collection_evictions_total", "Named collections evicted from memory", evictions::get);
+    }
+    
+    /**
+     * The name of the requested collection, {@value #DEFAULT_COLLECTION} if none was requested.
+     *
+     * @throws IllegalArgumentException if the name is not letters, digits, {@code -} and {@code _}
+     */
+    public static String collectionName(String requested) {
+        if (requested == null || requested.isBlank()) {
+            return DEFAULT_COLLECTION;
+        }
+        String name = requested.strip();
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid collection name '" + requested
+                    + "', expected up to 64 letters, digits, '-' or '_'");
+        }
+        return name;
+    }
+    
+    /**
+     * Take a lease on a collection, loading it if it is not in memory. The lease must be closed once the
+     * caller is done with the collection.
+     *
+     * @param create whether a collection that does not exist yet is created, as for an ingest
+     * @throws IllegalArgumentException if the name is invalid, or the collection does not exist and
+     *                                  {@code create} is false
+     */
+    public Lease acquire(String name, boolean create) {
+        String collection = collectionName(name);
+        if (collection.equals(DEFAULT_COLLECTION)) {
+            return new Lease(collection, null, defaultCollection);
+        }
+        Path path = directory.resolve(collection);
+        OpenCollection entry;
+        CompletableFuture<Void> previousClose = null;
+        boolean load = false;
+        synchronized (this) {
+            entry = open.get(collection);
+            if (entry == null) {
+                if (!create && !Files.isDirectory(path)) {
+                    throw new IllegalArgumentException("Unknown collection: " + collection);
+                }
+                entry = new OpenCollection();
+                open.put(collection, entry);
+                previousClose = closing.get(collection);
+                load = true;
+            }
+            entry.leases++;
+        }
+        if (load) {
+            try {
+                // An eviction of the same collection may still be flushing its files
+                if (previousClose != null) {
+                    previousClose.join();
+                }
+                long start = System.currentTimeMillis();
+                VectorStoreService service = opener.apply(path);
+                entry.service.complete(service);
+                loads.incrementAndGet();
+                LOG.info("Loaded collection {} with {} embeddings in {} ms", collection,
+                        service.getStoredEmbeddingsCount(), System.currentTimeMillis() - start);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    open.remove(collection, entry);
+                }
+                entry.service.completeExceptionally(e);
+                throw e;
+            }
+            evictColdCollections();
+        }
+        try {
+            return new Lease(collection, entry, entry.service.join());
+        } catch (CompletionException e) {
+            release(entry);
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+    
+    /**
+     * Names of the collections loaded in memory, including {@value #DEFAULT_COLLECTION}.
+     */
+    public List<String> loadedNames() {
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT_COLLECTION);
+        synchronized (this) {
+            open.forEach((name, entry) -> {
+                if (entry.isLoaded()) {
+                    names.add(name);
+                }
+            });
+        }
+        return names;
+    }
+    
+    /**
+     * Take a lease on a collection for background maintenance if it is loaded, without loading it or
+     * counting it as used, so it stays as likely to be evicted as before.
+     *
+     * @return the lease, or {@code null} if the collection is not loaded
+     */
+    public Lease acquireIfLoaded(String name) {
+        if (name.equals(DEFAULT_COLLECTION)) {
+            return new Lease(name, null, defaultCollection);
+        }
+        synchronized (this) {
+            // Iterating leaves the access order alone, unlike a lookup
+            for (Map.Entry<String, OpenCollection> candidate : open.entrySet()) {
+                OpenCollection entry = candidate.getValue();
+                if (candidate.getKey().equals(name) && entry.isLoaded()) {
+                    entry.leases++;
+                    return new Lease(name, entry, entry.service.join());
+                }
+            }
+        }
+        return null;
+    }
+    
+    private void release(OpenCollection entry) {
+        synchronized (this) {
+            entry.leases--;
+        }
+        // Ingests grow a collection while it is leased, so the budget is checked again once they finish
+        evictColdCollections();
+    }
+    
+    /**
+     * Close the least recently used collections without a lease until the loaded collections fit the budget.
+     */
+    private void evictColdCollections() {
+        Map<String, VectorStoreService> evicted = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Void>> closed = new HashMap<>();
+        synchronized (this) {
+            long resident = residentBytes();
+            Iterator<Map.Entry<String, OpenCollection>> eldest = open.entrySet().iterator();
+            while (resident > memoryBudgetBytes && eldest.hasNext()) {
+                Map.Entry<String, OpenCollection> candidate = eldest.next();
+                OpenCollection entry = candidate.getValue();
+                if (entry.leases > 0 || !entry.isLoaded()) {
+                    continue;
+                }
+                VectorStoreService service = entry.service.join();
+                resident -= service.getResidentBytes();
+                eldest.remove();
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                closing.put(candidate.getKey(), done);
+                closed.put(candidate.getKey(), done);
+                evicted.put(candidate.getKey(), service);
+            }
+        }
+        evicted.forEach((collection, service) -> {
+            try {
+                long bytes = service.getResidentBytes();
+                service.closeStore();
+                evictions.incrementAndGet();
+                LOG.info("Evicted collection {} ({} bytes) from memory", collection, bytes);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to close collection {}: {}", collection, e.getMessage());
+            } finally {
+                CompletableFuture<Void> done = closed.get(collection);
+                synchronized (this) {
+                    closing.remove(collection, done);
+                }
+                done.complete(null);
+            }
+        });
+    }
+    
+    /**
+     * Estimated memory held by the loaded named collections.
+     */
+    public synchronized long residentBytes() {
+        long bytes = 0;
+        for (OpenCollection entry : open.values()) {
+            if (entry.isLoaded()) {
+                bytes += entry.service.join().getResidentBytes();
+            }
+        }
+        return bytes;
+    }
+    
+    public synchronized int openCount() {
+        return open.size();
+    }
+    
+    /**
+     * Names of the collections that exist, loaded or not, including {@value #DEFAULT_COLLECTION}.
+     */
+    public List<String> names() {
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT_COLLECTION);
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.filter(Files::isDirectory).map(path -> path.getFileName().toString())
+                        .filter(name -> NAME.matcher(name).matches() && !name.equals(DEFAULT_COLLECTION))
+                        .sorted().forEach(names::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list collections in " + directory, e);
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Loaded collections, memory budget and load and eviction counts for the health endpoint.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> loaded = new LinkedHashMap<>();
+        synchronized (this) {
+            open.forEach((name, entry) -> {
+                if (entry.isLoaded()) {
+                    VectorStoreService service = entry.service.join();
+                    Map<String, Object> collection = new LinkedHashMap<>();
+                    collection.put("embeddings", service.getStoredEmbeddingsCount());
+                    collection.put("residentBytes", service.getResidentBytes());
+                    collection.put("leases", entry.leases);
+                    loaded.put(name, collection);
+                }
+            });
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("collections", names().size());
+        stats.put("loaded", loaded);
+        stats.put("residentBytes", residentBytes());
+        stats.put("memoryBudgetBytes", memoryBudgetBytes);
+        stats.put("loads", loads.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+    
+    @Override
+    public void start() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create collection directory " + directory, e);
+        }
+    }
+    
+    /**
+     * Close every loaded named collection. The default collection is stopped as a service of its own.
+     */
+    @Override
+    public void stop() {
+        List<VectorStoreService> loaded = new ArrayList<>();
+        synchronized (this) {
+            open.values().stream().filter(OpenCollection::isLoaded).forEach(entry -> loaded.add(entry.service.join()));
+            open.clear();
+        }
+        loaded.forEach(VectorStoreService::closeStore);
+    }
+    
+    /**
+     * A collection loaded or being loaded, and the number of leases on it. Guarded by the manager.
+     */
+    private static final class OpenCollection {
+        
+        private final CompletableFuture<VectorStoreService> service = new CompletableFuture<>();
+        private int leases;
+        
+        boolean isLoaded() {
+            return service.isDone() && !service.isCompletedExceptionally();
+        }
+    }
+    
+    /**
+     * Use of one collection; closing it allows the collection to be evicted again.
+     */
+    public final class Lease implements AutoCloseable {
+        
+        private final String collection;
+        private final OpenCollection entry;
+        private final VectorStoreService service;
+        private boolean closed;
+        
+        private Lease(String collection, OpenCollection entry, VectorStoreService service) {
+            this.collection = collection;
+            this.entry = entry;
+            this.service = service;
+        }
+        
+        public String collection() {
+            return collection;
+        }
+        
+        public VectorStoreService service() {
+            return service;
+        }
+        
+        @Override
+        public void close() {
+            if (entry != null && !closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.docling.rag.service;
+
+import dev.langchain4j.model.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assembles the prompt context from retrieved chunks within a token budget.
+ * <p>
+ * Chunks of the same source with consecutive {@code chunkIndex} are merged into one passage, dropping the
+ * text the chunker repeated between them. Passages are then picked by maximal marginal relevance: the
+ * next passage is the one with the best trade-off between its relevance score and its word overlap with
+ * the passages already picked, weighted by {@code lambda}. A passage whose overlap with a picked one reaches
+ * {@code duplicateThreshold} is dropped as a near-duplicate, and passages are added while they fit into
+ * {@code tokenBudget}.
+ */
+public class ContextPacker {
+    
+    /**
+     * Shortest repeated text removed when merging neighbouring chunks, so an accidental match of a few
+     * characters is not taken for the chunker overlap.
+     */
+    private static final int MIN_OVERLAP = 8;
+    
+    /**
+     * The packed context and what packing saved.
+     *
+     * @param text              context for the prompt
+     * @param passages          passages in the context, in order of selection
+     * @param candidates        chunks retrieved
+     * @param tokens            tokens of the packed passages
+     * @param candidateTokens   tokens of all retrieved chunks, concatenated verbatim
+     * @param overlapTokens     tokens of overlap text removed by merging neighbouring chunks
+     * @param duplicateTokens   tokens of passages dropped as near-duplicates
+     * @param overBudgetTokens  tokens of passages left out because they did not fit into the budget
+     */
+    public record PackedContext(String text, List<String> passages, int candidates, int tokens, int candidateTokens,
+                                int overlapTokens, int duplicateTokens, int overBudgetTokens) {
+        
+        /**
+         * Redundant tokens kept out of the prompt: merged overlaps and near-duplicate passages.
+         */
+        public int tokensSaved() {
+            return overlapTokens + duplicateTokens;
+        }
+    }
+    
+    private final TokenCountEstimator tokenizer;
+    private final int tokenBudget;
+    private final double lambda;
+    private final double duplicateThreshold;
+    
+    public ContextPacker(TokenCountEstimator tokenizer, int tokenBudget, double lambda, double duplicateThreshold) {
+        if (tokenBudget < 1 || lambda < 0 || lambda > 1 || duplicateThreshold <= 0 || duplicateThreshold > 1) {
+            throw new IllegalArgumentException("Invalid context packing settings: budget=" + tokenBudget
+                    + ", lambda=" + lambda + ", duplicateThreshold=" + duplicateThreshold);
+        }
+        this.tokenizer = tokenizer;
+        this.tokenBudget = tokenBudget;
+        this.lambda = lambda;
+        this.duplicateThreshold = duplicateThreshold;
+    }
+    
+    /**
+     * Pack chunks ordered by decreasing score into a context of at most {@code tokenBudget} tokens.
+     */
+    public PackedContext pack(List<RetrievedChunk> chunks) {
+        int candidateTokens = 0;
+        for (RetrievedChunk chunk : chunks) {
+            candidateTokens += tokenizer.estimateTokenCountInText(chunk.text());
+        }
+        
+        List<Passage> passages = merge(chunks);
+        int mergedTokens = 0;
+        for (Passage passage : passages) {
+            passage.tokens = tokenizer.estimateTokenCountInText(passage.text);
+            passage.words = words(passage.text);
+            mergedTokens += passage.tokens;
+        }
+        
+        // Maximal marginal relevance within the budget
+        List<Passage> selected = new ArrayList<>();
+        int tokens = 0;
+        int duplicateTokens = 0;
+        int overBudgetTokens = 0;
+        List<Passage> remaining = new ArrayList<>(passages);
+        while (!remaining.isEmpty()) {
+            Passage best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Passage passage : remaining) {
+                passage.redundancy = 0;
+                for (Passage chosen : selected) {
+                    passage.redundancy = Math.max(passage.redundancy, similarity(passage.words, chosen.words));
+                }
+                double value = lambda * passage.score - (1 - lambda) * passage.redundancy;
+                if (value > bestValue) {
+                    best = passage;
+                    bestValue = value;
+                }
+            }
+            remaining.remove(best);
+            if (best.redundancy >= duplicateThreshold) {
+                duplicateTokens += best.tokens;
+            } else if (tokens + best.tokens <= tokenBudget) {
+                selected.add(best);
+                tokens += best.tokens;
+            } else if (selected.isEmpty()) {
+                // The most relevant passage alone is over the budget: keep its beginning
+                int untruncated = best.tokens;
+                truncate(best);
+                overBudgetTokens += untruncated - best.tokens;
+                selected.add(best);
+                tokens += best.tokens;
+            } else {
+                overBudgetTokens += best.tokens;
+            }
+        }
+        
+        StringBuilder context = new StringBuilder();
+        List<String> texts = new ArrayList<>(selected.size());
+        for (int i = 0; i < selected.size(); i++) {
+            context.append("Context ").append(i + 1).append(":\n").append(selected.get(i).text).append("\n\n");
+            texts.add(selected.get(i).text);
+        }
+        return new PackedContext(context.toString(), texts, chunks.size(), tokens, candidateTokens,
+                Math.max(0, candidateTokens - mergedTokens), duplicateTokens, overBudgetTokens);
+    }
+    
+    /**
+     * Merge runs of neighbouring chunks of the same source into passages, ordered by their best score.
+     */
+    private static List<Passage> merge(List<RetrievedChunk> chunks) {
+        Map<String, List<RetrievedChunk>> bySource = new LinkedHashMap<>();
+        List<Passage> passages = new ArrayList<>();
+        for (RetrievedChunk chunk : chunks) {
+            if (chunk.source() == null || chunk.chunkIndex() < 0) {
+                passages.add(new Passage(chunk.text(), chunk.score()));
+            } else {
+                bySource.computeIfAbsent(chunk.source(), source -> new ArrayList<>()).add(chunk);
+            }
+        }
+        for (List<RetrievedChunk> sourceChunks : bySource.values()) {
+            sourceChunks.sort(Comparator.comparingInt(RetrievedChunk::chunkIndex));
+            Passage passage = null;
+            int lastIndex = -2;
+            for (RetrievedChunk chunk : sourceChunks) {
+                if (passage != null && chunk.chunkIndex() == lastIndex + 1) {
+                    passage.text = join(passage.text, chunk.text());
+                    passage.score = Math.max(passage.score, chunk.score());
+                } else {
+                    // Chunks sharing an index are kept as passages of their own and left to the duplicate check
+                    passage = new Passage(chunk.text(), chunk.score());
+                    passages.add(passage);
+                }
+                lastIndex = chunk.chunkIndex();
+            }
+        }
+        passages.sort(Comparator.comparingDouble((Passage passage) -> passage.score).reversed());
+        return passages;
+    }
+    
+    /**
+     * Append {@code next} to {@code text}, without the longest suffix of {@code text} that {@code next} starts with.
+     */
+    static String join(String text, String next) {
+        int longest = Math.min(text.length(), next.length());
+        for (int length = longest; length >= MIN_OVERLAP; length--) {
+            if (text.regionMatches(text.length() - length, next, 0, length)) {
+                return text + next.substring(length);
+            }
+        }
+        return text + "\n\n" + next;
+    }
+    
+    /**
+     * Jaccard similarity of two word sets.
+     */
+    private static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int shared = 0;
+        for (String word : smaller) {
+            if (larger.contains(word)) {
+                shared++;
+            }
+        }
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+    
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * Shorten the passage to its beginning until it fits into the budget.
+     */
+    private void truncate(Passage passage) {
+        while (passage.tokens > tokenBudget) {
+            int length = (int) ((long) passage.text.length() * tokenBudget / passage.tokens * 9 / 10);
+            passage.text = passage.text.substring(0, Math.min(passage.text.length() - 1, length));
+            passage.tokens = tokenizer.estimateTokenCountInText(passage.text);
+        }
+    }
+    
+    private static final class Passage {
+        
+        private String text;
+        private double score;
+        private int tokens;
+        private Set<String> words;
+        private double redundancy;
+        
+        Passage(String text, double score) {
+            this.text = text;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.config.VectorStoreSettings;
+import com.example.docling.rag.metrics.Histogram;
+import com.example.docling.rag.metrics.MetricsRegistry;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micro-batching embed and index stages between chunking and the embedding store.
+ * <p>
+ * Segments submitted by concurrent ingests are queued and picked up by embed workers, which collect
+ * up to {@code maxBatchSize} segments or wait at most {@code maxWaitMillis} after the first one.
+ * Each batch is embedded with a single {@link EmbeddingModel#embedAll(List)} call and handed to the
+ * index stage, which writes it with a single {@link EmbeddingStore#addAll(List, List, List)} call per
+ * store. One document and documents arriving at the same time on different routes share model
+ * invocations, also when they go to the stores of different collections.
+ * <p>
+ * The segment queue and the index stage queue are bounded: when either is full, submitters block.
+ */
+public class EmbeddingBatcher {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingBatcher.class);
+    
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<PendingSegment> queue;
+    private final ThreadPoolExecutor indexStage;
+    private final List<Thread> workers = new ArrayList<>();
+    private final Histogram embedSeconds;
+    private final Histogram indexSeconds;
+    private final Histogram batchSizes;
+    private volatile boolean running = true;
+    
+    public EmbeddingBatcher(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore,
+                            VectorStoreSettings settings) {
+        this(embeddingModel, embeddingStore, settings, new MetricsRegistry());
+    }
+    
+    public EmbeddingBatcher(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore,
+                            VectorStoreSettings settings, MetricsRegistry metrics) {
+        int workerCount = settings.getEmbeddingBatchWorkers();
+        long maxWaitMillis = settings.getEmbeddingBatchMaxWaitMillis();
+        if (settings.getEmbeddingBatchSize() < 1 || maxWaitMillis < 0 || workerCount < 1) {
+            throw new IllegalArgumentException("Invalid batch settings: size=" + settings.getEmbeddingBatchSize()
+                    + ", wait=" + maxWaitMillis + "ms, workers=" + workerCount);
+        }
+        this.embeddingModel = embeddingModel;
+        this.embeddingStore = embeddingStore;
+        this.maxBatchSize = settings.getEmbeddingBatchSize();
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.queue = new LinkedBlockingQueue<>(settings.getEmbeddingBatchQueueSize());
+        this.indexStage = StageExecutors.newPlatformStage("embedding-index",
+                settings.getIndexConcurrency(), settings.getIndexQueueSize());
+        
+        this.embedSeconds = metrics.histogram("rag_embedding_batch_duration_seconds",
+                "Time to embed one batch of segments", MetricsRegistry.LATENCY_BUCKETS);
+        this.indexSeconds = metrics.histogram("rag_index_batch_duration_seconds",
+                "Time to write one embedded batch to the store", MetricsRegistry.LATENCY_BUCKETS);
+        this.batchSizes = metrics.histogram("rag_embedding_batch_size",
+                "Segments per embedding batch", 1, 2, 4, 8, 16, 32, 64, 128, 256);
+        metrics.gauge("rag_embedding_queue_size", "Segments waiting to be embedded", queue::size);
+        metrics.gauge("rag_index_queue_size", "Embedded batches waiting to be written to the store",
+                () -> indexStage.getQueue().size());
+        
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::run, "embedding-batcher-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        LOG.info("Embedding batcher started: max batch size {}, max wait {} ms, {} embed worker(s), {} index worker(s)",
+                maxBatchSize, maxWaitMillis, workerCount, settings.getIndexConcurrency());
+    }
+    
+    /**
+     * Queue segments for embedding and storage, blocking while the segment queue is full.
+     * The returned future completes with the number of stored segments once all of them are written.
+     */
+    public CompletableFuture<Integer> submit(List<TextSegment> segments) {
+        List<String> ids = new ArrayList<>(segments.size());
+        segments.forEach(segment -> ids.add(UUID.randomUUID().toString()));
+        return submit(ids, segments);
+    }
+    
+    /**
+     * Queue segments to be stored under the given embedding ids.
+     */
+    public CompletableFuture<Integer> submit(List<String> ids, List<TextSegment> segments) {
+        return submit(embeddingStore, ids, segments);
+    }
+    
+    /**
+     * Queue segments to be stored in another store than the one of the batcher, such as the store of a
+     * collection, under the given embedding ids.
+     */
+    public CompletableFuture<Integer> submit(EmbeddingStore<TextSegment> store, List<String> ids,
+                                             List<TextSegment> segments) {
+        if (ids.size() != segments.size()) {
+            throw new IllegalArgumentException("ids and segments must have the same size");
+        }
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Embedding batcher is stopped"));
+        }
+        if (segments.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        
+        Submission submission = new Submission(segments.size());
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                queue.put(new PendingSegment(ids.get(i), segments.get(i), store, submission));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            submission.future.completeExceptionally(e);
+        }
+        return submission.future;
+    }
+    
+    /**
+     * Number of segments waiting to be embedded.
+     */
+    public int backlog() {
+        return queue.size();
+    }
+    
+    /**
+     * Stop the workers and fail any segments that were not embedded yet.
+     */
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        indexStage.shutdown();
+        List<PendingSegment> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        IllegalStateException stopped = new IllegalStateException("Embedding batcher stopped");
+        remaining.forEach(pending -> pending.submission.future.completeExceptionally(stopped));
+    }
+    
+    private void run() {
+        List<PendingSegment> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                
+                // Keep collecting until the batch is full or the oldest segment has waited long enough
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingSegment next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                
+                embed(new ArrayList<>(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                IllegalStateException stopped = new IllegalStateException("Embedding batcher stopped");
+                batch.forEach(pending -> pending.submission.future.completeExceptionally(stopped));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void embed(List<PendingSegment> batch) {
+        List<TextSegment> segments = new ArrayList<>(batch.size());
+        for (PendingSegment pending : batch) {
+            segments.add(pending.segment);
+        }
+        
+        List<Embedding> embeddings;
+        try {
+            long start = System.nanoTime();
+            embeddings = embeddingModel.embedAll(segments).content();
+            embedSeconds.observeSince(start);
+            batchSizes.observe(segments.size());
+            LOG.debug("Embedded batch of {} segments in {} ms",
+                    segments.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            fail(batch, e);
+            return;
+        }
+        
+        try {
+            indexStage.execute(() -> index(batch, embeddings));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+    
+    private void index(List<PendingSegment> batch, List<Embedding> embeddings) {
+        // A batch holds the segments of every collection that was ingesting, each written to its own store
+        Map<EmbeddingStore<TextSegment>, List<Integer>> positionsByStore = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            positionsByStore.computeIfAbsent(batch.get(i).store, store -> new ArrayList<>()).add(i);
+        }
+        positionsByStore.forEach((store, positions) -> {
+            List<PendingSegment> stored = new ArrayList<>(positions.size());
+            List<String> ids = new ArrayList<>(positions.size());
+            List<Embedding> storeEmbeddings = new ArrayList<>(positions.size());
+            List<TextSegment> segments = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                PendingSegment pending = batch.get(position);
+                stored.add(pending);
+                ids.add(pending.id);
+                storeEmbeddings.add(embeddings.get(position));
+                segments.add(pending.segment);
+            }
+            
+            try {
+                long start = System.nanoTime();
+                store.addAll(ids, storeEmbeddings, segments);
+                indexSeconds.observeSince(start);
+                LOG.debug("Stored batch of {} segments in {} ms",
+                        segments.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (RuntimeException e) {
+                fail(stored, e);
+                return;
+            }
+            for (PendingSegment pending : stored) {
+                pending.submission.segmentStored();
+            }
+        });
+    }
+    
+    private void fail(List<PendingSegment> batch, Exception error) {
+        LOG.error("Failed to embed and store batch of {} segments", batch.size(), error);
+        Set<Submission> failed = new LinkedHashSet<>();
+        batch.forEach(pending -> failed.add(pending.submission));
+        failed.forEach(submission -> submission.future.completeExceptionally(error));
+    }
+    
+    private static final class Submission {
+        private final int size;
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+        
+        private Submission(int size) {
+            this.size = size;
+            this.remaining = new AtomicInteger(size);
+        }
+        
+        private void segmentStored() {
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(size);
+            }
+        }
+    }
+    
+    private record PendingSegment(String id, TextSegment segment, EmbeddingStore<TextSegment> store,
+                                  Submission submission) {
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.docling.rag.service;
+
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chat model that protects the model behind it from bursts.
+ * <p>
+ * Concurrent identical requests are coalesced: the first one calls the model, and the ones arriving while
+ * it is in flight wait for its response instead of calling the model again. Calls to the model go through
+ * an {@link AdaptiveConcurrencyLimit}, so past the limit they queue briefly and then fail with a
+ * {@link java.util.concurrent.RejectedExecutionException}. Coalesced requests share the outcome of the call
+ * they joined, including a rejection.
+ */
+public class GuardedChatModel implements ChatModel {
+    
+    private final ChatModel delegate;
+    private final AdaptiveConcurrencyLimit limit;
+    private final boolean coalesce;
+    private final Map<ChatRequest, CompletableFuture<ChatResponse>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    
+    public GuardedChatModel(ChatModel delegate, AdaptiveConcurrencyLimit limit, boolean coalesce) {
+        this.delegate = delegate;
+        this.limit = limit;
+        this.coalesce = coalesce;
+    }
+    
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        if (!coalesce) {
+            return call(chatRequest);
+        }
+        CompletableFuture<ChatResponse> call = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> running = inFlight.putIfAbsent(chatRequest, call);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            ChatResponse response = call(chatRequest);
+            call.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(chatRequest, call);
+        }
+    }
+    
+    private ChatResponse call(ChatRequest chatRequest) {
+        limit.acquire();
+        calls.incrementAndGet();
+        long start = System.nanoTime();
+        ChatResponse response;
+        try {
+            response = delegate.chat(chatRequest);
+        } catch (RuntimeException | Error e) {
+            limit.releaseAfterFailure();
+            throw e;
+        }
+        limit.release(System.nanoTime() - start);
+        return response;
+    }
+    
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+    
+    @Override
+    public ModelProvider provider() {
+        return delegate.provider();
+    }
+    
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+    
+    public AdaptiveConcurrencyLimit concurrencyLimit() {
+        return limit;
+    }
+    
+    /**
+     * Requests answered by joining an identical request in flight, since startup.
+     */
+    public long coalesced() {
+        return coalesced.get();
+    }
+    
+    /**
+     * Calls made to the model behind, since startup.
+     */
+    public long calls() {
+        return calls.get();
+    }
+    
+    /**
+     * Concurrency limit state and coalescing counts for the health endpoint.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(limit.stats());
+        stats.put("calls", calls.get());
+        stats.put("coalesced", coalesced.get());
+        return stats;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.docling.rag.service;
+
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialThinkingContext;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.PartialToolCallContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streaming chat model whose calls go through the same {@link AdaptiveConcurrencyLimit} as the
+ * {@link GuardedChatModel}, so streamed and complete answers share one limit on the model. A stream holds
+ * its permit until it completes, fails or is cancelled, and the limit adapts to the time to the first
+ * token, which unlike the whole generation does not depend on the length of the answer. Streams are not
+ * coalesced: every client receives its own tokens.
+ */
+public class GuardedStreamingChatModel implements StreamingChatModel {
+    
+    private final StreamingChatModel delegate;
+    private final AdaptiveConcurrencyLimit limit;
+    
+    public GuardedStreamingChatModel(StreamingChatModel delegate, AdaptiveConcurrencyLimit limit) {
+        this.delegate = delegate;
+        this.limit = limit;
+    }
+    
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        limit.acquire();
+        Permit permit = new Permit(System.nanoTime());
+        try {
+            delegate.chat(chatRequest, new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                    permit.firstToken();
+                    handler.onPartialResponse(partialResponse,
+                            new PartialResponseContext(permit.releasingOnCancel(context.streamingHandle())));
+                }
+                
+                @Override
+                public void onPartialThinking(PartialThinking partialThinking, PartialThinkingContext context) {
+                    handler.onPartialThinking(partialThinking,
+                            new PartialThinkingContext(permit.releasingOnCancel(context.streamingHandle())));
+                }
+                
+                @Override
+                public void onPartialToolCall(PartialToolCall partialToolCall, PartialToolCallContext context) {
+                    handler.onPartialToolCall(partialToolCall,
+                            new PartialToolCallContext(permit.releasingOnCancel(context.streamingHandle())));
+                }
+                
+                @Override
+                public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                    handler.onCompleteToolCall(completeToolCall);
+                }
+                
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    permit.firstToken();
+                    permit.release();
+                    handler.onCompleteResponse(completeResponse);
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    permit.releaseAfterFailure();
+                    handler.onError(error);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            permit.releaseAfterFailure();
+            throw e;
+        }
+    }
+    
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+    
+    @Override
+    public ModelProvider provider() {
+        return delegate.provider();
+    }
+    
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+    
+    /**
+     * The permit of one stream, given back exactly once.
+     */
+    private final class Permit {
+        
+        private final long start;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long firstTokenNanos = -1;
+        
+        Permit(long start) {
+            this.start = start;
+        }
+        
+        void firstToken() {
+            if (firstTokenNanos < 0) {
+                firstTokenNanos = System.nanoTime() - start;
+            }
+        }
+        
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                limit.release(firstTokenNanos >= 0 ? firstTokenNanos : System.nanoTime() - start);
+            }
+        }
+        
+        void releaseAfterFailure() {
+            if (released.compareAndSet(false, true)) {
+                limit.releaseAfterFailure();
+            }
+        }
+        
+        /**
+         * Wrap the handle of the stream so cancelling it, for example when the client disconnected, gives
+         * back the permit: the model may stop without calling the handler again.
+         */
+        StreamingHandle releasingOnCancel(StreamingHandle handle) {
+            return new StreamingHandle() {
+                @Override
+                public void cancel() {
+                    handle.cancel();
+                    release();
+                }
+                
+                @Override
+                public boolean isCancelled() {
+                    return handle.isCancelled();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.docling.rag.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An upload accepted by {@link IngestJobQueue} and its progress: status, time spent in every stage
+ * and the chunk counts of the finished ingest.
+ */
+public class IngestJob {
+    
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+    
+    /**
+     * Scheduling priority; queued jobs of a higher priority are started first, FIFO within a priority.
+     */
+    public enum Priority {
+        LOW, NORMAL, HIGH;
+        
+        /**
+         * Parse a priority name, case-insensitively, defaulting to {@link #NORMAL}.
+         */
+        public static Priority parse(String value) {
+            if (value == null || value.isBlank()) {
+                return NORMAL;
+            }
+            try {
+                return valueOf(value.strip().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown priority '" + value + "', expected low, normal or high");
+            }
+        }
+    }
+    
+    private final String id;
+    private final String documentName;
+    private final String collection;
+    private final Set<String> tags;
+    private final Priority priority;
+    private final long sequence;
+    private final long submittedAt;
+    private Status status = Status.QUEUED;
+    private long startedAt;
+    private long finishedAt;
+    private final Map<String, Long> stageMillis = new LinkedHashMap<>();
+    private IngestResult result;
+    private String error;
+    
+    IngestJob(String id, String documentName, String collection, Set<String> tags, Priority priority, long sequence,
+              long submittedAt) {
+        this.id = id;
+        this.documentName = documentName;
+        this.collection = collection;
+        this.tags = Set.copyOf(tags);
+        this.priority = priority;
+        this.sequence = sequence;
+        this.submittedAt = submittedAt;
+    }
+    
+    public String id() {
+        return id;
+    }
+    
+    public String documentName() {
+        return documentName;
+    }
+    
+    public String collection() {
+        return collection;
+    }
+    
+    public Set<String> tags() {
+        return tags;
+    }
+    
+    public Priority priority() {
+        return priority;
+    }
+    
+    long sequence() {
+        return sequence;
+    }
+    
+    public long submittedAt() {
+        return submittedAt;
+    }
+    
+    public synchronized Status status() {
+        return status;
+    }
+    
+    public synchronized IngestResult result() {
+        return result;
+    }
+    
+    /**
+     * Record the time a stage of this job took, in milliseconds.
+     */
+    public synchronized void recordStage(String stage, long millis) {
+        stageMillis.put(stage, millis);
+    }
+    
+    synchronized void started(long now) {
+        status = Status.RUNNING;
+        startedAt = now;
+        stageMillis.put("queue", now - submittedAt);
+    }
+    
+    synchronized void succeeded(IngestResult ingested, long now) {
+        status = Status.SUCCEEDED;
+        result = ingested;
+        finish(now);
+    }
+    
+    synchronized void failed(String message, long now) {
+        status = Status.FAILED;
+        error = message;
+        finish(now);
+    }
+    
+    /**
+     * Put a job that was running when the application stopped back into the queue.
+     */
+    synchronized void requeued() {
+        status = Status.QUEUED;
+        startedAt = 0;
+        stageMillis.clear();
+    }
+    
+    synchronized boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+    
+    private void finish(long now) {
+        finishedAt = now;
+        stageMillis.put("total", now - submittedAt);
+    }
+    
+    /**
+     * A snapshot of the job as served by {@code GET /api/ingest/{id}} and persisted next to the upload.
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", id);
+        map.put("documentName", documentName);
+        map.put("collection", collection);
+        map.put("tags", tags);
+        map.put("priority", priority.name().toLowerCase());
+        map.put("sequence", sequence);
+        map.put("status", status.name().toLowerCase());
+        map.put("submittedAt", submittedAt);
+        map.put("startedAt", startedAt > 0 ? startedAt : null);
+        map.put("finishedAt", finishedAt > 0 ? finishedAt : null);
+        map.put("timingsMs", new LinkedHashMap<>(stageMillis));
+        if (result != null) {
+            Map<String, Object> chunks = new LinkedHashMap<>();
+            chunks.put("total", result.totalChunks());
+            chunks.put("embedded", result.embeddedChunks());
+            chunks.put("reused", result.reusedChunks());
+            chunks.put("removed", result.removedChunks());
+            map.put("chunks", chunks);
+            map.put("unchanged", result.unchanged());
+        }
+        if (error != null) {
+            map.put("error", error);
+        }
+        return map;
+    }
+    
+    /**
+     * Restore a job from its persisted {@link #toMap()} snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    static IngestJob fromMap(Map<String, Object> map) {
+        IngestJob job = new IngestJob((String) map.get("id"), (String) map.get("documentName"),
+                (String) map.getOrDefault("collection", CollectionManager.DEFAULT_COLLECTION),
+                Set.copyOf((List<String>) map.getOrDefault("tags", List.of())),
+                Priority.parse((String) map.get("priority")), ((Number) map.get("sequence")).longValue(),
+                ((Number) map.get("submittedAt")).longValue());
+        job.status = Status.valueOf(((String) map.get("status")).toUpperCase());
+        job.startedAt = map.get("startedAt") instanceof Number started ? started.longValue() : 0;
+        job.finishedAt = map.get("finishedAt") instanceof Number finished ? finished.longValue() : 0;
+        ((Map<String, Object>) map.getOrDefault("timingsMs", Map.of()))
+                .forEach((stage, millis) -> job.stageMillis.put(stage, ((Number) millis).longValue()));
+        if (map.get("chunks") instanceof Map<?, ?> chunks) {
+            int total = ((Number) chunks.get("total")).intValue();
+            job.result = new IngestResult(job.documentName, total, ((Number) chunks.get("embedded")).intValue(),
+                    ((Number) chunks.get("removed")).intValue(), Boolean.TRUE.equals(map.get("unchanged")));
+        }
+        job.error = (String) map.get("error");
+        return job;
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.metrics.Counter;
+import com.example.docling.rag.metrics.Histogram;
+import com.example.docling.rag.metrics.MetricsRegistry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, prioritised queue of asynchronous ingest jobs.
+ * <p>
+ * {@link #submit} spools the upload to the job directory, a block at a time, and returns as soon as the
+ * job is queued, so an HTTP request never waits for parsing or embedding. A fixed number of workers take
+ * jobs highest priority first and run them through the {@link Handler}. When {@code capacity} jobs are
+ * waiting, new submissions are rejected instead of piling up uploads.
+ * <p>
+ * Every job is persisted as {@code <id>.json} next to its upload and rewritten on each status change.
+ * Jobs that were queued or running when the application stopped are queued again on start; the upload is
+ * deleted once its job has finished, and only the last {@code retention} finished jobs are kept.
+ */
+public class IngestJobQueue implements Service {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(IngestJobQueue.class);
+    private static final String JOB_SUFFIX = ".json";
+    private static final String UPLOAD_SUFFIX = ".upload";
+    
+    /**
+     * Runs one job on a worker thread: parses the spooled upload and ingests the text.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        IngestResult process(IngestJob job, Path upload) throws Exception;
+    }
+    
+    private final Path directory;
+    private final int capacity;
+    private final int workerCount;
+    private final int retention;
+    private final Handler handler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PriorityBlockingQueue<IngestJob> queue = new PriorityBlockingQueue<>(16,
+            Comparator.comparing(IngestJob::priority).reversed().thenComparingLong(IngestJob::sequence));
+    private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
+    private final Deque<IngestJob> finished = new ArrayDeque<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Histogram queueSeconds;
+    private final Counter rejected;
+    private volatile boolean started;
+    
+    public IngestJobQueue(Path directory, int capacity, int workerCount, int retention, Handler handler,
+                          MetricsRegistry metrics) {
+        if (capacity < 1 || workerCount < 1 || retention < 0) {
+            throw new IllegalArgumentException("Invalid ingest job settings: capacity=" + capacity
+                    + ", workers=" + workerCount + ", retention=" + retention);
+        }
+        this.directory = directory;
+        this.capacity = capacity;
+        this.workerCount = workerCount;
+        this.retention = retention;
+        this.handler = handler;
+        this.queueSeconds = metrics.histogram("rag_ingest_job_queue_seconds",
+                "Time an ingest job waited in the queue before a worker started it", MetricsRegistry.LATENCY_BUCKETS);
+        this.rejected = metrics.counter("rag_ingest_jobs_rejected_total", "Ingest jobs rejected because the queue was full");
+        metrics.gauge("rag_ingest_jobs_queued", "Ingest jobs waiting for a worker", waiting::get);
+        metrics.gauge("rag_ingest_jobs_running", "Ingest jobs being processed", running::get);
+    }
+    
+    /**
+     * Spool the upload and queue a job for it.
+     *
+     * @throws RejectedExecutionException if the queue is full or the queue is not running
+     */
+    public IngestJob submit(String documentName, String collection, Set<String> tags, IngestJob.Priority priority,
+                            InputStream content) {
+        if (!started) {
+            throw new RejectedExecutionException("Ingest job queue is not running");
+        }
+        // Reserve a slot before spooling, so concurrent uploads cannot overshoot the capacity
+        if (waiting.incrementAndGet() > capacity) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Ingest job queue is full (" + capacity + " jobs waiting)");
+        }
+        IngestJob job = new IngestJob(UUID.randomUUID().toString(), documentName, collection, tags, priority,
+                sequence.incrementAndGet(), System.currentTimeMillis());
+        try {
+            UploadSpool.copy(content, uploadFile(job));
+            persist(job);
+        } catch (IOException e) {
+            waiting.decrementAndGet();
+            deleteQuietly(uploadFile(job));
+            deleteQuietly(jobFile(job.id()));
+            throw new UncheckedIOException("Failed to spool upload for " + documentName, e);
+        }
+        jobs.put(job.id(), job);
+        queue.add(job);
+        LOG.info("Queued ingest job {} for {} in collection {} (priority {}, {} waiting)", job.id(), documentName,
+                collection, priority, waiting.get());
+        return job;
+    }
+    
+    /**
+     * The job with the given id, or {@code null} if it is unknown or no longer retained.
+     */
+    public IngestJob get(String id) {
+        return jobs.get(id);
+    }
+    
+    public int queuedJobs() {
+        return waiting.get();
+    }
+    
+    public int runningJobs() {
+        return running.get();
+    }
+    
+    @Override
+    public void start() {
+        if (started) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create ingest job directory " + directory, e);
+        }
+        int recovered = recover();
+        started = true;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::run, "ingest-job-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        LOG.info("Ingest job queue started in {}: capacity {}, {} worker(s), {} job(s) recovered",
+                directory, capacity, workerCount, recovered);
+    }
+    
+    /**
+     * Stop the workers. Jobs still running are interrupted and resumed from their upload on the next start.
+     */
+    @Override
+    public void stop() {
+        started = false;
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+    }
+    
+    private void run() {
+        while (started) {
+            IngestJob job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            waiting.decrementAndGet();
+            running.incrementAndGet();
+            try {
+                process(job);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+    
+    private void process(IngestJob job) {
+        long start = System.currentTimeMillis();
+        job.started(start);
+        queueSeconds.observe((start - job.submittedAt()) / 1000.0);
+        persistQuietly(job);
+        try {
+            IngestResult result = handler.process(job, uploadFile(job));
+            job.succeeded(result, System.currentTimeMillis());
+            LOG.info("Ingest job {} for {} finished in {} ms", job.id(), job.documentName(),
+                    System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            // Stopping: leave the job running on disk so it is queued again on the next start
+            LOG.info("Ingest job {} interrupted, it will be resumed on restart", job.id());
+            return;
+        } catch (Exception e) {
+            if (!started) {
+                LOG.info("Ingest job {} interrupted, it will be resumed on restart", job.id());
+                return;
+            }
+            LOG.error("Ingest job {} for {} failed", job.id(), job.documentName(), e);
+            job.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), System.currentTimeMillis());
+        }
+        persistQuietly(job);
+        deleteQuietly(uploadFile(job));
+        retire(job);
+    }
+    
+    /**
+     * Keep a finished job for status queries, forgetting the oldest ones beyond the retention limit.
+     */
+    private synchronized void retire(IngestJob job) {
+        finished.addLast(job);
+        while (finished.size() > retention) {
+            IngestJob oldest = finished.removeFirst();
+            jobs.remove(oldest.id());
+            deleteQuietly(jobFile(oldest.id()));
+        }
+    }
+    
+    /**
+     * Load the persisted jobs: finished ones are kept for status queries, unfinished ones are queued again.
+     *
+     * @return the number of jobs queued again
+     */
+    private int recover() {
+        List<IngestJob> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + JOB_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    loaded.add(IngestJob.fromMap(objectMapper.readValue(file.toFile(),
+                            new TypeReference<Map<String, Object>>() { })));
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Skipping unreadable ingest job file {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read ingest jobs from " + directory, e);
+        }
+        
+        loaded.sort(Comparator.comparingLong(IngestJob::sequence));
+        int recovered = 0;
+        for (IngestJob job : loaded) {
+            sequence.accumulateAndGet(job.sequence(), Math::max);
+            jobs.put(job.id(), job);
+            if (job.isFinished()) {
+                retire(job);
+            } else if (Files.exists(uploadFile(job))) {
+                job.requeued();
+                persistQuietly(job);
+                waiting.incrementAndGet();
+                queue.add(job);
+                recovered++;
+            } else {
+                job.failed("Upload was lost before the job ran", System.currentTimeMillis());
+                persistQuietly(job);
+                retire(job);
+            }
+        }
+        return recovered;
+    }
+    
+    private void persist(IngestJob job) throws IOException {
+        Path temporary = directory.resolve(job.id() + JOB_SUFFIX + ".tmp");
+        objectMapper.writeValue(temporary.toFile(), job.toMap());
+        Files.move(temporary, jobFile(job.id()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private void persistQuietly(IngestJob job) {
+        try {
+            persist(job);
+        } catch (IOException e) {
+            LOG.warn("Could not persist the status of ingest job {}: {}", job.id(), e.getMessage());
+        }
+    }
+    
+    private Path jobFile(String id) {
+        return directory.resolve(id + JOB_SUFFIX);
+    }
+    
+    /**
+     * The spooled upload keeps the extension of the document name, which docling uses to detect the format.
+     */
+    private Path uploadFile(IngestJob job) {
+        return directory.resolve(job.id() + UPLOAD_SUFFIX + UploadSpool.extensionOf(job.documentName()));
+    }
+    
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.docling.rag.service;
+
+/**
+ * Outcome of ingesting, replacing or deleting one document. A deleted document has no chunks left and
+ * reports the chunks it had as removed.
+ *
+ * @param source          the document name used as {@code source} metadata
+ * @param totalChunks     number of chunks the document consists of
+ * @param embeddedChunks  chunks that were new or changed and had to be embedded
+ * @param removedChunks   chunks of the previous version that no longer exist and were removed, all of them
+ *                        when the document was replaced or deleted
+ * @param unchanged       whether the document was skipped because its content did not change
+ */
+public record IngestResult(String source, int totalChunks, int embeddedChunks, int removedChunks, boolean unchanged) {
+    
+    /**
+     * Chunks whose existing embedding was kept.
+     */
+    public int reusedChunks() {
+        return totalChunks - embeddedChunks;
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.docling.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records, per source document, the content hash of the parsed document and the hash and
+ * embedding id of every chunk that was stored for it.
+ * <p>
+ * VectorStoreService uses it to skip unchanged documents and to re-embed only changed chunks, and to tell
+ * the current position of a stored chunk in its document, which changes when a reused chunk moves.
+ * A persistent manifest is an append-only log of JSON lines where the last entry for a source wins;
+ * it is compacted when it is opened.
+ */
+public class IngestionManifest {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(IngestionManifest.class);
+    
+    /**
+     * A stored chunk: the hash of its text and the id of its embedding.
+     */
+    public record ChunkEntry(String hash, String id) {
+    }
+    
+    /**
+     * The stored state of one source document.
+     */
+    public record DocumentEntry(String documentHash, List<ChunkEntry> chunks) {
+    }
+    
+    private record LogEntry(String source, String documentHash, List<ChunkEntry> chunks) {
+    }
+    
+    private final Path logFile;
+    private final Map<String, DocumentEntry> documents = new ConcurrentHashMap<>();
+    // Position of every stored chunk in its document, by embedding id
+    private final Map<String, Integer> chunkIndexes = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Lines in the log, which grows by one with every put and remove until it is compacted
+    private int logLines;
+    
+    private IngestionManifest(Path logFile) {
+        this.logFile = logFile;
+    }
+    
+    /**
+     * Create a manifest that only lives as long as the process, for non-persistent stores.
+     */
+    public static IngestionManifest inMemory() {
+        return new IngestionManifest(null);
+    }
+    
+    /**
+     * Open a persistent manifest, replaying and compacting its log.
+     */
+    public static IngestionManifest open(Path logFile) {
+        IngestionManifest manifest = new IngestionManifest(logFile);
+        if (!Files.exists(logFile)) {
+            return manifest;
+        }
+        
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                LogEntry entry = manifest.objectMapper.readValue(line, LogEntry.class);
+                manifest.apply(entry);
+                lines++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read ingestion manifest " + logFile, e);
+        }
+        
+        manifest.logLines = lines;
+        manifest.compact();
+        LOG.info("Loaded ingestion manifest {} with {} documents", logFile, manifest.documents.size());
+        return manifest;
+    }
+    
+    public DocumentEntry get(String source) {
+        return documents.get(source);
+    }
+    
+    /**
+     * Record the new state of a source document.
+     */
+    public synchronized void put(String source, DocumentEntry entry) {
+        LogEntry logEntry = new LogEntry(source, entry.documentHash(), entry.chunks());
+        apply(logEntry);
+        append(logEntry);
+    }
+    
+    /**
+     * Forget a source document.
+     */
+    public synchronized void remove(String source) {
+        if (documents.containsKey(source)) {
+            LogEntry logEntry = new LogEntry(source, null, null);
+            apply(logEntry);
+            append(logEntry);
+        }
+    }
+    
+    public int size() {
+        return documents.size();
+    }
+    
+    /**
+     * Position of a stored chunk in the current version of its document.
+     *
+     * @return the index, or -1 if no document refers to the embedding id
+     */
+    public int chunkIndex(String id) {
+        Integer index = chunkIndexes.get(id);
+        return index != null ? index : -1;
+    }
+    
+    /**
+     * SHA-256 of the text, hex encoded.
+     */
+    public static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /**
+     * Reader that hashes the text read through it, giving the same hash as {@link #hash(String)} on the
+     * whole text once it has been read to the end.
+     */
+    public static class HashingReader extends FilterReader {
+        
+        private final MessageDigest digest;
+        private char pendingHighSurrogate;
+        
+        public HashingReader(Reader in) {
+            super(in);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                update(new char[] {(char) c}, 0, 1);
+            }
+            return c;
+        }
+        
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                update(buffer, offset, read);
+            }
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) {
+            throw new UnsupportedOperationException("skip would leave characters out of the hash");
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        
+        /**
+         * SHA-256 of the text read so far, hex encoded.
+         */
+        public String hash() {
+            if (pendingHighSurrogate != 0) {
+                // An unpaired surrogate at the end, encoded like String.getBytes does
+                digest.update((byte) '?');
+                pendingHighSurrogate = 0;
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        
+        private void update(char[] buffer, int offset, int length) {
+            CharBuffer chars;
+            if (pendingHighSurrogate != 0) {
+                chars = CharBuffer.allocate(length + 1).put(pendingHighSurrogate).put(buffer, offset, length).flip();
+                pendingHighSurrogate = 0;
+            } else {
+                chars = CharBuffer.wrap(buffer, offset, length);
+            }
+            // A surrogate pair may be split between reads
+            char last = chars.get(chars.limit() - 1);
+            if (Character.isHighSurrogate(last)) {
+                pendingHighSurrogate = last;
+                chars.limit(chars.limit() - 1);
+            }
+            digest.update(StandardCharsets.UTF_8.encode(chars));
+        }
+    }
+    
+    private void apply(LogEntry entry) {
+        DocumentEntry previous;
+        Set<String> ids = new HashSet<>();
+        if (entry.documentHash() == null) {
+            previous = documents.remove(entry.source());
+        } else {
+            List<ChunkEntry> chunks = List.copyOf(entry.chunks());
+            previous = documents.put(entry.source(), new DocumentEntry(entry.documentHash(), chunks));
+            // New positions go in before old ones are dropped, so a reused chunk never looks unknown
+            for (int i = 0; i < chunks.size(); i++) {
+                chunkIndexes.put(chunks.get(i).id(), i);
+                ids.add(chunks.get(i).id());
+            }
+        }
+        if (previous != null) {
+            for (ChunkEntry chunk : previous.chunks()) {
+                if (!ids.contains(chunk.id())) {
+                    chunkIndexes.remove(chunk.id());
+                }
+            }
+        }
+    }
+    
+    private void append(LogEntry entry) {
+        if (logFile == null) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(objectMapper.writeValueAsString(entry));
+            writer.newLine();
+            logLines++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write ingestion manifest " + logFile, e);
+        }
+    }
+    
+    /**
+     * Rewrite the log with one line per document if replaced and removed documents left older lines in it.
+     */
+    synchronized void compact() {
+        if (logFile == null || logLines <= documents.size()) {
+            return;
+        }
+        Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, DocumentEntry> document : documents.entrySet()) {
+                DocumentEntry entry = document.getValue();
+                writer.write(objectMapper.writeValueAsString(
+                        new LogEntry(document.getKey(), entry.documentHash(), entry.chunks())));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact ingestion manifest " + logFile, e);
+        }
+        try {
+            Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logLines = documents.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact ingestion manifest " + logFile, e);
+        }
+    }
+}
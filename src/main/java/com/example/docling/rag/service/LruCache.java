@@ -0,0 +1,159 @@
+package com.example.docling.rag.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Bounded cache that evicts the least recently used entry once it holds {@code capacity} entries.
+ * Hits, misses and evictions are counted for the health endpoint. A capacity of 0 disables caching.
+ * With a weigher, the estimated memory of the entries is kept up to date for a memory budget.
+ */
+public class LruCache<K, V> {
+    
+    private final int capacity;
+    private final LinkedHashMap<K, V> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ToLongBiFunction<K, V> weigher;
+    // Guarded by entries
+    private long weight;
+    
+    public LruCache(int capacity) {
+        this(capacity, (key, value) -> 0);
+    }
+    
+    /**
+     * @param weigher estimated bytes held by an entry, summed up by {@link #weight()}
+     */
+    public LruCache(int capacity, ToLongBiFunction<K, V> weigher) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.weigher = weigher;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    weight -= weigher.applyAsLong(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Return the cached value, or {@code null} on a miss.
+     */
+    public V get(K key) {
+        return get(key, value -> true);
+    }
+    
+    /**
+     * Return the cached value if it is still valid, or {@code null} on a miss.
+     * Entries that are no longer valid are removed and counted as misses.
+     */
+    public V get(K key, Predicate<V> valid) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+            if (value != null && !valid.test(value)) {
+                entries.remove(key);
+                weight -= weigher.applyAsLong(key, value);
+                value = null;
+            }
+        }
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+    
+    public void put(K key, V value) {
+        if (capacity == 0) {
+            return;
+        }
+        synchronized (entries) {
+            V previous = entries.put(key, value);
+            weight += weigher.applyAsLong(key, value);
+            if (previous != null) {
+                weight -= weigher.applyAsLong(key, previous);
+            }
+        }
+    }
+    
+    /**
+     * Return the cached value or compute and cache it. The value is computed outside the lock, so
+     * concurrent misses for the same key may compute it more than once.
+     */
+    public V computeIfAbsent(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+    
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+    
+    /**
+     * Estimated bytes held by the entries, 0 without a weigher.
+     */
+    public long weight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public int capacity() {
+        return capacity;
+    }
+    
+    public long hits() {
+        return hits.get();
+    }
+    
+    public long misses() {
+        return misses.get();
+    }
+    
+    public long evictions() {
+        return evictions.get();
+    }
+    
+    public double hitRate() {
+        long lookups = hits() + misses();
+        return lookups == 0 ? 0.0 : (double) hits() / lookups;
+    }
+    
+    /**
+     * Snapshot of the statistics for JSON output.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("capacity", capacity);
+        stats.put("hits", hits());
+        stats.put("misses", misses());
+        stats.put("evictions", evictions());
+        stats.put("hitRate", Math.round(hitRate() * 1000) / 1000.0);
+        return stats;
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.docling.rag.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits markdown read from a {@link Reader} into chunks of at most {@code chunkSize} characters,
+ * one chunk at a time.
+ * <p>
+ * Only the chunk being built and the current line are held in memory, so chunks can be embedded
+ * while the rest of the document is still being read. Chunks follow the document structure:
+ * <ul>
+ *   <li>a heading always starts a new chunk,</li>
+ *   <li>a code block split across chunks is closed at the end of one chunk and reopened with its
+ *       opening fence in the next,</li>
+ *   <li>a table split across chunks repeats its header rows in the next chunk,</li>
+ *   <li>text split inside a section is broken at a sentence end or whitespace, and the next chunk
+ *       starts with up to {@code overlap} characters from the end of the previous one.</li>
+ * </ul>
+ */
+public class MarkdownChunker implements Iterator<String> {
+    
+    private final Reader reader;
+    private final int chunkSize;
+    private final int overlap;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder lineRemainder = new StringBuilder();
+    private boolean lineStart = true;
+    private boolean lineComplete = true;
+    private String pieceSeparator = "\n";
+    
+    private final StringBuilder chunk = new StringBuilder();
+    private boolean chunkHasContent;
+    private boolean paragraphBreak;
+    private final ArrayDeque<String> ready = new ArrayDeque<>();
+    
+    private String openingFence;  // opening line of the code block being read, if any
+    private String closingFence;
+    private final List<String> tableHeader = new ArrayList<>(2);
+    private boolean inTable;
+    
+    public MarkdownChunker(Reader reader, int chunkSize, int overlap) {
+        checkSettings(chunkSize, overlap);
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.overlap = overlap;
+    }
+    
+    /**
+     * Reject chunk sizes below one character and overlaps that are negative or not smaller than the chunk size.
+     */
+    public static void checkSettings(int chunkSize, int overlap) {
+        if (chunkSize < 1 || overlap < 0 || overlap >= chunkSize) {
+            throw new IllegalArgumentException("Invalid chunk settings: size=" + chunkSize + ", overlap=" + overlap);
+        }
+    }
+    
+    /**
+     * Split text into a list of chunks, for callers that already hold the whole document.
+     */
+    public static List<String> split(String text, int chunkSize, int overlap) {
+        List<String> chunks = new ArrayList<>();
+        new MarkdownChunker(new StringReader(text), chunkSize, overlap).forEachRemaining(chunks::add);
+        return chunks;
+    }
+    
+    /**
+     * Read until the next chunk is complete.
+     *
+     * @throws UncheckedIOException if reading the document fails
+     */
+    @Override
+    public boolean hasNext() {
+        try {
+            while (ready.isEmpty() && readPiece()) {
+                processPiece();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read document", e);
+        }
+        if (ready.isEmpty() && endOfInput) {
+            // The last chunk, closing a code block only if the document did
+            openingFence = null;
+            breakChunk(false);
+        }
+        return !ready.isEmpty();
+    }
+    
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return ready.poll();
+    }
+    
+    private void processPiece() {
+        String text = line.toString();
+        if (!lineStart) {
+            // Rest of a line longer than a chunk, continuing whatever the line started
+            append(text, pieceSeparator);
+            return;
+        }
+        
+        String stripped = text.strip();
+        if (openingFence != null) {
+            append(text, "\n");
+            if (stripped.startsWith(closingFence) && stripped.chars().allMatch(c -> c == closingFence.charAt(0))) {
+                openingFence = null;
+            }
+            return;
+        }
+        
+        if (stripped.isEmpty()) {
+            inTable = false;
+            paragraphBreak = chunkHasContent;
+            return;
+        }
+        String separator = paragraphBreak ? "\n\n" : "\n";
+        paragraphBreak = false;
+        
+        if (stripped.startsWith("```") || stripped.startsWith("~~~")) {
+            inTable = false;
+            char marker = stripped.charAt(0);
+            int length = 0;
+            while (length < stripped.length() && stripped.charAt(length) == marker) {
+                length++;
+            }
+            append(text, separator);
+            openingFence = text;
+            closingFence = stripped.substring(0, length);
+        } else if (isHeading(stripped)) {
+            inTable = false;
+            breakChunk(false);
+            append(text, separator);
+        } else if (stripped.startsWith("|")) {
+            if (!inTable) {
+                inTable = true;
+                tableHeader.clear();
+            }
+            // Header row and delimiter row, repeated when the table continues in the next chunk
+            if (tableHeader.isEmpty() || (tableHeader.size() == 1 && stripped.matches("\\|[\\s|:-]*"))) {
+                tableHeader.add(text);
+            }
+            append(text, separator);
+        } else {
+            inTable = false;
+            append(text, separator);
+        }
+    }
+    
+    /**
+     * Add text to the current chunk, starting new chunks when it does not fit.
+     */
+    private void append(String text, String separator) {
+        while (true) {
+            String joint = chunk.length() == 0 ? "" : separator;
+            int capacity = chunkSize - chunk.length() - joint.length() - closingReserve();
+            if (text.length() <= capacity || text.isEmpty()) {
+                chunk.append(joint).append(text);
+                chunkHasContent = true;
+                return;
+            }
+            // A line is moved to the next chunk whole, unless it is the rest of a line that was already
+            // split or too long for any chunk; those fill the current chunk first
+            boolean splitLine = !separator.contains("\n") || text.length() > chunkSize - closingReserve();
+            if (chunkHasContent && (!splitLine || capacity < chunkSize / 4)) {
+                breakChunk(true);
+                continue;
+            }
+            
+            int cut = breakPoint(text, Math.max(1, capacity));
+            chunk.append(joint).append(text, 0, cut);
+            chunkHasContent = true;
+            separator = Character.isWhitespace(text.charAt(cut - 1)) ? " " : "";
+            text = text.substring(cut).strip();
+            breakChunk(true);
+            if (text.isEmpty()) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Emit the current chunk. With {@code carryOver} the next chunk starts with the context needed to
+     * continue the current block: the opening fence, the table header or the overlap.
+     */
+    private void breakChunk(boolean carryOver) {
+        if (!chunkHasContent) {
+            if (!carryOver) {
+                chunk.setLength(0);
+            }
+            return;
+        }
+        if (openingFence != null) {
+            chunk.append('\n').append(closingFence);
+        }
+        String text = chunk.toString().strip();
+        if (!text.isEmpty()) {
+            ready.add(text);
+        }
+        chunk.setLength(0);
+        chunkHasContent = false;
+        paragraphBreak = false;
+        if (!carryOver) {
+            return;
+        }
+        
+        String carry;
+        if (openingFence != null) {
+            carry = openingFence;
+        } else if (inTable) {
+            carry = String.join("\n", tableHeader);
+        } else {
+            carry = overlapOf(text);
+        }
+        if (carry.length() <= chunkSize / 2) {
+            chunk.append(carry);
+        }
+    }
+    
+    /**
+     * The last {@code overlap} characters of a chunk, starting at a word boundary where possible.
+     */
+    private String overlapOf(String text) {
+        if (overlap == 0 || text.length() <= overlap) {
+            return "";
+        }
+        int start = text.length() - overlap;
+        if (!Character.isWhitespace(text.charAt(start - 1))) {
+            for (int i = start; i < text.length(); i++) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        if (Character.isLowSurrogate(text.charAt(Math.min(start, text.length() - 1)))) {
+            start++;
+        }
+        return start < text.length() ? text.substring(start).strip() : "";
+    }
+    
+    private int closingReserve() {
+        return openingFence != null ? closingFence.length() + 1 : 0;
+    }
+    
+    /**
+     * Length of the longest prefix of at most {@code capacity} characters that ends at a sentence end,
+     * or failing that at whitespace, without looking before the second half of the window.
+     */
+    private static int breakPoint(String text, int capacity) {
+        int floor = capacity / 2;
+        int whitespace = -1;
+        for (int i = capacity; i > Math.max(floor, 1); i--) {
+            char c = text.charAt(i - 1);
+            if (Character.isWhitespace(c)) {
+                char previous = text.charAt(i - 2);
+                if (previous == '.' || previous == '!' || previous == '?') {
+                    return i;
+                }
+                if (whitespace < 0) {
+                    whitespace = i;
+                }
+            }
+        }
+        if (whitespace > 0) {
+            return whitespace;
+        }
+        return Character.isHighSurrogate(text.charAt(capacity - 1)) && capacity > 1 ? capacity - 1 : capacity;
+    }
+    
+    private static boolean isHeading(String line) {
+        int level = 0;
+        while (level < line.length() && line.charAt(level) == '#') {
+            level++;
+        }
+        return level >= 1 && level <= 6 && (level == line.length() || line.charAt(level) == ' ');
+    }
+    
+    /**
+     * Read the next line into {@link #line}, or the next piece of a line longer than a chunk.
+     */
+    private boolean readPiece() throws IOException {
+        lineStart = lineComplete;
+        line.setLength(0);
+        line.append(lineRemainder);
+        lineRemainder.setLength(0);
+        while (true) {
+            if (line.length() >= chunkSize) {
+                cutLine();
+                return true;
+            }
+            if (position == limit && !fill()) {
+                // The last line may not end with a line break
+                lineComplete = true;
+                return line.length() > 0;
+            }
+            char c = buffer[position++];
+            if (c == '\n') {
+                lineComplete = true;
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return true;
+            }
+            line.append(c);
+        }
+    }
+    
+    /**
+     * Cut a line that has grown to a chunk, at whitespace where possible; the rest is kept for the next piece.
+     */
+    private void cutLine() {
+        int cut = line.length();
+        for (int i = cut - 1; i > chunkSize / 2; i--) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                cut = i;
+                break;
+            }
+        }
+        if (cut == line.length() && cut > 1 && Character.isHighSurrogate(line.charAt(cut - 1))) {
+            cut--;
+        }
+        int rest = cut;
+        while (rest < line.length() && Character.isWhitespace(line.charAt(rest))) {
+            rest++;
+        }
+        pieceSeparator = rest > cut ? " " : "";
+        lineRemainder.append(line, rest, line.length());
+        line.setLength(cut);
+        lineComplete = false;
+    }
+    
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.docling.rag.service;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All-MiniLM-L6-v2 sentence embeddings computed in process with ONNX Runtime, from the model bundled
+ * in the {@code langchain4j-embeddings-all-minilm-l6-v2} jars.
+ * <p>
+ * The model is loaded into a pool of {@code sessions} inference sessions that share the cores: each
+ * runs with {@code cores / sessions} intra-op threads, so concurrent queries and ingest batches run
+ * side by side instead of queueing behind one session. {@link #embedAll(List)} sorts its inputs by
+ * length and runs them as padded batches of at most {@code batchSize} texts, one ONNX call per
+ * batch, spread over the sessions. Texts are truncated to 128 tokens, as configured in the bundled
+ * tokenizer, so vectors match those of langchain4j's {@code AllMiniLmL6V2EmbeddingModel}.
+ * <p>
+ * Loading happens in the constructor and {@link #warmUp()} runs every session once, so neither is
+ * paid by the first query.
+ */
+public class OnnxEmbeddingModelPool implements EmbeddingModel, Closeable {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(OnnxEmbeddingModelPool.class);
+    
+    public static final int DIMENSION = 384;
+    private static final int MAX_SEQUENCE_LENGTH = 128;
+    private static final String WARMUP_TEXT = "Warm up the embedding model before the first query arrives.";
+    
+    /**
+     * Model files bundled with langchain4j: full precision or int8-quantized weights.
+     */
+    public enum Variant {
+        FP32("all-minilm-l6-v2.onnx", "all-minilm-l6-v2-tokenizer.json"),
+        QUANTIZED("all-minilm-l6-v2-q.onnx", "all-minilm-l6-v2-q-tokenizer.json");
+        
+        private final String modelResource;
+        private final String tokenizerResource;
+        
+        Variant(String modelResource, String tokenizerResource) {
+            this.modelResource = modelResource;
+            this.tokenizerResource = tokenizerResource;
+        }
+    }
+    
+    private final Variant variant;
+    private final int batchSize;
+    private final OrtEnvironment environment;
+    private final HuggingFaceTokenizer tokenizer;
+    private final List<OrtSession> sessions;
+    private final BlockingQueue<OrtSession> idleSessions;
+    private final ExecutorService executor;
+    private final AtomicInteger busySessions = new AtomicInteger();
+    
+    public OnnxEmbeddingModelPool(Variant variant, int sessionCount, int batchSize) {
+        if (sessionCount < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Invalid embedding model pool: sessions=" + sessionCount
+                    + ", batchSize=" + batchSize);
+        }
+        this.variant = variant;
+        this.batchSize = batchSize;
+        this.environment = OrtEnvironment.getEnvironment();
+        long start = System.nanoTime();
+        int threadsPerSession = Math.max(1, Runtime.getRuntime().availableProcessors() / sessionCount);
+        try (InputStream tokenizerJson = resource(variant.tokenizerResource);
+             OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            this.tokenizer = HuggingFaceTokenizer.newInstance(tokenizerJson,
+                    Map.of("padding", "false", "truncation", "true", "maxLength", String.valueOf(MAX_SEQUENCE_LENGTH)));
+            byte[] model;
+            try (InputStream modelBytes = resource(variant.modelResource)) {
+                model = modelBytes.readAllBytes();
+            }
+            options.setIntraOpNumThreads(threadsPerSession);
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            List<OrtSession> created = new ArrayList<>(sessionCount);
+            for (int i = 0; i < sessionCount; i++) {
+                created.add(environment.createSession(model, options));
+            }
+            this.sessions = List.copyOf(created);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load embedding model " + variant, e);
+        } catch (OrtException e) {
+            throw new IllegalStateException("Failed to load embedding model " + variant, e);
+        }
+        this.idleSessions = new ArrayBlockingQueue<>(sessionCount, false, sessions);
+        this.executor = Executors.newFixedThreadPool(sessionCount, Thread.ofPlatform().name("onnx-embedding-", 0)
+                .daemon(true).factory());
+        LOG.info("Loaded {} embedding model into {} sessions with {} threads each in {} ms", variant, sessionCount,
+                threadsPerSession, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    /**
+     * Run one inference on every session, so the first queries do not pay for session initialisation.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        List<Future<?>> runs = new ArrayList<>(sessions.size());
+        for (int i = 0; i < sessions.size(); i++) {
+            runs.add(executor.submit(() -> embedBatch(List.of(WARMUP_TEXT))));
+        }
+        await(runs);
+        LOG.info("Warmed up {} embedding sessions in {} ms", sessions.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    
+    @Override
+    public Response<Embedding> embed(String text) {
+        Batch batch = embedBatch(List.of(text));
+        return Response.from(Embedding.from(batch.vectors[0]), new TokenUsage(batch.tokens));
+    }
+    
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        return embed(textSegment.text());
+    }
+    
+    /**
+     * Embed the segments in padded batches of similar length, run in parallel on the session pool.
+     */
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.isEmpty()) {
+            return Response.from(List.of());
+        }
+        if (textSegments.size() == 1) {
+            Response<Embedding> single = embed(textSegments.get(0));
+            return Response.from(List.of(single.content()), single.tokenUsage());
+        }
+        
+        // Sort by length so each batch pads to a similar number of tokens
+        Integer[] order = new Integer[textSegments.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> textSegments.get(i).text().length()));
+        
+        int size = Math.min(batchSize, (order.length + sessions.size() - 1) / sessions.size());
+        List<Integer[]> slices = new ArrayList<>();
+        List<Future<Batch>> batches = new ArrayList<>();
+        for (int from = 0; from < order.length; from += size) {
+            Integer[] slice = Arrays.copyOfRange(order, from, Math.min(order.length, from + size));
+            List<String> texts = new ArrayList<>(slice.length);
+            for (int position : slice) {
+                texts.add(textSegments.get(position).text());
+            }
+            slices.add(slice);
+            batches.add(executor.submit(() -> embedBatch(texts)));
+        }
+        
+        Embedding[] embeddings = new Embedding[order.length];
+        int tokens = 0;
+        for (int b = 0; b < batches.size(); b++) {
+            Batch batch = get(batches.get(b), batches);
+            Integer[] slice = slices.get(b);
+            for (int i = 0; i < slice.length; i++) {
+                embeddings[slice[i]] = Embedding.from(batch.vectors[i]);
+            }
+            tokens += batch.tokens;
+        }
+        return Response.from(Arrays.asList(embeddings), new TokenUsage(tokens));
+    }
+    
+    @Override
+    public int dimension() {
+        return DIMENSION;
+    }
+    
+    @Override
+    public String modelName() {
+        return "all-minilm-l6-v2" + (variant == Variant.QUANTIZED ? "-q" : "");
+    }
+    
+    public int sessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Sessions running an inference right now.
+     */
+    public int busySessions() {
+        return busySessions.get();
+    }
+    
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (OrtSession session : sessions) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                LOG.warn("Failed to close embedding session: {}", e.getMessage());
+            }
+        }
+        tokenizer.close();
+    }
+    
+    /**
+     * Embed the texts with one ONNX call on an idle session: token ids padded to the longest text,
+     * mean-pooled over the attention mask and normalised to unit length.
+     */
+    private Batch embedBatch(List<String> texts) {
+        Encoding[] encodings = tokenizer.batchEncode(texts);
+        int length = 0;
+        int tokens = 0;
+        for (Encoding encoding : encodings) {
+            length = Math.max(length, encoding.getIds().length);
+        }
+        long[][] ids = new long[encodings.length][length];
+        long[][] mask = new long[encodings.length][length];
+        long[][] typeIds = new long[encodings.length][length];
+        for (int i = 0; i < encodings.length; i++) {
+            long[] encodingIds = encodings[i].getIds();
+            System.arraycopy(encodingIds, 0, ids[i], 0, encodingIds.length);
+            System.arraycopy(encodings[i].getAttentionMask(), 0, mask[i], 0, encodingIds.length);
+            System.arraycopy(encodings[i].getTypeIds(), 0, typeIds[i], 0, encodingIds.length);
+            tokens += encodingIds.length;
+        }
+        
+        OrtSession session;
+        try {
+            session = idleSessions.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an embedding session", e);
+        }
+        busySessions.incrementAndGet();
+        try (OnnxTensor inputIds = OnnxTensor.createTensor(environment, ids);
+             OnnxTensor attentionMask = OnnxTensor.createTensor(environment, mask);
+             OnnxTensor tokenTypeIds = OnnxTensor.createTensor(environment, typeIds)) {
+            Map<String, OnnxTensor> inputs = session.getInputNames().contains("token_type_ids")
+                    ? Map.of("input_ids", inputIds, "attention_mask", attentionMask, "token_type_ids", tokenTypeIds)
+                    : Map.of("input_ids", inputIds, "attention_mask", attentionMask);
+            try (OrtSession.Result result = session.run(inputs)) {
+                return new Batch(meanPool((float[][][]) result.get(0).getValue(), mask), tokens);
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("Embedding inference failed", e);
+        } finally {
+            busySessions.decrementAndGet();
+            idleSessions.add(session);
+        }
+    }
+    
+    private static float[][] meanPool(float[][][] hidden, long[][] mask) {
+        float[][] vectors = new float[hidden.length][];
+        for (int b = 0; b < hidden.length; b++) {
+            float[] vector = new float[hidden[b][0].length];
+            int count = 0;
+            for (int t = 0; t < hidden[b].length; t++) {
+                if (mask[b][t] != 0) {
+                    float[] token = hidden[b][t];
+                    for (int d = 0; d < vector.length; d++) {
+                        vector[d] += token[d];
+                    }
+                    count++;
+                }
+            }
+            double norm = 0;
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] /= Math.max(1, count);
+                norm += vector[d] * vector[d];
+            }
+            float scale = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0;
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] *= scale;
+            }
+            vectors[b] = vector;
+        }
+        return vectors;
+    }
+    
+    private static InputStream resource(String name) throws IOException {
+        InputStream stream = OnnxEmbeddingModelPool.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null) {
+            throw new IOException("Embedding model resource " + name + " is not on the classpath");
+        }
+        return stream;
+    }
+    
+    private static Batch get(Future<Batch> future, List<Future<Batch>> all) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            all.forEach(pending -> pending.cancel(false));
+            throw e.getCause() instanceof RuntimeException cause
+                    ? cause
+                    : new IllegalStateException("Embedding inference failed", e.getCause());
+        } catch (InterruptedException e) {
+            all.forEach(pending -> pending.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while embedding", e);
+        }
+    }
+    
+    private static void await(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Embedding model warmup failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted during embedding model warmup", e);
+            }
+        }
+    }
+    
+    private record Batch(float[][] vectors, int tokens) {
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.metrics.Counter;
+import com.example.docling.rag.metrics.Histogram;
+import com.example.docling.rag.metrics.MetricsRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.Service;
+import org.apache.camel.component.file.GenericFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Converts large documents with docling a range of pages at a time, in parallel.
+ * <p>
+ * A document in one of {@code formats} with more than {@code pageThreshold} pages is split into ranges of
+ * {@code pagesPerRange} pages. The ranges are queued together and converted at most {@code concurrency} at
+ * a time across documents, in the order they were queued. {@link #parse} replaces the body with a
+ * {@link Reader} that returns the markdown of the ranges in page order and waits for a range only when it
+ * reaches it, so chunking and embedding start on the first pages while later ones are still converted.
+ * <p>
+ * A range converted on its own does not know the section it continues. When a range does not start with
+ * a heading, the reader repeats the last heading of the previous ranges before it, so the chunker starts
+ * the continuation under its section heading instead of as a fragment without one.
+ * <p>
+ * Pages are counted without a PDF library: a PDF by the page count of its page tree, or its page objects,
+ * found by scanning the file, and other formats by their form feeds. A PDF whose page tree is in
+ * compressed object streams counts no pages and is converted whole. If the first range fails, for example
+ * because the backend does not support page ranges, the document is converted whole instead.
+ */
+public class PageRangeParser implements Service {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(PageRangeParser.class);
+    
+    /**
+     * Exchange property set to the number of ranges when the body was converted by page ranges.
+     */
+    public static final String RANGES = "ragParseRanges";
+    
+    /**
+     * Header of the docling component with extra command-line arguments, which carry the page range.
+     */
+    public static final String DOCLING_ARGUMENTS = "CamelDoclingCustomArguments";
+    
+    private static final Pattern HEADING = Pattern.compile("#{1,6}\\s+\\S.*");
+    private static final Pattern PDF_PAGE = Pattern.compile("/Type\\s*/Page(?![A-Za-z])");
+    private static final Pattern PDF_PAGE_COUNT = Pattern.compile("/Type\\s*/Pages\\b[^>]*?/Count\\s+(\\d+)"
+            + "|/Count\\s+(\\d+)[^>]*?/Type\\s*/Pages\\b");
+    private static final int SCAN_BLOCK = 1024 * 1024;
+    private static final int SCAN_OVERLAP = 256;
+    
+    /**
+     * Converts a document, or a range of its pages, to markdown.
+     */
+    @FunctionalInterface
+    public interface Converter {
+        /**
+         * Convert pages {@code firstPage} to {@code lastPage}, 1-based and inclusive, or the whole document
+         * when {@code firstPage} is 0.
+         */
+        String convert(Path document, int firstPage, int lastPage) throws Exception;
+    }
+    
+    private final int pageThreshold;
+    private final int pagesPerRange;
+    private final Set<String> formats;
+    private final Converter converter;
+    private final ThreadPoolExecutor rangeStage;
+    private final Histogram rangeSeconds;
+    private final Counter documentsSplit;
+    
+    /**
+     * @param pageThreshold documents with more pages are split, 0 converts every document whole
+     * @param formats       extensions of the documents that may be split, such as {@code pdf}
+     */
+    public PageRangeParser(int pageThreshold, int pagesPerRange, int concurrency, int queueSize, Set<String> formats,
+                           Converter converter, MetricsRegistry metrics) {
+        if (pageThreshold < 0 || pagesPerRange < 1) {
+            throw new IllegalArgumentException("Invalid page range settings: threshold=" + pageThreshold
+                    + ", pagesPerRange=" + pagesPerRange);
+        }
+        this.pageThreshold = pageThreshold;
+        this.pagesPerRange = pagesPerRange;
+        this.formats = formats.stream().map(format -> "." + format.strip().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        this.converter = converter;
+        this.rangeStage = StageExecutors.newVirtualStage("docling-range", concurrency, queueSize);
+        this.rangeSeconds = metrics.histogram("rag_parse_range_duration_seconds",
+                "Time to convert one page range of a split document with docling", MetricsRegistry.LATENCY_BUCKETS);
+        this.documentsSplit = metrics.counter("rag_parse_split_documents_total",
+                "Documents converted by page ranges");
+        metrics.gauge("rag_parse_ranges_queued", "Page ranges waiting for docling", () -> rangeStage.getQueue().size());
+        metrics.gauge("rag_parse_ranges_active", "Page ranges being converted", rangeStage::getActiveCount);
+    }
+    
+    /**
+     * Convert the document in the body by page ranges if it is large enough, replacing the body with a
+     * reader of the merged markdown, which the route must close, and setting {@link #RANGES}. Other
+     * documents are left for a whole conversion.
+     */
+    public void parse(Exchange exchange) throws IOException {
+        exchange.removeProperty(RANGES);
+        Path document = documentFile(exchange.getIn().getBody());
+        int pages = document != null ? pagesToSplit(document) : 0;
+        if (pages == 0) {
+            return;
+        }
+        List<Range> ranges = new ArrayList<>();
+        for (int start = 1; start <= pages; start += pagesPerRange) {
+            int first = start;
+            int last = Math.min(pages, first + pagesPerRange - 1);
+            ranges.add(new Range(first, last, rangeStage.submit(() -> convertRange(document, first, last))));
+        }
+        documentsSplit.increment();
+        LOG.info("Converting {} pages of {} in {} ranges", pages, document.getFileName(), ranges.size());
+        exchange.setProperty(RANGES, ranges.size());
+        exchange.getIn().setBody(new RangeReader(document, ranges));
+    }
+    
+    /**
+     * The number of pages of a document to split, or 0 if it is converted whole.
+     */
+    public int pagesToSplit(Path document) throws IOException {
+        if (pageThreshold == 0 || !formats.contains(UploadSpool.extensionOf(document.getFileName().toString())
+                .toLowerCase(Locale.ROOT))) {
+            return 0;
+        }
+        int pages = countPages(document);
+        return pages > pageThreshold ? pages : 0;
+    }
+    
+    private String convertRange(Path document, int first, int last) throws Exception {
+        long start = System.nanoTime();
+        String markdown = converter.convert(document, first, last);
+        rangeSeconds.observeSince(start);
+        return markdown != null ? markdown : "";
+    }
+    
+    /**
+     * Count the pages of a document: the largest page tree count or else the page objects of a PDF, and one
+     * more than the form feeds of any other format.
+     */
+    public static int countPages(Path document) throws IOException {
+        boolean pdf = UploadSpool.extensionOf(document.getFileName().toString()).equalsIgnoreCase(".pdf");
+        int pageObjects = 0;
+        int pageCount = 0;
+        int formFeeds = 0;
+        try (InputStream in = Files.newInputStream(document)) {
+            byte[] block = new byte[SCAN_BLOCK];
+            String tail = "";
+            int read;
+            while ((read = in.readNBytes(block, 0, block.length)) > 0) {
+                if (!pdf) {
+                    for (int i = 0; i < read; i++) {
+                        formFeeds += block[i] == '\f' ? 1 : 0;
+                    }
+                    continue;
+                }
+                // Latin-1 maps every byte to one char; the tail of the previous block catches tokens split
+                // across blocks, and only matches that end past it are new
+                String text = tail + new String(block, 0, read, StandardCharsets.ISO_8859_1);
+                Matcher page = PDF_PAGE.matcher(text);
+                while (page.find()) {
+                    pageObjects += page.end() > tail.length() ? 1 : 0;
+                }
+                Matcher count = PDF_PAGE_COUNT.matcher(text);
+                while (count.find()) {
+                    String value = count.group(1) != null ? count.group(1) : count.group(2);
+                    if (value.length() <= 9) {
+                        pageCount = Math.max(pageCount, Integer.parseInt(value));
+                    }
+                }
+                tail = text.substring(Math.max(0, text.length() - SCAN_OVERLAP));
+            }
+        }
+        if (!pdf) {
+            return formFeeds + 1;
+        }
+        return pageCount > 0 ? pageCount : pageObjects;
+    }
+    
+    /**
+     * The file of a document body, or {@code null} for bodies that are not files, such as bytes.
+     */
+    private static Path documentFile(Object body) {
+        if (body instanceof GenericFile<?> genericFile && genericFile.getFile() instanceof File file) {
+            return file.toPath();
+        } else if (body instanceof File file) {
+            return file.toPath();
+        } else if (body instanceof Path path) {
+            return path;
+        }
+        return null;
+    }
+    
+    private static boolean startsWithHeading(String text) {
+        String stripped = text.strip();
+        int lineEnd = stripped.indexOf('\n');
+        return HEADING.matcher(lineEnd >= 0 ? stripped.substring(0, lineEnd).strip() : stripped).matches();
+    }
+    
+    @Override
+    public void start() {
+        // The range stage is ready as soon as it is constructed
+    }
+    
+    @Override
+    public void stop() {
+        rangeStage.shutdownNow();
+    }
+    
+    private record Range(int first, int last, Future<String> text) {
+    }
+    
+    /**
+     * The markdown of the ranges of one document in page order, with the section heading repeated where a
+     * range continues a section. Closing it cancels the ranges not read yet.
+     */
+    private final class RangeReader extends Reader {
+        
+        private final Path document;
+        private final List<Range> ranges;
+        private int next;
+        private Reader current = Reader.nullReader();
+        private String heading;
+        private boolean inFence;
+        
+        RangeReader(Path document, List<Range> ranges) {
+            this.document = document;
+            this.ranges = ranges;
+        }
+        
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                int read = current.read(buffer, offset, length);
+                if (read > 0) {
+                    return read;
+                }
+                if (next == ranges.size()) {
+                    return -1;
+                }
+                current = new StringReader(nextRange());
+            }
+        }
+        
+        private String nextRange() throws IOException {
+            Range range = ranges.get(next);
+            String text;
+            try {
+                text = range.text().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while converting " + document.getFileName());
+            } catch (ExecutionException e) {
+                if (next == 0) {
+                    return convertWhole(e.getCause());
+                }
+                throw new IOException("Failed to convert pages " + range.first() + "-" + range.last() + " of "
+                        + document.getFileName(), e.getCause());
+            }
+            StringBuilder merged = new StringBuilder(text.length() + 64);
+            if (next > 0) {
+                merged.append("\n\n");
+                if (heading != null && !inFence && !startsWithHeading(text)) {
+                    merged.append(heading).append("\n\n");
+                }
+            }
+            merged.append(text);
+            track(text);
+            next++;
+            return merged.toString();
+        }
+        
+        /**
+         * Convert the whole document after its first range failed, dropping the other ranges.
+         */
+        private String convertWhole(Throwable rangeFailure) throws IOException {
+            LOG.warn("Converting {} whole after its first page range failed: {}", document.getFileName(),
+                    rangeFailure.getMessage());
+            cancelRemaining();
+            next = ranges.size();
+            try {
+                String markdown = converter.convert(document, 0, 0);
+                return markdown != null ? markdown : "";
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Failed to convert " + document.getFileName(), e);
+            }
+        }
+        
+        /**
+         * Remember the last heading outside code blocks, and whether the range ends inside one.
+         */
+        private void track(String text) {
+            text.lines().forEach(line -> {
+                String stripped = line.strip();
+                if (stripped.startsWith("```") || stripped.startsWith("~~~")) {
+                    inFence = !inFence;
+                } else if (!inFence && HEADING.matcher(stripped).matches()) {
+                    heading = stripped;
+                }
+            });
+        }
+        
+        private void cancelRemaining() {
+            for (int i = next; i < ranges.size(); i++) {
+                ranges.get(i).text().cancel(true);
+            }
+        }
+        
+        @Override
+        public void close() {
+            cancelRemaining();
+            next = ranges.size();
+            current = Reader.nullReader();
+        }
+    }
+}
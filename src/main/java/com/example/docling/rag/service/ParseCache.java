@@ -0,0 +1,574 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.metrics.MetricsRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed cache of docling output on disk.
+ * <p>
+ * The key is the SHA-256 of the document bytes and the docling options, so a byte-identical document
+ * converted with the same options, whatever its name, is answered from the cache without calling docling.
+ * Entries are gzip-compressed {@code <key>.md.gz} files; once they take more than {@code maxBytes} on disk
+ * the least recently used ones are deleted. Recency survives restarts through the file modification time,
+ * which a hit refreshes.
+ * <p>
+ * In a route, {@link #lookup} replaces the body with a reader of the cached text on a hit and sets
+ * {@link #HIT}; otherwise the document goes to docling and {@link #store} caches the result. The cached
+ * text is decompressed as it is read, so a hit does not hold the whole document in the heap. Output that
+ * is itself read as a stream, such as a document converted by page ranges, is compressed to the entry as
+ * the route reads it and stored once it has been read to the end.
+ */
+public final class ParseCache {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ParseCache.class);
+    
+    /**
+     * Exchange property set to {@code true} when the body was answered from the cache.
+     */
+    public static final String HIT = "ragParseCacheHit";
+    
+    private static final String KEY = "ragParseCacheKey";
+    private static final String ENTRY_SUFFIX = ".md.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Bump when the key or entry format changes, so old entries are never read
+    private static final String FORMAT = "docling-parse-cache/1";
+    
+    private final Path directory;
+    private final long maxBytes;
+    private final UploadSpool spool;
+    // Key -> compressed size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    
+    /**
+     * Open the cache in {@code directory}, indexing the entries left by a previous run.
+     * A {@code maxBytes} of 0 disables the cache: every lookup misses and nothing is stored.
+     *
+     * @param spool where stream bodies are copied to be hashed
+     */
+    public ParseCache(Path directory, long maxBytes, UploadSpool spool, MetricsRegistry metrics) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.spool = spool;
+        if (maxBytes > 0) {
+            load();
+        }
+        metrics.counter("rag_parse_cache_hits_total", "Documents answered from the parse cache", hits::get);
+        metrics.counter("rag_parse_cache_misses_total", "Documents sent to docling after a parse cache miss", misses::get);
+        metrics.counter("rag_parse_cache_evictions_total", "Parse cache entries evicted to stay within the size limit",
+                evictions::get);
+        metrics.gauge("rag_parse_cache_bytes", "Compressed size of the parse cache on disk", this::totalBytes);
+        metrics.gauge("rag_parse_cache_entries", "Documents in the parse cache", this::size);
+    }
+    
+    /**
+     * Look up the document in the exchange body. On a hit the body becomes a {@link Reader} of the cached
+     * text, which the route must close, and {@link #HIT} is set; on a miss the key is remembered for
+     * {@link #store}. A stream body is spooled to a file, which becomes the body, so it is hashed without
+     * being held in the heap and can still be sent to docling; the file is deleted once the exchange is done.
+     *
+     * @param options the docling options the output depends on, such as the endpoint URI
+     */
+    public void lookup(Exchange exchange, String options) throws IOException {
+        exchange.removeProperty(HIT);
+        exchange.removeProperty(KEY);
+        if (maxBytes == 0) {
+            misses.incrementAndGet();
+            return;
+        }
+        Object body = exchange.getIn().getBody();
+        if (body instanceof InputStream stream) {
+            Path spooled = spool(exchange, stream);
+            exchange.getIn().setBody(spooled.toFile());
+            body = spooled;
+        }
+        String key = key(body, options);
+        Reader cached = key != null ? open(key) : null;
+        if (cached != null) {
+            exchange.setProperty(HIT, true);
+            exchange.getIn().setBody(cached);
+            LOG.debug("Parse cache hit for {}", exchange.getIn().getHeader(Exchange.FILE_NAME));
+        } else if (key != null) {
+            exchange.setProperty(KEY, key);
+        }
+    }
+    
+    /**
+     * Copy a stream body to a spool file named after the document, which docling needs for its extension.
+     */
+    private Path spool(Exchange exchange, InputStream stream) throws IOException {
+        String name = exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+        Path file;
+        try (stream) {
+            file = spool.spool(stream, name != null ? name : "");
+        }
+        exchange.getExchangeExtension().addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange done) {
+                spool.release(file);
+            }
+        });
+        return file;
+    }
+    
+    /**
+     * Cache the docling output in the exchange body under the key found by {@link #lookup}. A {@link Reader}
+     * body is replaced by a reader that writes the text to the cache as it is read; the entry is stored
+     * when the reader reaches the end, and dropped if it is closed before.
+     */
+    public void store(Exchange exchange) throws IOException {
+        String key = exchange.getProperty(KEY, String.class);
+        if (key == null || maxBytes == 0) {
+            return;
+        }
+        if (exchange.getIn().getBody() instanceof Reader reader) {
+            exchange.getIn().setBody(new CachingReader(reader, key));
+            return;
+        }
+        String text = exchange.getIn().getBody(String.class);
+        if (text != null && !text.isEmpty()) {
+            put(key, text);
+        }
+    }
+    
+    /**
+     * The cached text for a key, or {@code null} on a miss.
+     */
+    public String get(String key) {
+        try (Reader reader = open(key)) {
+            if (reader == null) {
+                return null;
+            }
+            StringWriter text = new StringWriter();
+            reader.transferTo(text);
+            return text.toString();
+        } catch (IOException e) {
+            LOG.warn("Dropping unreadable parse cache entry for {}: {}", key, e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+    
+    /**
+     * A reader of the cached text for a key, decompressing it as it is read, or {@code null} on a miss.
+     * The entry stays readable through the reader if it is evicted meanwhile.
+     */
+    public Reader open(String key) {
+        synchronized (entries) {
+            if (!entries.containsKey(key)) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        Path file = entryFile(key);
+        InputStream in = null;
+        try {
+            in = Files.newInputStream(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            Reader reader = new InputStreamReader(new CountingInputStream(new GZIPInputStream(in, 64 * 1024)),
+                    StandardCharsets.UTF_8);
+            hits.incrementAndGet();
+            return reader;
+        } catch (NoSuchFileException e) {
+            // Evicted concurrently
+        } catch (IOException e) {
+            LOG.warn("Dropping unreadable parse cache entry {}: {}", file, e.getMessage());
+            closeQuietly(in);
+            remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+    
+    public void put(String key, String text) {
+        if (maxBytes == 0) {
+            return;
+        }
+        Path temporary = temporaryFile(key);
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary))) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write parse cache entry {}: {}", entryFile(key), e.getMessage());
+            deleteQuietly(temporary);
+            return;
+        }
+        commit(key, temporary);
+    }
+    
+    /**
+     * Move a complete compressed entry written to {@code temporary} into place and evict the least recently
+     * used entries beyond the size limit.
+     */
+    private void commit(String key, Path temporary) {
+        Path file = entryFile(key);
+        long size;
+        try {
+            size = Files.size(temporary);
+            if (size > maxBytes) {
+                Files.delete(temporary);
+                return;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not write parse cache entry {}: {}", file, e.getMessage());
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Left for the next start to clean up
+            }
+            return;
+        }
+        
+        List<String> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Long previous = entries.put(key, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(key)) {
+                    continue;
+                }
+                totalBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (String old : evicted) {
+            evictions.incrementAndGet();
+            deleteQuietly(entryFile(old));
+        }
+    }
+    
+    /**
+     * Key of a document body: the SHA-256 of the cache format, the options and the document bytes, or
+     * {@code null} if the body is not a file, a path or bytes. A string naming an existing file is hashed
+     * by the file content, any other string by its own bytes.
+     */
+    String key(Object body, String options) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update((FORMAT + "\n" + options + "\n").getBytes(StandardCharsets.UTF_8));
+        
+        if (body instanceof GenericFile<?> genericFile && genericFile.getFile() instanceof File file) {
+            body = file;
+        }
+        if (body instanceof File file) {
+            body = file.toPath();
+        }
+        if (body instanceof String text) {
+            Path path = asExistingFile(text);
+            body = path != null ? path : text.getBytes(StandardCharsets.UTF_8);
+        }
+        
+        if (body instanceof Path path) {
+            try (InputStream in = Files.newInputStream(path)) {
+                update(digest, in);
+            }
+        } else if (body instanceof byte[] bytes) {
+            update(digest, new ByteArrayInputStream(bytes));
+        } else {
+            return null;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public long totalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+    
+    public double hitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0.0 : (double) hits.get() / lookups;
+    }
+    
+    /**
+     * Snapshot of the statistics for JSON output.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", size());
+        stats.put("bytes", totalBytes());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", Math.round(hitRate() * 1000) / 1000.0);
+        stats.put("textBytesServed", bytesRead.get());
+        return stats;
+    }
+    
+    /**
+     * Index the entries on disk, least recently used first, and delete leftovers of interrupted writes.
+     */
+    private void load() {
+        record Entry(String key, long size, long lastUsed) {
+        }
+        List<Entry> found = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        deleteQuietly(file);
+                    } else if (name.endsWith(ENTRY_SUFFIX)) {
+                        found.add(new Entry(name.substring(0, name.length() - ENTRY_SUFFIX.length()), Files.size(file),
+                                Files.getLastModifiedTime(file).toMillis()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open parse cache in " + directory, e);
+        }
+        found.sort((a, b) -> Long.compare(a.lastUsed(), b.lastUsed()));
+        for (Entry entry : found) {
+            entries.put(entry.key(), entry.size());
+            totalBytes += entry.size();
+        }
+        LOG.info("Parse cache in {}: {} entries, {} of {} bytes", directory, entries.size(), totalBytes, maxBytes);
+    }
+    
+    private void remove(String key) {
+        synchronized (entries) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        deleteQuietly(entryFile(key));
+    }
+    
+    private Path temporaryFile(String key) {
+        return directory.resolve(key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+    }
+    
+    private Path entryFile(String key) {
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+    
+    private static Path asExistingFile(String text) {
+        if (text.isEmpty() || text.length() > 4096 || text.indexOf('\n') >= 0 || text.indexOf('\0') >= 0) {
+            return null;
+        }
+        try {
+            Path path = Path.of(text);
+            return Files.isRegularFile(path) ? path : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private static void update(MessageDigest digest, InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+        }
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing was read from it
+            }
+        }
+    }
+    
+    /**
+     * Counts the decompressed bytes read from an entry for the statistics.
+     */
+    private final class CountingInputStream extends FilterInputStream {
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead.incrementAndGet();
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                bytesRead.addAndGet(read);
+            }
+            return read;
+        }
+    }
+    
+    /**
+     * Passes the text of a reader through while compressing it to a temporary entry, which is stored once
+     * the text has been read to the end.
+     */
+    private final class CachingReader extends FilterReader {
+        
+        private final String key;
+        private final Path temporary;
+        private Writer out;
+        private boolean empty = true;
+        
+        CachingReader(Reader in, String key) throws IOException {
+            super(in);
+            this.key = key;
+            this.temporary = temporaryFile(key);
+            this.out = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024),
+                    StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                write(new char[]{(char) c}, 0, 1);
+            } else {
+                finish(true);
+            }
+            return c;
+        }
+        
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                write(buffer, offset, read);
+            } else if (read < 0) {
+                finish(true);
+            }
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped text would be missing from the entry
+            finish(false);
+            return super.skip(n);
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                finish(false);
+            }
+        }
+        
+        private void write(char[] buffer, int offset, int length) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+                empty = false;
+            } catch (IOException e) {
+                LOG.warn("Could not write parse cache entry {}: {}", entryFile(key), e.getMessage());
+                finish(false);
+            }
+        }
+        
+        /**
+         * Close the temporary entry once, storing it if the text was read to the end.
+         */
+        private void finish(boolean complete) {
+            if (out == null) {
+                return;
+            }
+            Writer writer = out;
+            out = null;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.warn("Could not write parse cache entry {}: {}", entryFile(key), e.getMessage());
+                complete = false;
+            }
+            if (complete && !empty) {
+                commit(key, temporary);
+            } else {
+                deleteQuietly(temporary);
+            }
+        }
+    }
+    
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
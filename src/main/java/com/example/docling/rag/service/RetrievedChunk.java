@@ -0,0 +1,12 @@
+package com.example.docling.rag.service;
+
+/**
+ * A chunk returned by a search, with what context assembly needs to merge and rank it.
+ *
+ * @param text       chunk text
+ * @param source     source document, or {@code null} if unknown
+ * @param chunkIndex position of the chunk in its document, or -1 if unknown
+ * @param score      relevance score between 0 and 1
+ */
+public record RetrievedChunk(String text, String source, int chunkIndex, double score) {
+}
@@ -0,0 +1,113 @@
+package com.example.docling.rag.service;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Response body that is written while it is being read.
+ * <p>
+ * Producers append Server-Sent Events from any thread; the HTTP consumer reads them as they arrive
+ * and flushes each one to the client. The stream ends after {@link #complete()}. Once the reader
+ * closes the stream, for example because the client disconnected, further events are dropped.
+ * <p>
+ * {@link #sendLine(String)} appends plain lines instead, for newline-delimited JSON responses.
+ */
+public class ServerSentEventStream extends InputStream {
+    
+    private static final byte[] END = new byte[0];
+    
+    private final BlockingQueue<byte[]> events = new LinkedBlockingQueue<>();
+    private byte[] current;
+    private int position;
+    private volatile boolean completed;
+    private volatile boolean closed;
+    
+    /**
+     * Append an event. Multi-line data is sent as several {@code data:} lines.
+     * Returns {@code false} when the reader has closed the stream.
+     */
+    public boolean send(String event, String data) {
+        StringBuilder frame = new StringBuilder();
+        frame.append("event: ").append(event).append('\n');
+        for (String line : data.split("\n", -1)) {
+            frame.append("data: ").append(line).append('\n');
+        }
+        frame.append('\n');
+        return append(frame.toString());
+    }
+    
+    /**
+     * Append one line, such as a JSON object of a newline-delimited JSON response.
+     * Returns {@code false} when the reader has closed the stream.
+     */
+    public boolean sendLine(String line) {
+        return append(line + "\n");
+    }
+    
+    private boolean append(String frame) {
+        if (closed || completed) {
+            return false;
+        }
+        events.add(frame.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+    
+    /**
+     * End the stream after the events sent so far.
+     */
+    public void complete() {
+        if (!completed) {
+            completed = true;
+            events.add(END);
+        }
+    }
+    
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    @Override
+    public int read() throws InterruptedIOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xff;
+    }
+    
+    /**
+     * Block until at least one event is available and return as much of it as fits.
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws InterruptedIOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (current == null || position == current.length) {
+            if (current == END || closed) {
+                return -1;
+            }
+            try {
+                current = events.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the next event");
+            }
+            position = 0;
+            if (current == END) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        events.clear();
+    }
+}
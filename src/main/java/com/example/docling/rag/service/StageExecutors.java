@@ -0,0 +1,57 @@
+package com.example.docling.rag.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pools for the ingestion stages.
+ * <p>
+ * Every pool has a fixed number of threads and a bounded hand-off queue. When the queue is full the
+ * submitting thread blocks instead of failing or running the task itself, which propagates
+ * backpressure to the previous stage.
+ */
+public final class StageExecutors {
+    
+    private StageExecutors() {
+    }
+    
+    /**
+     * Create a bounded pool of platform threads.
+     */
+    public static ThreadPoolExecutor newPlatformStage(String name, int threads, int queueSize) {
+        ThreadFactory factory = Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+        return newStage(threads, queueSize, factory);
+    }
+    
+    /**
+     * Create a bounded pool of virtual threads for stages that mostly wait on I/O.
+     */
+    public static ThreadPoolExecutor newVirtualStage(String name, int threads, int queueSize) {
+        ThreadFactory factory = Thread.ofVirtual().name(name + "-", 0).factory();
+        return newStage(threads, queueSize, factory);
+    }
+    
+    private static ThreadPoolExecutor newStage(int threads, int queueSize, ThreadFactory factory) {
+        if (threads < 1 || queueSize < 0) {
+            throw new IllegalArgumentException("Invalid stage settings: threads=" + threads + ", queue=" + queueSize);
+        }
+        BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize);
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, factory,
+                (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Stage executor is shut down");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for stage capacity", e);
+                    }
+                });
+    }
+}
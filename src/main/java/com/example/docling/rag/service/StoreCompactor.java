@@ -0,0 +1,197 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.metrics.Counter;
+import com.example.docling.rag.metrics.Histogram;
+import com.example.docling.rag.metrics.MetricsRegistry;
+import org.apache.camel.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background compaction of the loaded collections.
+ * <p>
+ * Deleting or replacing a document only flags its records as deleted, so searches skip them at once while
+ * they keep their space. A single worker thread checks the loaded collections every {@code intervalMillis},
+ * or as soon as it is {@link #nudge nudged} after a delete, and compacts the store of each collection with
+ * at least {@code minDeleted} deleted records making up at least {@code deletedRatio} of its records.
+ * Collections are compacted one at a time under a lease, so a collection is not evicted while it is being
+ * rewritten; collections that are not loaded are compacted once they are loaded again.
+ */
+public final class StoreCompactor implements Service {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(StoreCompactor.class);
+    
+    private final CollectionManager collections;
+    private final long intervalMillis;
+    private final int minDeleted;
+    private final double deletedRatio;
+    private final BlockingQueue<Boolean> nudges = new ArrayBlockingQueue<>(1);
+    private final Counter compactions;
+    private final Counter reclaimedRecords;
+    private final Counter failures;
+    private final Histogram durationSeconds;
+    private volatile String running;
+    private volatile long lastDurationMillis;
+    private volatile boolean started;
+    private Thread worker;
+    
+    /**
+     * @param intervalMillis time between checks of the loaded collections, 0 to compact only when nudged
+     */
+    public StoreCompactor(CollectionManager collections, long intervalMillis, int minDeleted, double deletedRatio,
+                          MetricsRegistry metrics) {
+        if (intervalMillis < 0 || minDeleted < 1 || deletedRatio < 0 || deletedRatio > 1) {
+            throw new IllegalArgumentException("Invalid compaction settings: intervalMillis=" + intervalMillis
+                    + ", minDeleted=" + minDeleted + ", deletedRatio=" + deletedRatio);
+        }
+        this.collections = collections;
+        this.intervalMillis = intervalMillis;
+        this.minDeleted = minDeleted;
+        this.deletedRatio = deletedRatio;
+        this.compactions = metrics.counter("rag_compactions_total", "Store compactions completed");
+        this.reclaimedRecords = metrics.counter("rag_compaction_reclaimed_records_total",
+                "Deleted records reclaimed by store compactions");
+        this.failures = metrics.counter("rag_compaction_failures_total", "Store compactions that failed");
+        this.durationSeconds = metrics.histogram("rag_compaction_duration_seconds",
+                "Time to compact the store of one collection", 0.1, 0.5, 1, 5, 10, 30, 60, 300, 900);
+        metrics.gauge("rag_compaction_deleted_records",
+                "Deleted records waiting to be compacted in the loaded collections", () -> backlog()[0]);
+    }
+    
+    /**
+     * Check the loaded collections without waiting for the interval, for instance after a delete.
+     */
+    public void nudge() {
+        nudges.offer(Boolean.TRUE);
+    }
+    
+    /**
+     * Whether a store with this many deleted records out of {@code records} is worth compacting.
+     */
+    private boolean isDue(int deleted, int records) {
+        return deleted >= minDeleted && records > 0 && (double) deleted / records >= deletedRatio;
+    }
+    
+    /**
+     * Compact every loaded collection that is due, one after the other.
+     */
+    private void compactDueCollections() {
+        for (String name : collections.loadedNames()) {
+            if (!started) {
+                return;
+            }
+            try (CollectionManager.Lease lease = collections.acquireIfLoaded(name)) {
+                if (lease == null) {
+                    continue;
+                }
+                VectorStoreService service = lease.service();
+                int deleted = service.getDeletedRecords();
+                int records = service.getStoredRecords();
+                if (!isDue(deleted, records)) {
+                    continue;
+                }
+                running = name;
+                long start = System.nanoTime();
+                try {
+                    int reclaimed = service.compact();
+                    durationSeconds.observeSince(start);
+                    lastDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    compactions.increment();
+                    reclaimedRecords.add(reclaimed);
+                    LOG.info("Compacted collection {}: {} of {} records reclaimed in {} ms", name, reclaimed, records,
+                            lastDurationMillis);
+                } catch (RuntimeException e) {
+                    failures.increment();
+                    LOG.warn("Failed to compact collection {}: {}", name, e.getMessage());
+                } finally {
+                    running = null;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Deleted and total records over the loaded collections.
+     */
+    private long[] backlog() {
+        long[] backlog = new long[2];
+        for (String name : collections.loadedNames()) {
+            try (CollectionManager.Lease lease = collections.acquireIfLoaded(name)) {
+                if (lease != null) {
+                    backlog[0] += lease.service().getDeletedRecords();
+                    backlog[1] += lease.service().getStoredRecords();
+                }
+            }
+        }
+        return backlog;
+    }
+    
+    /**
+     * Compaction backlog and history for the health endpoint.
+     */
+    public Map<String, Object> stats() {
+        long[] backlog = backlog();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("deletedRecords", backlog[0]);
+        stats.put("records", backlog[1]);
+        stats.put("deletedRatio", backlog[1] > 0 ? (double) backlog[0] / backlog[1] : 0.0);
+        stats.put("running", running);
+        stats.put("compactions", compactions.count());
+        stats.put("reclaimedRecords", reclaimedRecords.count());
+        stats.put("failures", failures.count());
+        stats.put("lastDurationMs", lastDurationMillis);
+        return stats;
+    }
+    
+    @Override
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        worker = new Thread(this::run, "store-compactor");
+        worker.setDaemon(true);
+        worker.start();
+        LOG.info("Store compactor started: interval {} ms, at least {} deleted records and {} of the store",
+                intervalMillis, minDeleted, deletedRatio);
+    }
+    
+    /**
+     * Stop the worker. It is woken up rather than interrupted, since an interrupt closes the file channels
+     * of the store it reads; a compaction in progress is abandoned once its store is closed.
+     */
+    @Override
+    public void stop() {
+        started = false;
+        if (worker != null) {
+            nudge();
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+    
+    private void run() {
+        while (started) {
+            try {
+                if (intervalMillis > 0) {
+                    nudges.poll(intervalMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    nudges.take();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            compactDueCollections();
+        }
+    }
+}
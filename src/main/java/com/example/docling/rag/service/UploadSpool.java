@@ -0,0 +1,114 @@
+package com.example.docling.rag.service;
+
+import com.example.docling.rag.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Temporary files for uploaded documents.
+ * <p>
+ * Request bodies are copied to a file in {@code directory} through NIO channels, a block at a time, so an
+ * upload reaches docling as a file whatever its size instead of being buffered in the heap. The spooled
+ * file keeps the extension of the document name, which docling uses to detect the format, and is deleted
+ * once the upload is ingested. Files left by a previous run are deleted on start.
+ */
+public class UploadSpool {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSpool.class);
+    private static final String SPOOL_SUFFIX = ".upload";
+    private static final long TRANSFER_BLOCK = 1024 * 1024;
+    
+    private final Path directory;
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    
+    public UploadSpool(Path directory, MetricsRegistry metrics) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + SPOOL_SUFFIX + "*")) {
+                for (Path leftover : leftovers) {
+                    deleteQuietly(leftover);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open upload spool in " + directory, e);
+        }
+        metrics.gauge("rag_ingest_spooled_uploads", "Uploads spooled to disk and not ingested yet", files::get);
+        metrics.counter("rag_ingest_spooled_bytes_total", "Bytes of uploads spooled to disk", bytes::get);
+    }
+    
+    /**
+     * Copy the upload to a new spool file and return it. The caller deletes it with {@link #release}.
+     */
+    public Path spool(InputStream content, String documentName) throws IOException {
+        Path file = directory.resolve(UUID.randomUUID() + SPOOL_SUFFIX + extensionOf(documentName));
+        long size;
+        try {
+            size = copy(content, file);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        files.incrementAndGet();
+        bytes.addAndGet(size);
+        LOG.debug("Spooled {} bytes of {} to {}", size, documentName, file);
+        return file;
+    }
+    
+    /**
+     * Delete a file returned by {@link #spool}.
+     */
+    public void release(Path file) {
+        files.decrementAndGet();
+        deleteQuietly(file);
+    }
+    
+    /**
+     * Copy a stream to a new file through a channel, a block at a time, and return the number of bytes copied.
+     */
+    public static long copy(InputStream content, Path target) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(content);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+            // A blocking source transfers nothing only once it is exhausted
+            while ((transferred = out.transferFrom(source, position, TRANSFER_BLOCK)) > 0) {
+                position += transferred;
+            }
+            return position;
+        }
+    }
+    
+    /**
+     * The extension of a document name, such as {@code .pdf}, or an empty string if it has none that is
+     * safe to use in a file name.
+     */
+    public static String extensionOf(String documentName) {
+        int dot = documentName.lastIndexOf('.');
+        String extension = dot >= 0 ? documentName.substring(dot) : "";
+        return extension.matches("\\.[A-Za-z0-9]{1,10}") ? extension : "";
+    }
+    
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -1,177 +1,760 @@
 package com.example.docling.rag.service;
 
+import com.example.docling.rag.config.EmbeddingModelFactory;
+import com.example.docling.rag.config.VectorStoreSettings;
+import com.example.docling.rag.metrics.Counter;
+import com.example.docling.rag.metrics.Histogram;
+import com.example.docling.rag.metrics.MetricsRegistry;
+import com.example.docling.rag.store.CompactableStore;
+import com.example.docling.rag.store.MappedEmbeddingStore;
+import com.example.docling.rag.store.PartitionFilter;
+import com.example.docling.rag.store.ShardedEmbeddingStore;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.apache.camel.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service for managing vector embeddings and document storage.
  * Provides functionality to store document chunks as embeddings and retrieve relevant chunks.
  */
-public class VectorStoreService {
+public class VectorStoreService implements Service {
     
     private static final Logger LOG = LoggerFactory.getLogger(VectorStoreService.class);
-    private static final int MAX_CHUNK_SIZE = 500; // characters per chunk
-    private static final int CHUNK_OVERLAP = 50;   // overlap between chunks
+    
+    /**
+     * Runs an operation that waited for the previous one on its source. That one completes on a thread of
+     * the embedding batcher, which must never chunk a document or block on its own queues.
+     */
+    private static final Executor QUEUED_OPERATIONS = task -> Thread.ofVirtual().name("ingest-queued").start(task);
     
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final EmbeddingModel embeddingModel;
-    private int storedEmbeddingsCount = 0;
+    private final EmbeddingBatcher embeddingBatcher;
+    // Collections share the batcher of the default collection, which stops it
+    private final boolean ownsBatcher;
+    private final IngestionManifest manifest;
+    private final int chunkSize;
+    private final int chunkOverlap;
+    private final int submitBatchSize;
+    private final Map<String, CompletableFuture<IngestResult>> ingestsInFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger storedEmbeddingsCount = new AtomicInteger();
+    private final AtomicLong storeVersion = new AtomicLong();
+    private final LruCache<String, Embedding> queryEmbeddingCache;
+    private final LruCache<RetrievalKey, CachedRetrieval> retrievalCache;
+    private final Histogram searchSeconds;
+    private final Histogram chunksPerDocument;
+    private final Counter documentsIngested;
+    private final Counter documentsUnchanged;
+    private final Counter documentsDeleted;
     
     public VectorStoreService() {
-        this.embeddingStore = new InMemoryEmbeddingStore<>();
-        this.embeddingModel = createMockEmbeddingModel();
-        LOG.info("VectorStoreService initialized with in-memory store");
+        this(new InMemoryEmbeddingStore<>());
+    }
+    
+    public VectorStoreService(EmbeddingStore<TextSegment> embeddingStore) {
+        this(embeddingStore, new VectorStoreSettings());
+    }
+    
+    public VectorStoreService(EmbeddingStore<TextSegment> embeddingStore, VectorStoreSettings settings) {
+        this(embeddingStore, settings, new MetricsRegistry());
+    }
+    
+    public VectorStoreService(EmbeddingStore<TextSegment> embeddingStore, VectorStoreSettings settings,
+                              MetricsRegistry metrics) {
+        this(embeddingStore, EmbeddingModelFactory.createMockEmbeddingModel(), settings, metrics);
+    }
+    
+    public VectorStoreService(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel,
+                              VectorStoreSettings settings, MetricsRegistry metrics) {
+        MarkdownChunker.checkSettings(settings.getChunkSize(), settings.getChunkOverlap());
+        this.chunkSize = settings.getChunkSize();
+        this.chunkOverlap = settings.getChunkOverlap();
+        this.submitBatchSize = settings.getEmbeddingBatchSize();
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = embeddingModel;
+        this.embeddingBatcher = new EmbeddingBatcher(embeddingModel, embeddingStore, settings, metrics);
+        this.ownsBatcher = true;
+        this.queryEmbeddingCache = new LruCache<>(settings.getQueryEmbeddingCacheSize());
+        this.retrievalCache = new LruCache<>(settings.getRetrievalCacheSize(), VectorStoreService::retrievalBytes);
+        
+        this.searchSeconds = metrics.histogram("rag_search_duration_seconds",
+                "Time to embed a query and retrieve its relevant chunks, including cache hits",
+                MetricsRegistry.LATENCY_BUCKETS);
+        this.chunksPerDocument = metrics.histogram("rag_ingest_chunks",
+                "Chunks per ingested document", 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000);
+        this.documentsIngested = metrics.counter("rag_ingest_documents_total", "Documents ingested");
+        this.documentsUnchanged = metrics.counter("rag_ingest_documents_unchanged_total",
+                "Documents skipped because their content did not change");
+        this.documentsDeleted = metrics.counter("rag_documents_deleted_total", "Documents deleted or replaced");
+        metrics.gauge("rag_embeddings_stored", "Embeddings in the vector store", storedEmbeddingsCount::get);
+        metrics.counter("rag_query_embedding_cache_hits_total", "Query embedding cache hits", queryEmbeddingCache::hits);
+        metrics.counter("rag_query_embedding_cache_misses_total", "Query embedding cache misses",
+                queryEmbeddingCache::misses);
+        metrics.counter("rag_query_result_cache_hits_total", "Search result cache hits", retrievalCache::hits);
+        metrics.counter("rag_query_result_cache_misses_total", "Search result cache misses", retrievalCache::misses);
+        
+        this.manifest = openManifest(embeddingStore);
+        storedEmbeddingsCount.set(liveSize(embeddingStore));
+        if (embeddingStore instanceof ShardedEmbeddingStore shardedStore) {
+            metrics.counter("rag_shard_search_timeouts_total", "Shards that missed the search deadline",
+                    shardedStore::timeouts);
+            metrics.counter("rag_shard_search_failures_total", "Shards that failed a search", shardedStore::failures);
+            metrics.counter("rag_shard_partial_searches_total", "Searches answered without every shard",
+                    shardedStore::partialSearches);
+        }
+        if (embeddingModel instanceof OnnxEmbeddingModelPool pool) {
+            metrics.gauge("rag_embedding_sessions_busy", "Embedding model sessions running an inference",
+                    pool::busySessions);
+            metrics.gauge("rag_embedding_sessions", "Embedding model sessions in the pool", pool::sessionCount);
+        }
+        LOG.info("VectorStoreService initialized with {} and {} ({} embeddings, {} documents)",
+                embeddingStore.getClass().getSimpleName(), embeddingModel.modelName(), storedEmbeddingsCount.get(),
+                manifest.size());
+    }
+    
+    /**
+     * Service of a named collection over its own store and manifest. It shares the embedding model, the
+     * embedding batcher, the query embedding cache, the chunking settings and the metrics of {@code shared},
+     * the service of the default collection, so collections add no embedding workers or queues of their own.
+     * Its search result cache has the capacity of the shared one and counts towards its resident bytes.
+     */
+    public VectorStoreService(EmbeddingStore<TextSegment> embeddingStore, VectorStoreService shared) {
+        this.chunkSize = shared.chunkSize;
+        this.chunkOverlap = shared.chunkOverlap;
+        this.submitBatchSize = shared.submitBatchSize;
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = shared.embeddingModel;
+        this.embeddingBatcher = shared.embeddingBatcher;
+        this.ownsBatcher = false;
+        this.queryEmbeddingCache = shared.queryEmbeddingCache;
+        this.retrievalCache = new LruCache<>(shared.retrievalCache.capacity(), VectorStoreService::retrievalBytes);
+        this.searchSeconds = shared.searchSeconds;
+        this.chunksPerDocument = shared.chunksPerDocument;
+        this.documentsIngested = shared.documentsIngested;
+        this.documentsUnchanged = shared.documentsUnchanged;
+        this.documentsDeleted = shared.documentsDeleted;
+        this.manifest = openManifest(embeddingStore);
+        storedEmbeddingsCount.set(liveSize(embeddingStore));
+    }
+    
+    /**
+     * The manifest next to a persistent store, which already holds the documents ingested before the last
+     * restart, or an empty one.
+     */
+    private static IngestionManifest openManifest(EmbeddingStore<TextSegment> embeddingStore) {
+        if (embeddingStore instanceof MappedEmbeddingStore mappedStore) {
+            return IngestionManifest.open(mappedStore.directory().resolve("manifest.log"));
+        } else if (embeddingStore instanceof ShardedEmbeddingStore shardedStore && shardedStore.directory() != null) {
+            return IngestionManifest.open(shardedStore.directory().resolve("manifest.log"));
+        }
+        return IngestionManifest.inMemory();
+    }
+    
+    private static int liveSize(EmbeddingStore<TextSegment> embeddingStore) {
+        if (embeddingStore instanceof MappedEmbeddingStore mappedStore) {
+            return mappedStore.liveSize();
+        } else if (embeddingStore instanceof ShardedEmbeddingStore shardedStore && shardedStore.directory() != null) {
+            return shardedStore.localLiveSize();
+        }
+        return 0;
     }
     
     /**
      * Ingest a document by splitting it into chunks and storing embeddings.
+     * Chunks are embedded in batches together with chunks of other documents ingested at the same time.
      */
-    public void ingestDocument(String documentText, String documentName) {
-        LOG.info("Ingesting document: {}", documentName);
+    public IngestResult ingestDocument(String documentText, String documentName) {
+        return ingestDocument(documentText, documentName, Set.of());
+    }
+    
+    /**
+     * Ingest a document and tag its chunks, so queries can be restricted to them with a {@link PartitionFilter}.
+     */
+    public IngestResult ingestDocument(String documentText, String documentName, Set<String> tags) {
+        return await(ingestDocumentAsync(new StringReader(documentText), documentName, tags));
+    }
+    
+    /**
+     * Ingest a document read as it is chunked, so the whole text is never held in memory, and tag its chunks.
+     * The reader is closed once it has been read.
+     */
+    public IngestResult ingestDocument(Reader documentText, String documentName, Set<String> tags) {
+        return await(ingestDocumentAsync(documentText, documentName, tags));
+    }
+    
+    /**
+     * Ingest a document incrementally.
+     */
+    public CompletableFuture<IngestResult> ingestDocumentAsync(String documentText, String documentName) {
+        return ingestDocumentAsync(new StringReader(documentText), documentName);
+    }
+    
+    /**
+     * Ingest a document incrementally, reading its text as it is chunked.
+     * <p>
+     * Chunks whose text is already stored for this source keep their embeddings; new chunks are queued
+     * for embedding in batches while the rest of the document is still being read, and chunks of the
+     * previous version that no longer exist are removed once the new ones are stored. A document whose
+     * content hash and chunks match the stored version is reported as unchanged. Ingests of the same
+     * source run one after another. Chunking runs on the calling thread, or after the previous ingest of
+     * the same source, and closes the reader; the returned future completes when the embed and index
+     * stages are done.
+     */
+    public CompletableFuture<IngestResult> ingestDocumentAsync(Reader documentText, String documentName) {
+        return ingestDocumentAsync(documentText, documentName, Set.of());
+    }
+    
+    /**
+     * Ingest a document incrementally and tag its chunks. Changing the tags of a document re-embeds its chunks.
+     */
+    public CompletableFuture<IngestResult> ingestDocumentAsync(Reader documentText, String documentName,
+                                                               Set<String> tags) {
+        return afterPreviousOperation(documentName, () -> {
+            try (documentText) {
+                return diffAndStore(documentText, documentName, tags);
+            }
+        });
+    }
+    
+    /**
+     * Replace a document with a new version, reading its text as it is chunked.
+     * The chunks of the previous version are flagged as deleted before the new text is read, so searches
+     * stop returning them at once; every chunk of the new version is embedded. If the new version fails to
+     * ingest, the document stays deleted.
+     */
+    public IngestResult replaceDocument(Reader documentText, String documentName, Set<String> tags) {
+        return await(replaceDocumentAsync(documentText, documentName, tags));
+    }
+    
+    /**
+     * Replace a document asynchronously, after the ingests of the same source that are in flight.
+     */
+    public CompletableFuture<IngestResult> replaceDocumentAsync(Reader documentText, String documentName,
+                                                                Set<String> tags) {
+        return afterPreviousOperation(documentName, () -> {
+            try (documentText) {
+                IngestResult deleted = removeDocument(documentName);
+                int removed = deleted != null ? deleted.removedChunks() : 0;
+                return diffAndStore(documentText, documentName, tags).thenApply(ingested -> new IngestResult(
+                        documentName, ingested.totalChunks(), ingested.embeddedChunks(), removed, false));
+            }
+        });
+    }
+    
+    /**
+     * Delete a document, flagging its chunks as deleted so searches no longer return them. Their space is
+     * reclaimed by the next {@link #compact()}.
+     *
+     * @return the number of chunks removed, or {@code null} if no document with this source was ingested
+     */
+    public IngestResult deleteDocument(String documentName) {
+        return await(deleteDocumentAsync(documentName));
+    }
+    
+    /**
+     * Delete a document after the ingests of the same source that are in flight.
+     */
+    public CompletableFuture<IngestResult> deleteDocumentAsync(String documentName) {
+        return afterPreviousOperation(documentName,
+                () -> CompletableFuture.completedFuture(removeDocument(documentName)));
+    }
+    
+    /**
+     * Run an ingest, replace or delete once the operations on the same source that are in flight are done:
+     * on the calling thread if there are none, otherwise on a thread of its own.
+     */
+    private CompletableFuture<IngestResult> afterPreviousOperation(
+            String documentName, Callable<CompletableFuture<IngestResult>> operation) {
+        CompletableFuture<IngestResult> result = new CompletableFuture<>();
+        CompletableFuture<IngestResult> previous = ingestsInFlight.put(documentName, result);
+        result.whenComplete((ingested, error) -> ingestsInFlight.remove(documentName, result));
         
-        // Split document into chunks
-        List<String> chunks = splitIntoChunks(documentText);
-        LOG.info("Document split into {} chunks", chunks.size());
+        Runnable run = () -> {
+            try {
+                operation.call().whenComplete((ingested, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                    } else {
+                        result.complete(ingested);
+                    }
+                });
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        };
+        if (previous == null) {
+            run.run();
+        } else {
+            previous.whenCompleteAsync((ingested, error) -> run.run(), QUEUED_OPERATIONS);
+        }
+        return result;
+    }
+    
+    /**
+     * Flag the chunks of a document as deleted and forget it, or return {@code null} if it is unknown.
+     */
+    private IngestResult removeDocument(String documentName) {
+        IngestionManifest.DocumentEntry entry = manifest.get(documentName);
+        if (entry == null) {
+            return null;
+        }
+        List<String> ids = entry.chunks().stream().map(IngestionManifest.ChunkEntry::id).toList();
+        if (!ids.isEmpty()) {
+            removeChunks(documentName, ids);
+            storedEmbeddingsCount.addAndGet(-ids.size());
+        }
+        manifest.remove(documentName);
+        // Cached search results from before this point may return the removed chunks
+        storeVersion.incrementAndGet();
+        documentsDeleted.increment();
+        LOG.info("Deleted {} chunks of document: {}", ids.size(), documentName);
+        return new IngestResult(documentName, 0, 0, ids.size(), false);
+    }
+    
+    private CompletableFuture<IngestResult> diffAndStore(Reader documentText, String documentName, Set<String> tags) {
+        LOG.info("Ingesting document: {}", documentName);
+        // Tags are part of the chunk hash, so retagging a document replaces its chunks instead of reusing them
+        String joinedTags = String.join(",", PartitionFilter.parseTags(tags));
+        IngestionManifest.DocumentEntry previous = manifest.get(documentName);
         
-        // Create text segments with metadata
-        List<TextSegment> segments = new ArrayList<>();
-        for (int i = 0; i < chunks.size(); i++) {
-            Metadata metadata = Metadata.from("source", documentName)
-                    .put("chunkIndex", i)
-                    .put("totalChunks", chunks.size());
-            segments.add(TextSegment.from(chunks.get(i), metadata));
+        // Embedding ids of the previous version, by chunk hash, that can be kept as they are
+        Map<String, Deque<String>> reusable = new HashMap<>();
+        if (previous != null) {
+            for (IngestionManifest.ChunkEntry chunk : previous.chunks()) {
+                reusable.computeIfAbsent(chunk.hash(), hash -> new ArrayDeque<>()).add(chunk.id());
+            }
         }
         
-        // Generate embeddings and store
-        for (TextSegment segment : segments) {
-            Embedding embedding = embeddingModel.embed(segment).content();
-            embeddingStore.add(embedding, segment);
-            storedEmbeddingsCount++;
+        // New chunks are queued for embedding as soon as a batch is full, while chunking continues
+        IngestionManifest.HashingReader content = new IngestionManifest.HashingReader(documentText);
+        MarkdownChunker chunker = new MarkdownChunker(content, chunkSize, chunkOverlap);
+        List<IngestionManifest.ChunkEntry> chunks = new ArrayList<>();
+        List<String> submittedIds = new ArrayList<>();
+        List<String> batchIds = new ArrayList<>();
+        List<TextSegment> batch = new ArrayList<>();
+        List<CompletableFuture<Integer>> stored = new ArrayList<>();
+        try {
+            while (chunker.hasNext()) {
+                String text = chunker.next();
+                String chunkHash = IngestionManifest.hash(joinedTags.isEmpty() ? text : joinedTags + "\n" + text);
+                Deque<String> ids = reusable.get(chunkHash);
+                String id = ids != null ? ids.poll() : null;
+                if (id == null) {
+                    id = UUID.randomUUID().toString();
+                    batchIds.add(id);
+                    Metadata metadata = Metadata.from(PartitionFilter.SOURCE, documentName)
+                            .put("chunkIndex", chunks.size());
+                    if (!joinedTags.isEmpty()) {
+                        metadata.put(PartitionFilter.TAGS, joinedTags);
+                    }
+                    batch.add(TextSegment.from(text, metadata));
+                    if (batch.size() >= submitBatchSize) {
+                        submittedIds.addAll(batchIds);
+                        stored.add(storeSegments(List.copyOf(batchIds), List.copyOf(batch)));
+                        batchIds.clear();
+                        batch.clear();
+                    }
+                }
+                chunks.add(new IngestionManifest.ChunkEntry(chunkHash, id));
+            }
+            submittedIds.addAll(batchIds);
+            stored.add(storeSegments(batchIds, batch));
+        } catch (RuntimeException e) {
+            return CompletableFuture.allOf(stored.toArray(CompletableFuture[]::new)).handle((ignored, error) -> {
+                discard(documentName, submittedIds, stored);
+                throw new CompletionException(e);
+            });
         }
+        List<String> staleIds = new ArrayList<>();
+        reusable.values().forEach(staleIds::addAll);
+        String documentHash = content.hash();
         
-        LOG.info("Successfully ingested {} chunks from document: {}", chunks.size(), documentName);
+        // Once every new chunk is stored, drop the chunks that no longer exist
+        return CompletableFuture.allOf(stored.toArray(CompletableFuture[]::new)).handle((ignored, error) -> {
+            if (error != null) {
+                discard(documentName, submittedIds, stored);
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            }
+            if (previous != null && submittedIds.isEmpty() && staleIds.isEmpty()
+                    && previous.documentHash().equals(documentHash)) {
+                LOG.info("Document {} is unchanged, skipping", documentName);
+                documentsUnchanged.increment();
+                return new IngestResult(documentName, chunks.size(), 0, 0, true);
+            }
+            
+            chunksPerDocument.observe(chunks.size());
+            if (!staleIds.isEmpty()) {
+                removeChunks(documentName, staleIds);
+                storedEmbeddingsCount.addAndGet(-staleIds.size());
+            }
+            manifest.put(documentName, new IngestionManifest.DocumentEntry(documentHash, chunks));
+            // Cached search results from before this point may miss the new chunks or return removed ones
+            storeVersion.incrementAndGet();
+            
+            int embedded = stored.stream().mapToInt(CompletableFuture::join).sum();
+            IngestResult result = new IngestResult(documentName, chunks.size(), embedded, staleIds.size(), false);
+            documentsIngested.increment();
+            LOG.info("Successfully ingested {} chunks from document: {} ({} embedded, {} reused, {} removed)",
+                    result.totalChunks(), documentName, result.embeddedChunks(), result.reusedChunks(),
+                    result.removedChunks());
+            return result;
+        });
+    }
+    
+    /**
+     * Remove the embeddings a failed ingest already stored, since no manifest entry refers to them.
+     */
+    private void discard(String documentName, List<String> ids, List<CompletableFuture<Integer>> stored) {
+        int storedCount = stored.stream()
+                .filter(future -> !future.isCompletedExceptionally())
+                .mapToInt(CompletableFuture::join)
+                .sum();
+        if (!ids.isEmpty()) {
+            removeChunks(documentName, ids);
+        }
+        storedEmbeddingsCount.addAndGet(-storedCount);
+    }
+    
+    /**
+     * Remove chunks of a document, only from the shard holding the document when the store is sharded.
+     */
+    private void removeChunks(String documentName, List<String> ids) {
+        if (embeddingStore instanceof ShardedEmbeddingStore shardedStore) {
+            shardedStore.removeAll(documentName, ids);
+        } else {
+            embeddingStore.removeAll(ids);
+        }
+    }
+    
+    /**
+     * Embed and index stages: queue segments for batched embedding and storage.
+     * Blocks while the embedding queue is full; the returned future completes once all segments are stored.
+     */
+    private CompletableFuture<Integer> storeSegments(List<String> ids, List<TextSegment> segments) {
+        return embeddingBatcher.submit(embeddingStore, ids, segments).thenApply(stored -> {
+            storedEmbeddingsCount.addAndGet(stored);
+            return stored;
+        });
     }
     
     /**
      * Search for relevant document chunks based on a query.
      */
     public List<String> searchRelevantChunks(String query, int maxResults) {
-        LOG.info("Searching for relevant chunks with query: {}", query);
+        return searchRelevantChunks(query, maxResults, null);
+    }
+    
+    /**
+     * Search for relevant document chunks among those matching the filter, or among all chunks when it is {@code null}.
+     */
+    public List<String> searchRelevantChunks(String query, int maxResults, PartitionFilter filter) {
+        return texts(retrieveChunks(query, maxResults, filter));
+    }
+    
+    /**
+     * Search for relevant chunks like {@link #searchRelevantChunks(String, int, PartitionFilter)}, keeping their
+     * source, position and score, in order of decreasing score.
+     */
+    public List<RetrievedChunk> retrieveChunks(String query, int maxResults, PartitionFilter filter) {
+        LOG.info("Searching for relevant chunks with query: {} (filter: {})", query, filter);
+        long start = System.nanoTime();
         
-        // Generate embedding for the query
-        Embedding queryEmbedding = embeddingModel.embed(query).content();
+        // Results are only reused while the store is at the version they were computed against
+        long version = storeVersion.get();
+        RetrievalKey key = new RetrievalKey(query.strip(), maxResults, filter);
+        CachedRetrieval cached = retrievalCache.get(key, entry -> entry.storeVersion() == storeVersion.get());
+        if (cached != null) {
+            searchSeconds.observeSince(start);
+            LOG.info("Found {} relevant chunks (cached)", cached.chunks().size());
+            return cached.chunks();
+        }
         
-        // Search for similar embeddings
-        List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(
-            dev.langchain4j.store.embedding.EmbeddingSearchRequest.builder()
-                .queryEmbedding(queryEmbedding)
-                .maxResults(maxResults)
-                .minScore(0.0)
-                .build()
-        ).matches();
+        // Generate embedding for the query
+        Embedding queryEmbedding = queryEmbeddingCache.computeIfAbsent(key.query(),
+                text -> embeddingModel.embed(text).content());
         
-        // Extract text from matched segments
-        List<String> relevantChunks = matches.stream()
-                .map(match -> match.embedded().text())
-                .collect(Collectors.toList());
+        List<RetrievedChunk> relevantChunks = search(key, queryEmbedding, version);
+        searchSeconds.observeSince(start);
         
         LOG.info("Found {} relevant chunks", relevantChunks.size());
         return relevantChunks;
     }
     
     /**
-     * Split text into overlapping chunks for better context preservation.
+     * Search for the relevant chunks of several queries at once, in the order of the queries.
+     * <p>
+     * Queries whose results or embeddings are not cached are embedded with a single
+     * {@link EmbeddingModel#embedAll(List)} call, so a batch pays for one model invocation instead of one
+     * per query. Duplicate queries are embedded and searched once.
      */
-    private List<String> splitIntoChunks(String text) {
-        List<String> chunks = new ArrayList<>();
+    public List<List<String>> searchRelevantChunks(List<String> queries, int maxResults, PartitionFilter filter) {
+        return retrieveChunks(queries, maxResults, filter).stream().map(VectorStoreService::texts).toList();
+    }
+    
+    /**
+     * Search for the relevant chunks of several queries at once like
+     * {@link #searchRelevantChunks(List, int, PartitionFilter)}, keeping their source, position and score.
+     */
+    public List<List<RetrievedChunk>> retrieveChunks(List<String> queries, int maxResults, PartitionFilter filter) {
+        LOG.info("Searching for relevant chunks of {} queries (filter: {})", queries.size(), filter);
+        long start = System.nanoTime();
+        long version = storeVersion.get();
         
-        if (text == null || text.isEmpty()) {
-            return chunks;
+        Map<RetrievalKey, List<RetrievedChunk>> results = new HashMap<>();
+        Map<String, Embedding> embeddings = new HashMap<>();
+        List<RetrievalKey> keys = new ArrayList<>(queries.size());
+        List<String> toEmbed = new ArrayList<>();
+        for (String query : queries) {
+            RetrievalKey key = new RetrievalKey(query.strip(), maxResults, filter);
+            keys.add(key);
+            if (results.containsKey(key) || embeddings.containsKey(key.query())) {
+                continue;
+            }
+            CachedRetrieval cached = retrievalCache.get(key, entry -> entry.storeVersion() == storeVersion.get());
+            if (cached != null) {
+                results.put(key, cached.chunks());
+                continue;
+            }
+            Embedding embedding = queryEmbeddingCache.get(key.query());
+            embeddings.put(key.query(), embedding);
+            if (embedding == null) {
+                toEmbed.add(key.query());
+            }
         }
         
-        int textLength = text.length();
-        int start = 0;
-        
-        while (start < textLength) {
-            int end = Math.min(start + MAX_CHUNK_SIZE, textLength);
-            
-            // Try to break at sentence boundary if possible
-            if (end < textLength) {
-                int lastPeriod = text.lastIndexOf('.', end);
-                int lastNewline = text.lastIndexOf('\n', end);
-                int breakPoint = Math.max(lastPeriod, lastNewline);
-                
-                if (breakPoint > start + (MAX_CHUNK_SIZE / 2)) {
-                    end = breakPoint + 1;
-                }
+        // One model call for every query that is not cached yet
+        if (!toEmbed.isEmpty()) {
+            List<Embedding> embedded = embeddingModel.embedAll(toEmbed.stream().map(TextSegment::from).toList()).content();
+            for (int i = 0; i < toEmbed.size(); i++) {
+                embeddings.put(toEmbed.get(i), embedded.get(i));
+                queryEmbeddingCache.put(toEmbed.get(i), embedded.get(i));
             }
-            
-            chunks.add(text.substring(start, end).trim());
-            start = end - CHUNK_OVERLAP;
         }
         
-        return chunks;
+        List<List<RetrievedChunk>> relevantChunks = new ArrayList<>(keys.size());
+        for (RetrievalKey key : keys) {
+            relevantChunks.add(results.computeIfAbsent(key, missing -> search(missing, embeddings.get(missing.query()), version)));
+        }
+        searchSeconds.observeSince(start);
+        
+        LOG.info("Found relevant chunks for {} queries ({} embedded, {} searched)", queries.size(), toEmbed.size(),
+                embeddings.size());
+        return relevantChunks;
+    }
+    
+    /**
+     * Search the store for a query embedding and cache the chunks under the store version they were read at.
+     */
+    private List<RetrievedChunk> search(RetrievalKey key, Embedding queryEmbedding, long version) {
+        EmbeddingSearchResult<TextSegment> result = embeddingStore.search(
+            dev.langchain4j.store.embedding.EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
+                .maxResults(key.maxResults())
+                .minScore(0.0)
+                .filter(key.filter())
+                .build()
+        );
+        List<EmbeddingMatch<TextSegment>> matches = result.matches();
+        
+        // Extract text, source and position from matched segments. A reused chunk keeps the chunkIndex
+        // metadata of the position it was embedded at, so the manifest has the current one.
+        List<RetrievedChunk> relevantChunks = matches.stream()
+                .map(match -> {
+                    Metadata metadata = match.embedded().metadata();
+                    int chunkIndex = manifest.chunkIndex(match.embeddingId());
+                    if (chunkIndex < 0) {
+                        Integer embeddedIndex = metadata.getInteger("chunkIndex");
+                        chunkIndex = embeddedIndex != null ? embeddedIndex : -1;
+                    }
+                    return new RetrievedChunk(match.embedded().text(), metadata.getString(PartitionFilter.SOURCE),
+                            chunkIndex, match.score());
+                })
+                .toList();
+        
+        // A search that missed a shard is not cached, so the next one can get the full answer
+        if (!(result instanceof ShardedEmbeddingStore.Result sharded) || sharded.isComplete()) {
+            retrievalCache.put(key, new CachedRetrieval(version, relevantChunks));
+        }
+        return relevantChunks;
+    }
+    
+    /**
+     * Version counter of the store contents, incremented after every ingest that changed the store.
+     */
+    public long getStoreVersion() {
+        return storeVersion.get();
+    }
+    
+    /**
+     * Hit and miss statistics of the query embedding and search result caches.
+     */
+    public Map<String, Object> getQueryCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("storeVersion", storeVersion.get());
+        stats.put("embeddings", queryEmbeddingCache.stats());
+        stats.put("results", retrievalCache.stats());
+        return stats;
+    }
+    
+    private record RetrievalKey(String query, int maxResults, PartitionFilter filter) {
+    }
+    
+    private record CachedRetrieval(long storeVersion, List<RetrievedChunk> chunks) {
+    }
+    
+    /**
+     * Rough heap held by a cached search result: the query and chunk texts as UTF-16, plus object headers.
+     */
+    private static long retrievalBytes(RetrievalKey key, CachedRetrieval cached) {
+        long bytes = 64 + 2L * key.query().length();
+        for (RetrievedChunk chunk : cached.chunks()) {
+            bytes += 64 + 2L * chunk.text().length();
+        }
+        return bytes;
+    }
+    
+    private static List<String> texts(List<RetrievedChunk> chunks) {
+        return chunks.stream().map(RetrievedChunk::text).toList();
+    }
+    
+    /**
+     * Search statistics of a sharded store, or {@code null} if the store is not sharded.
+     */
+    public Map<String, Object> getShardStats() {
+        if (!(embeddingStore instanceof ShardedEmbeddingStore shardedStore)) {
+            return null;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("shards", shardedStore.shardCount());
+        stats.put("timeouts", shardedStore.timeouts());
+        stats.put("failures", shardedStore.failures());
+        stats.put("partialSearches", shardedStore.partialSearches());
+        return stats;
+    }
+    
+    /**
+     * The store behind this service, for serving it to other nodes as a shard.
+     */
+    public EmbeddingStore<TextSegment> getEmbeddingStore() {
+        return embeddingStore;
+    }
+    
+    /**
+     * Estimate of the memory held by a memory-mapped store, 0 for other stores, plus the cached search results.
+     */
+    public long getResidentBytes() {
+        long storeBytes = embeddingStore instanceof MappedEmbeddingStore mappedStore ? mappedStore.residentBytes() : 0;
+        return storeBytes + retrievalCache.weight();
+    }
+    
+    /**
+     * Records flagged as deleted and not compacted away yet, 0 if the store cannot be compacted.
+     */
+    public int getDeletedRecords() {
+        return embeddingStore instanceof CompactableStore compactable ? compactable.deletedSize() : 0;
+    }
+    
+    /**
+     * Records in a compactable store including the deleted ones, 0 if the store cannot be compacted.
+     */
+    public int getStoredRecords() {
+        return embeddingStore instanceof CompactableStore compactable ? compactable.size() : 0;
+    }
+    
+    /**
+     * Rewrite the store without its deleted records, and the ingestion manifest without the entries of
+     * replaced and deleted documents. Searches, ingests and deletes continue meanwhile. The in-memory
+     * stores are not compacted: they only flag deleted vectors and are rebuilt on restart.
+     *
+     * @return the number of deleted records reclaimed
+     */
+    public int compact() {
+        manifest.compact();
+        return embeddingStore instanceof CompactableStore compactable ? compactable.compact() : 0;
     }
     
     /**
      * Get the current number of stored embeddings.
      */
     public int getStoredEmbeddingsCount() {
-        return storedEmbeddingsCount;
+        return storedEmbeddingsCount.get();
+    }
+    
+    @Override
+    public void start() {
+        // The embedding store is ready as soon as it is constructed
     }
     
     /**
-     * Create a mock embedding model for development/testing.
-     * In production, you would use a real embedding model like AllMiniLmL6V2EmbeddingModel.
+     * Stop the embedding batcher and release the embedding store, flushing persistent stores to disk.
      */
-    private EmbeddingModel createMockEmbeddingModel() {
-        return new EmbeddingModel() {
-            private final Random random = new Random(42); // Fixed seed for consistent results
-            
-            @Override
-            public Response<Embedding> embed(TextSegment textSegment) {
-                return embed(textSegment.text());
-            }
-            
-            @Override
-            public Response<Embedding> embed(String text) {
-                // Create a simple mock embedding vector (384 dimensions)
-                float[] vector = new float[384];
-                for (int i = 0; i < vector.length; i++) {
-                    vector[i] = (random.nextFloat() - 0.5f) * 2.0f; // Random values between -1 and 1
-                }
-                
-                // Add some text-based variation to make embeddings somewhat meaningful
-                int textHash = text.hashCode();
-                for (int i = 0; i < Math.min(10, vector.length); i++) {
-                    vector[i] += ((textHash >> i) & 1) * 0.1f;
-                }
-                
-                return Response.from(Embedding.from(vector));
+    @Override
+    public void stop() {
+        closeStore();
+        if (embeddingModel instanceof OnnxEmbeddingModelPool pool) {
+            pool.close();
+        }
+    }
+    
+    /**
+     * Stop the embedding batcher unless it is shared, and release the embedding store, but keep the
+     * embedding model, which the services of other collections share.
+     */
+    public void closeStore() {
+        if (ownsBatcher) {
+            embeddingBatcher.stop();
+        }
+        if (embeddingStore instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to close embedding store", e);
             }
-            
-            @Override
-            public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
-                List<Embedding> embeddings = new ArrayList<>();
-                for (TextSegment segment : textSegments) {
-                    embeddings.add(embed(segment).content());
-                }
-                return Response.from(embeddings);
+        }
+    }
+    
+    /**
+     * Wait for an asynchronous stage, rethrowing its failure on the calling thread.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
-        };
+            throw e;
+        }
     }
 }
@@ -0,0 +1,25 @@
+package com.example.docling.rag.store;
+
+/**
+ * A store whose removed records are only flagged as deleted and keep their space until the store is compacted.
+ */
+public interface CompactableStore {
+    
+    /**
+     * Number of records in the store, including records flagged as deleted.
+     */
+    int size();
+    
+    /**
+     * Number of records flagged as deleted and not compacted away yet.
+     */
+    int deletedSize();
+    
+    /**
+     * Rewrite the store without its deleted records. Searches keep being answered while the store is
+     * rewritten; adds and removes wait only while the rewritten store is swapped in.
+     *
+     * @return the number of deleted records reclaimed
+     */
+    int compact();
+}
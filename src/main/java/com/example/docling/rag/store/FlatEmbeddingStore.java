@@ -0,0 +1,351 @@
+package com.example.docling.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * In-memory embedding store for exact top-k search.
+ * <p>
+ * Vectors are stored back to back in one {@code float[]} arena indexed by ordinal, next to their
+ * precomputed norms, and searches scan all of them with a {@link SimilarityKernel}. Stores larger than
+ * {@code parallelThreshold} vectors are scanned in ranges on a ForkJoin pool, each range filling its own
+ * bounded {@link TopK} heap; the heaps are merged at the end. Removed vectors are flagged and skipped.
+ * A {@link PartitionFilter} restricts the scan to the postings of the matching partitions.
+ */
+public class FlatEmbeddingStore implements EmbeddingStore<TextSegment>, VectorValues, Closeable {
+    
+    /**
+     * Search settings.
+     *
+     * @param vectorized        use the Vector API kernel when the incubator module is available
+     * @param parallelism       threads scanning one search, or 0 for the common ForkJoin pool
+     * @param parallelThreshold minimum number of vectors per scanned range
+     */
+    public record Parameters(boolean vectorized, int parallelism, int parallelThreshold) {
+        
+        public Parameters {
+            if (parallelism < 0 || parallelThreshold < 1) {
+                throw new IllegalArgumentException("Invalid flat search parameters: parallelism=" + parallelism
+                        + ", parallelThreshold=" + parallelThreshold);
+            }
+        }
+        
+        public static Parameters defaults() {
+            return new Parameters(true, 0, 16384);
+        }
+    }
+    
+    private final int dimension;
+    private final SimilarityKernel kernel;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    
+    private volatile float[] arena;
+    private volatile float[] norms;
+    private volatile boolean[] deleted;
+    private volatile String[] ids;
+    private volatile TextSegment[] segments;
+    private volatile int count;
+    private int deletedCount;
+    private final Map<String, Integer> ordinalsById = new ConcurrentHashMap<>();
+    private final PartitionIndex partitions = PartitionIndex.inMemory();
+    
+    public FlatEmbeddingStore(int dimension) {
+        this(dimension, Parameters.defaults());
+    }
+    
+    public FlatEmbeddingStore(int dimension, Parameters parameters) {
+        this.dimension = dimension;
+        this.kernel = SimilarityKernel.create(parameters.vectorized());
+        this.pool = parameters.parallelism() == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(parameters.parallelism());
+        this.parallelThreshold = parameters.parallelThreshold();
+        int capacity = 1024;
+        this.arena = new float[capacity * dimension];
+        this.norms = new float[capacity];
+        this.deleted = new boolean[capacity];
+        this.ids = new String[capacity];
+        this.segments = new TextSegment[capacity];
+    }
+    
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+    
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+    
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(textSegment));
+        return id;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = generateIds(embeddings.size());
+        addAll(newIds, embeddings, null);
+        return newIds;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> newIds = generateIds(embeddings.size());
+        addAll(newIds, embeddings, textSegments);
+        return newIds;
+    }
+    
+    @Override
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (newIds.size() != embeddings.size() || (textSegments != null && textSegments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and text segments must have the same size");
+        }
+        for (Embedding embedding : embeddings) {
+            checkDimension(embedding.vector());
+        }
+        
+        List<Metadata> metadata = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            metadata.add(textSegments != null && textSegments.get(i) != null ? textSegments.get(i).metadata() : null);
+        }
+        
+        synchronized (this) {
+            int first = count;
+            ensureCapacity(first + embeddings.size());
+            partitions.addAll(first, metadata);
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                int ordinal = first + i;
+                System.arraycopy(vector, 0, arena, ordinal * dimension, dimension);
+                norms[ordinal] = MappedEmbeddingStore.norm(vector);
+                ids[ordinal] = newIds.get(i);
+                segments[ordinal] = textSegments != null ? textSegments.get(i) : null;
+                ordinalsById.put(newIds.get(i), ordinal);
+            }
+            // Publishing the count last makes the new vectors visible to concurrent searches
+            count = first + embeddings.size();
+        }
+    }
+    
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = request.queryEmbedding().vector();
+        checkDimension(query);
+        float queryNorm = MappedEmbeddingStore.norm(query);
+        if (queryNorm == 0f || request.maxResults() < 1) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        
+        int size = count;
+        Filter filter = request.filter();
+        int[] candidates = null;
+        if (filter instanceof PartitionFilter partitionFilter) {
+            // Only the matching postings are scored, so the filter does not need to be tested again
+            candidates = partitions.select(partitionFilter);
+            filter = null;
+        }
+        Snapshot snapshot = new Snapshot(arena, norms, deleted, segments, candidates, size);
+        // Scores are compared as cosine similarities; this is the cosine matching request.minScore()
+        float minCosine = (float) (2 * request.minScore() - 1);
+        
+        int scanned = candidates != null ? candidates.length : size;
+        int ranges = Math.min(pool.getParallelism(), scanned / parallelThreshold);
+        TopK topK;
+        if (ranges <= 1) {
+            topK = scan(snapshot, query, queryNorm, minCosine, filter, request.maxResults(), 0, scanned);
+        } else {
+            topK = scanParallel(snapshot, query, queryNorm, minCosine, filter, request.maxResults(), scanned, ranges);
+        }
+        
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(topK.size());
+        for (ScoredOrdinal hit : topK.toSortedList()) {
+            int ordinal = hit.ordinal();
+            double score = RelevanceScore.fromCosineSimilarity(hit.score());
+            if (score >= request.minScore()) {
+                matches.add(new EmbeddingMatch<>(score, ids[ordinal], Embedding.from(vector(ordinal)),
+                        snapshot.segments[ordinal]));
+            }
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+    
+    private TopK scanParallel(Snapshot snapshot, float[] query, float queryNorm, float minCosine, Filter filter,
+                              int maxResults, int positions, int ranges) {
+        List<Callable<TopK>> tasks = new ArrayList<>(ranges);
+        for (int range = 0; range < ranges; range++) {
+            int from = (int) ((long) positions * range / ranges);
+            int to = (int) ((long) positions * (range + 1) / ranges);
+            tasks.add(() -> scan(snapshot, query, queryNorm, minCosine, filter, maxResults, from, to));
+        }
+        
+        TopK merged = new TopK(maxResults);
+        try {
+            for (Future<TopK> partial : pool.invokeAll(tasks)) {
+                merged.addAll(partial.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+        return merged;
+    }
+    
+    /**
+     * Score the vectors at positions {@code [from, to)} of the scan, all ordinals or the candidate postings,
+     * into a new heap of at most {@code maxResults} entries. The filter is only evaluated for vectors that
+     * would enter the heap.
+     */
+    private TopK scan(Snapshot snapshot, float[] query, float queryNorm, float minCosine, Filter filter,
+                      int maxResults, int from, int to) {
+        TopK topK = new TopK(maxResults);
+        float[] vectors = snapshot.arena;
+        float[] vectorNorms = snapshot.norms;
+        boolean[] removed = snapshot.deleted;
+        int[] candidates = snapshot.candidates;
+        for (int position = from; position < to; position++) {
+            int ordinal = candidates != null ? candidates[position] : position;
+            if (ordinal >= snapshot.size) {
+                break;
+            }
+            float norm = vectorNorms[ordinal];
+            if (removed[ordinal] || norm == 0f) {
+                continue;
+            }
+            float cosine = kernel.dot(vectors, ordinal * dimension, query) / (norm * queryNorm);
+            if (cosine < minCosine || !topK.accepts(cosine)) {
+                continue;
+            }
+            if (filter != null) {
+                TextSegment segment = snapshot.segments[ordinal];
+                if (segment == null || !filter.test(segment.metadata())) {
+                    continue;
+                }
+            }
+            topK.offer(ordinal, cosine);
+        }
+        return topK;
+    }
+    
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+    
+    @Override
+    public synchronized void removeAll(Collection<String> idsToRemove) {
+        for (String id : idsToRemove) {
+            Integer ordinal = ordinalsById.remove(id);
+            if (ordinal != null) {
+                deleted[ordinal] = true;
+                deletedCount++;
+            }
+        }
+    }
+    
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+    
+    @Override
+    public float[] vector(int ordinal) {
+        return Arrays.copyOfRange(arena, ordinal * dimension, (ordinal + 1) * dimension);
+    }
+    
+    @Override
+    public double similarity(float[] query, int ordinal) {
+        float norm = norms[ordinal];
+        float queryNorm = MappedEmbeddingStore.norm(query);
+        if (norm == 0f || queryNorm == 0f) {
+            return 0.0;
+        }
+        return kernel.dot(arena, ordinal * dimension, query) / (norm * queryNorm);
+    }
+    
+    public synchronized int size() {
+        return count - deletedCount;
+    }
+    
+    /**
+     * Description of the similarity kernel in use, for logging.
+     */
+    public String kernel() {
+        return kernel == SimilarityKernel.SCALAR ? "scalar" : kernel.toString();
+    }
+    
+    /**
+     * Shut down the search pool if the store created its own.
+     */
+    @Override
+    public void close() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity <= norms.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, norms.length * 2);
+        if ((long) newCapacity * dimension > Integer.MAX_VALUE - 8) {
+            newCapacity = (Integer.MAX_VALUE - 8) / dimension;
+            if (newCapacity < capacity) {
+                throw new IllegalStateException("Flat store is full at " + norms.length + " vectors of dimension "
+                        + dimension);
+            }
+        }
+        // Ordinals only become searchable once the count is published, after these arrays hold them
+        segments = Arrays.copyOf(segments, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        deleted = Arrays.copyOf(deleted, newCapacity);
+        norms = Arrays.copyOf(norms, newCapacity);
+        arena = Arrays.copyOf(arena, newCapacity * dimension);
+    }
+    
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected embedding of dimension " + dimension
+                    + " but got " + vector.length);
+        }
+    }
+    
+    /**
+     * The arrays a search reads, captured once so a concurrent resize cannot mix old and new arrays,
+     * and the sorted candidate ordinals when only some partitions are searched.
+     */
+    private record Snapshot(float[] arena, float[] norms, boolean[] deleted, TextSegment[] segments,
+                            int[] candidates, int size) {
+    }
+}
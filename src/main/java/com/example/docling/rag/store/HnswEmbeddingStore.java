@@ -0,0 +1,239 @@
+package com.example.docling.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory embedding store that answers searches from an {@link HnswIndex} instead of a linear scan.
+ * Vectors are kept in a growable array indexed by ordinal and inserted into the graph as they are added.
+ * Removed vectors stay in the graph as routing nodes but are never returned.
+ * <p>
+ * A {@link PartitionFilter} is answered from a {@link PartitionIndex}: selective filters score their
+ * postings exactly, broader ones restrict the graph walk with a membership test.
+ */
+public final class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, VectorValues {
+    
+    private final int dimension;
+    private final HnswIndex index;
+    
+    private volatile float[][] vectors = new float[1024][];
+    private volatile float[] norms = new float[1024];
+    private volatile String[] ids = new String[1024];
+    private volatile TextSegment[] segments = new TextSegment[1024];
+    private volatile int count;
+    private final Map<String, Integer> ordinalsById = new ConcurrentHashMap<>();
+    private final Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+    private final PartitionIndex partitions = PartitionIndex.inMemory();
+    
+    public HnswEmbeddingStore(int dimension, HnswIndex.Parameters parameters) {
+        this.dimension = dimension;
+        this.index = new HnswIndex(this, parameters);
+    }
+    
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+    
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+    
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(textSegment));
+        return id;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+    
+    @Override
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (newIds.size() != embeddings.size() || (textSegments != null && textSegments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and text segments must have the same size");
+        }
+        for (Embedding embedding : embeddings) {
+            checkDimension(embedding.vector());
+        }
+        
+        List<Metadata> metadata = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            metadata.add(textSegments != null && textSegments.get(i) != null ? textSegments.get(i).metadata() : null);
+        }
+        
+        int first;
+        synchronized (this) {
+            first = count;
+            ensureCapacity(first + embeddings.size());
+            partitions.addAll(first, metadata);
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                vectors[first + i] = vector;
+                norms[first + i] = MappedEmbeddingStore.norm(vector);
+                ids[first + i] = newIds.get(i);
+                segments[first + i] = textSegments != null ? textSegments.get(i) : null;
+                ordinalsById.put(newIds.get(i), first + i);
+            }
+            count = first + embeddings.size();
+        }
+        
+        for (int ordinal = first; ordinal < first + embeddings.size(); ordinal++) {
+            index.add(ordinal);
+        }
+    }
+    
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = request.queryEmbedding().vector();
+        checkDimension(query);
+        
+        Filter filter = request.filter();
+        TextSegment[] snapshot = segments;
+        IntPredicate accept;
+        if (filter instanceof PartitionFilter partitionFilter) {
+            int[] candidates = partitions.select(partitionFilter);
+            if (PartitionIndex.isSelective(candidates.length, count)) {
+                return toResult(searchExact(query, request.maxResults(), candidates), request.minScore());
+            }
+            IntPredicate inPartition = partitions.matcher(partitionFilter);
+            accept = ordinal -> !deleted.contains(ordinal) && inPartition.test(ordinal);
+        } else if (filter == null) {
+            accept = ordinal -> !deleted.contains(ordinal);
+        } else {
+            accept = ordinal -> !deleted.contains(ordinal) && snapshot[ordinal] != null
+                    && filter.test(snapshot[ordinal].metadata());
+        }
+        return toResult(index.search(query, request.maxResults(), accept), request.minScore());
+    }
+    
+    /**
+     * Score the given ordinals exactly, for filters whose postings are too small for a filtered graph walk.
+     */
+    private List<ScoredOrdinal> searchExact(float[] query, int maxResults, int[] candidates) {
+        int size = count;
+        TopK topK = new TopK(maxResults);
+        for (int ordinal : candidates) {
+            if (ordinal >= size) {
+                break;
+            }
+            if (deleted.contains(ordinal)) {
+                continue;
+            }
+            float cosine = (float) similarity(query, ordinal);
+            if (topK.accepts(cosine)) {
+                topK.offer(ordinal, cosine);
+            }
+        }
+        return topK.toSortedList();
+    }
+    
+    private EmbeddingSearchResult<TextSegment> toResult(List<ScoredOrdinal> hits, double minScore) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (ScoredOrdinal hit : hits) {
+            double score = RelevanceScore.fromCosineSimilarity(hit.score());
+            if (score >= minScore) {
+                int ordinal = hit.ordinal();
+                matches.add(new EmbeddingMatch<>(score, ids[ordinal], Embedding.from(vectors[ordinal]), segments[ordinal]));
+            }
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+    
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+    
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        for (String id : idsToRemove) {
+            Integer ordinal = ordinalsById.remove(id);
+            if (ordinal != null) {
+                deleted.add(ordinal);
+            }
+        }
+    }
+    
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+    
+    @Override
+    public float[] vector(int ordinal) {
+        return vectors[ordinal];
+    }
+    
+    @Override
+    public double similarity(float[] query, int ordinal) {
+        float[] vector = vectors[ordinal];
+        float norm = norms[ordinal];
+        float dot = 0f;
+        float queryNorm = 0f;
+        for (int i = 0; i < query.length; i++) {
+            dot += query[i] * vector[i];
+            queryNorm += query[i] * query[i];
+        }
+        if (norm == 0f || queryNorm == 0f) {
+            return 0.0;
+        }
+        return dot / (Math.sqrt(queryNorm) * norm);
+    }
+    
+    public int size() {
+        return count - deleted.size();
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity <= vectors.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, vectors.length * 2);
+        // Ordinals only become searchable through the index after these arrays hold them
+        segments = Arrays.copyOf(segments, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        norms = Arrays.copyOf(norms, newCapacity);
+        vectors = Arrays.copyOf(vectors, newCapacity);
+    }
+    
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected embedding of dimension " + dimension
+                    + " but got " + vector.length);
+        }
+    }
+}
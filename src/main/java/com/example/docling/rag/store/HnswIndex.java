@@ -0,0 +1,398 @@
+package com.example.docling.rag.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph for approximate nearest-neighbour search.
+ * <p>
+ * The graph only stores ordinals; vectors are read through {@link VectorValues}, so the same index
+ * works on top of the in-memory and the memory-mapped stores. Inserts are incremental and serialised
+ * by a write lock, searches run concurrently under the read lock.
+ * <p>
+ * Tuning: {@code m} is the number of links per node (twice that on the bottom layer),
+ * {@code efConstruction} the candidate list size while inserting and {@code efSearch}
+ * the candidate list size while querying. Larger values trade latency for recall.
+ */
+public class HnswIndex {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(HnswIndex.class);
+    private static final int FILE_MAGIC = 0x484e5357; // "HNSW"
+    private static final int FILE_VERSION = 1;
+    
+    /**
+     * HNSW tuning parameters.
+     */
+    public record Parameters(int m, int efConstruction, int efSearch) {
+        
+        public Parameters {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("Invalid HNSW parameters: m=" + m
+                        + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+            }
+        }
+    }
+    
+    private final VectorValues vectors;
+    private final Parameters parameters;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // links[ordinal][level] holds the neighbour count at index 0 followed by the neighbour ordinals
+    private int[][][] links = new int[1024][][];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int size;
+    
+    public HnswIndex(VectorValues vectors, Parameters parameters) {
+        this.vectors = vectors;
+        this.parameters = parameters;
+        this.levelMultiplier = 1.0 / Math.log(parameters.m());
+    }
+    
+    public Parameters parameters() {
+        return parameters;
+    }
+    
+    /**
+     * Number of ordinals in the graph.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Whether the given ordinal has been inserted.
+     */
+    public boolean contains(int ordinal) {
+        lock.readLock().lock();
+        try {
+            return ordinal < links.length && links[ordinal] != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Insert the vector stored at the given ordinal into the graph.
+     * The vector must already be readable through {@link VectorValues}.
+     */
+    public void add(int ordinal) {
+        float[] vector = vectors.vector(ordinal);
+        
+        lock.writeLock().lock();
+        try {
+            if (ordinal >= links.length) {
+                links = Arrays.copyOf(links, Math.max(ordinal + 1, links.length * 2));
+            }
+            if (links[ordinal] != null) {
+                return;
+            }
+            
+            int level = randomLevel();
+            int[][] nodeLinks = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                nodeLinks[l] = new int[maxConnections(l) + 1];
+            }
+            links[ordinal] = nodeLinks;
+            size++;
+            
+            if (entryPoint < 0) {
+                entryPoint = ordinal;
+                maxLevel = level;
+                return;
+            }
+            
+            ScoredOrdinal current = new ScoredOrdinal(entryPoint, vectors.similarity(vector, entryPoint));
+            for (int l = maxLevel; l > level; l--) {
+                current = greedySearch(vector, current, l);
+            }
+            
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                List<ScoredOrdinal> candidates = descending(
+                        searchLayer(vector, current, parameters.efConstruction(), l, null));
+                List<ScoredOrdinal> neighbours = selectNeighbours(candidates, parameters.m());
+                for (ScoredOrdinal neighbour : neighbours) {
+                    appendLink(nodeLinks[l], neighbour.ordinal());
+                    connect(neighbour.ordinal(), ordinal, neighbour.score(), l);
+                }
+                current = candidates.get(0);
+            }
+            
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = ordinal;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Find the approximate top-k ordinals for the query, ordered by descending cosine similarity.
+     *
+     * @param accept optional predicate; rejected ordinals are traversed but never returned
+     */
+    public List<ScoredOrdinal> search(float[] query, int k, IntPredicate accept) {
+        return search(query, k, parameters.efSearch(), accept);
+    }
+    
+    /**
+     * Search with an explicit candidate list size, overriding {@code efSearch}.
+     */
+    public List<ScoredOrdinal> search(float[] query, int k, int ef, IntPredicate accept) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return Collections.emptyList();
+            }
+            
+            ScoredOrdinal current = new ScoredOrdinal(entryPoint, vectors.similarity(query, entryPoint));
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedySearch(query, current, l);
+            }
+            
+            List<ScoredOrdinal> results = descending(searchLayer(query, current, Math.max(ef, k), 0, accept));
+            return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Write the graph to disk so it does not have to be rebuilt on the next start.
+     */
+    public void save(Path file) {
+        lock.readLock().lock();
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(parameters.m());
+                out.writeInt(links.length);
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                out.writeInt(size);
+                for (int[][] nodeLinks : links) {
+                    if (nodeLinks == null) {
+                        out.writeInt(-1);
+                        continue;
+                    }
+                    out.writeInt(nodeLinks.length - 1);
+                    for (int[] levelLinks : nodeLinks) {
+                        out.writeInt(levelLinks[0]);
+                        for (int i = 1; i <= levelLinks[0]; i++) {
+                            out.writeInt(levelLinks[i]);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Saved HNSW graph with {} nodes to {}", size, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save HNSW graph to " + file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Load a graph written by {@link #save(Path)}.
+     * Returns {@code null} if the file is missing or was built with a different {@code m}.
+     */
+    public static HnswIndex load(Path file, VectorValues vectors, Parameters parameters) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION || in.readInt() != parameters.m()) {
+                LOG.info("Ignoring HNSW graph at {} built with different settings", file);
+                return null;
+            }
+            HnswIndex index = new HnswIndex(vectors, parameters);
+            int capacity = in.readInt();
+            index.links = new int[Math.max(capacity, 1)][][];
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            index.size = in.readInt();
+            for (int ordinal = 0; ordinal < capacity; ordinal++) {
+                int level = in.readInt();
+                if (level < 0) {
+                    continue;
+                }
+                int[][] nodeLinks = new int[level + 1][];
+                for (int l = 0; l <= level; l++) {
+                    int count = in.readInt();
+                    nodeLinks[l] = new int[index.maxConnections(l) + 1];
+                    nodeLinks[l][0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        nodeLinks[l][i] = in.readInt();
+                    }
+                }
+                index.links[ordinal] = nodeLinks;
+            }
+            return index;
+        } catch (IOException e) {
+            LOG.warn("Failed to load HNSW graph from {}, it will be rebuilt", file, e);
+            return null;
+        }
+    }
+    
+    private ScoredOrdinal greedySearch(float[] query, ScoredOrdinal start, int level) {
+        ScoredOrdinal current = start;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current.ordinal()][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                double score = vectors.similarity(query, neighbours[i]);
+                if (score > current.score()) {
+                    current = new ScoredOrdinal(neighbours[i], score);
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+    
+    private PriorityQueue<ScoredOrdinal> searchLayer(float[] query, ScoredOrdinal entry, int ef, int level,
+                                                     IntPredicate accept) {
+        BitSet visited = new BitSet();
+        PriorityQueue<ScoredOrdinal> candidates = new PriorityQueue<>(Comparator.reverseOrder());
+        PriorityQueue<ScoredOrdinal> results = new PriorityQueue<>();
+        
+        visited.set(entry.ordinal());
+        candidates.add(entry);
+        if (accept == null || accept.test(entry.ordinal())) {
+            results.add(entry);
+        }
+        
+        while (!candidates.isEmpty()) {
+            ScoredOrdinal candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score() < results.peek().score()) {
+                break;
+            }
+            
+            int[] neighbours = links[candidate.ordinal()][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                
+                double score = vectors.similarity(query, neighbour);
+                if (results.size() < ef || score > results.peek().score()) {
+                    ScoredOrdinal scored = new ScoredOrdinal(neighbour, score);
+                    candidates.add(scored);
+                    if (accept == null || accept.test(neighbour)) {
+                        results.add(scored);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Neighbour selection heuristic from the HNSW paper: keep a candidate only if it is closer
+     * to the base node than to any neighbour already selected, then top up with the closest rejects.
+     */
+    private List<ScoredOrdinal> selectNeighbours(List<ScoredOrdinal> candidatesDescending, int max) {
+        List<ScoredOrdinal> selected = new ArrayList<>(max);
+        List<ScoredOrdinal> rejected = new ArrayList<>();
+        for (ScoredOrdinal candidate : candidatesDescending) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] candidateVector = vectors.vector(candidate.ordinal());
+            boolean diverse = true;
+            for (ScoredOrdinal chosen : selected) {
+                if (vectors.similarity(candidateVector, chosen.ordinal()) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                rejected.add(candidate);
+            }
+        }
+        for (int i = 0; i < rejected.size() && selected.size() < max; i++) {
+            selected.add(rejected.get(i));
+        }
+        return selected;
+    }
+    
+    private void connect(int from, int to, double score, int level) {
+        int[] fromLinks = links[from][level];
+        if (fromLinks[0] < fromLinks.length - 1) {
+            appendLink(fromLinks, to);
+            return;
+        }
+        
+        // Full neighbour list: re-run the selection over the existing links plus the new one
+        float[] fromVector = vectors.vector(from);
+        List<ScoredOrdinal> candidates = new ArrayList<>(fromLinks[0] + 1);
+        candidates.add(new ScoredOrdinal(to, score));
+        for (int i = 1; i <= fromLinks[0]; i++) {
+            candidates.add(new ScoredOrdinal(fromLinks[i], vectors.similarity(fromVector, fromLinks[i])));
+        }
+        candidates.sort(Comparator.reverseOrder());
+        
+        List<ScoredOrdinal> kept = selectNeighbours(candidates, fromLinks.length - 1);
+        fromLinks[0] = 0;
+        for (ScoredOrdinal neighbour : kept) {
+            appendLink(fromLinks, neighbour.ordinal());
+        }
+    }
+    
+    private static void appendLink(int[] levelLinks, int ordinal) {
+        levelLinks[++levelLinks[0]] = ordinal;
+    }
+    
+    private static List<ScoredOrdinal> descending(PriorityQueue<ScoredOrdinal> heap) {
+        List<ScoredOrdinal> sorted = new ArrayList<>(heap);
+        sorted.sort(Comparator.reverseOrder());
+        return sorted;
+    }
+    
+    private int maxConnections(int level) {
+        return level == 0 ? parameters.m() * 2 : parameters.m();
+    }
+    
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+}
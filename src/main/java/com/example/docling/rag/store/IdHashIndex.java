@@ -0,0 +1,92 @@
+package com.example.docling.rag.store;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Open-addressing table from the id hash of a record to its ordinal, so a record can be found by id
+ * without scanning the store. Only ordinals are kept: the hash of an occupied slot is read back from its
+ * record through {@code hashOf}, which costs four bytes per slot instead of a boxed map entry. Ids that
+ * share a hash all stay in the table, so a lookup returns candidates the caller checks against the id.
+ * Not thread-safe: the store guards it with its monitor.
+ */
+final class IdHashIndex {
+    
+    private static final int EMPTY = -1;
+    
+    private final IntUnaryOperator hashOf;
+    private int[] slots;
+    private int size;
+    
+    IdHashIndex(IntUnaryOperator hashOf, int expectedSize) {
+        this.hashOf = hashOf;
+        this.slots = newSlots(expectedSize);
+    }
+    
+    /**
+     * Add a record, whose id hash must already be readable through {@code hashOf}.
+     */
+    void add(int ordinal) {
+        if ((size + 1) * 2 > slots.length) {
+            int[] previous = slots;
+            slots = newSlots(size + 1);
+            for (int existing : previous) {
+                if (existing != EMPTY) {
+                    insert(existing);
+                }
+            }
+        }
+        insert(ordinal);
+        size++;
+    }
+    
+    /**
+     * Ordinals of the records whose id has this hash, in the order they were added.
+     */
+    int[] candidates(int hash) {
+        int mask = slots.length - 1;
+        int[] found = new int[1];
+        int count = 0;
+        for (int slot = slot(hash, mask); slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (hashOf.applyAsInt(slots[slot]) == hash) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = slots[slot];
+            }
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+    
+    /**
+     * Heap held by the table.
+     */
+    long memoryBytes() {
+        return (long) slots.length * Integer.BYTES;
+    }
+    
+    private void insert(int ordinal) {
+        int mask = slots.length - 1;
+        int slot = slot(hashOf.applyAsInt(ordinal), mask);
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = ordinal;
+    }
+    
+    private static int slot(int hash, int mask) {
+        // Mixes the high bits in, so hashes that only differ there do not all land in one slot
+        int mixed = hash * 0x9E3779B9;
+        return (mixed ^ (mixed >>> 16)) & mask;
+    }
+    
+    /**
+     * Slots for at least {@code expectedSize} records at a load factor of at most one half.
+     */
+    private static int[] newSlots(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+}
@@ -0,0 +1,1273 @@
+package com.example.docling.rag.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Disk-backed embedding store that keeps vectors in a memory-mapped file of fixed-size records.
+ * <p>
+ * Two files live in the store directory:
+ * <ul>
+ *   <li>{@code vectors.dat} - a small header followed by one record per embedding
+ *       (segment offset, segment length, flags, vector norm, id hash and the raw float vector)</li>
+ *   <li>{@code segments.dat} - an append-only log with the id, text and metadata of every record</li>
+ * </ul>
+ * Reopening only maps the vector file and reads the header, so startup time does not depend on
+ * corpus size. Searches scan the mapped region directly and only read segment text for the top hits.
+ * Like {@link FlatEmbeddingStore}, they score with a {@link SimilarityKernel} into bounded {@link TopK}
+ * heaps and split large scans into ranges on a ForkJoin pool.
+ * Removed records are flagged as deleted in place and skipped by searches. They are found through an
+ * {@link IdHashIndex} of the id hashes, built on the first removal so opening the store does not read
+ * every record.
+ * <p>
+ * When opened with HNSW parameters, searches go through an {@link HnswIndex} over the mapped vectors
+ * instead. The graph is saved to {@code hnsw.graph} on close and reloaded on the next open; records
+ * added since the graph was saved are inserted on open.
+ * <p>
+ * When opened with quantization parameters, a compact int8 or float16 copy of every vector is kept in
+ * {@link QuantizedVectors}. Flat searches score the compact copy first and rescore the best
+ * {@code maxResults * rescoreFactor} candidates from the full-precision records, so a scan touches
+ * a quarter (int8) or half (float16) of the memory.
+ * <p>
+ * A {@link PartitionIndex} persisted next to the records keeps the postings of every source document
+ * and tag set, so a search with a {@link PartitionFilter} only scores the matching records instead of
+ * reading the segment metadata of each candidate.
+ * <p>
+ * Deleted records keep their space until {@link #compact()} copies the live records into a new store in
+ * {@code compaction/} and moves its files over the old ones. Searches keep reading the old files until
+ * the new ones are open, and the old files are closed once the last search on them is done. A
+ * compaction interrupted after its files were complete is finished on the next open; an earlier one is
+ * discarded. Moving files over open ones needs a file system that allows it, as those of Linux and
+ * macOS do; elsewhere the compaction fails before anything was moved and the store is left as it was.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, VectorValues, CompactableStore, Closeable {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEmbeddingStore.class);
+    
+    static final String VECTORS_FILE = "vectors.dat";
+    static final String SEGMENTS_FILE = "segments.dat";
+    static final String GRAPH_FILE = "hnsw.graph";
+    static final String COMPACTION_DIRECTORY = "compaction";
+    private static final String COMPACTION_COMPLETE = "COMPLETE";
+    
+    private static final int MAGIC = 0x44525653; // "DRVS"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 64;
+    private static final int DIMENSION_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    private static final int DELETED_COUNT_OFFSET = 24;
+    
+    private static final int RECORD_HEADER_SIZE = 24;
+    private static final int SEGMENT_OFFSET = 0;
+    private static final int SEGMENT_LENGTH = 8;
+    private static final int FLAGS = 12;
+    private static final int NORM = 16;
+    private static final int ID_HASH = 20;
+    private static final long REGION_TARGET_BYTES = 64L * 1024 * 1024;
+    private static final int COMPACTION_BATCH = 1024;
+    
+    static final int FLAG_DELETED = 1;
+    
+    private final Path directory;
+    private final int dimension;
+    private final int recordSize;
+    private final int recordsPerRegion;
+    private final HnswIndex.Parameters hnswParameters;
+    private final QuantizedVectors.Parameters quantization;
+    private final FlatEmbeddingStore.Parameters scanParameters;
+    private final SimilarityKernel kernel;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    
+    // Swapped by a compaction while holding the store monitor, like every write
+    private volatile Generation current;
+    private volatile boolean closed;
+    
+    private MappedEmbeddingStore(Path directory, int dimension, HnswIndex.Parameters hnswParameters,
+                                 QuantizedVectors.Parameters quantization,
+                                 FlatEmbeddingStore.Parameters scanParameters) {
+        this.directory = directory;
+        this.dimension = dimension;
+        this.recordSize = RECORD_HEADER_SIZE + dimension * Float.BYTES;
+        this.recordsPerRegion = (int) Math.max(1, REGION_TARGET_BYTES / recordSize);
+        this.hnswParameters = hnswParameters;
+        this.quantization = quantization;
+        this.scanParameters = scanParameters;
+        this.kernel = SimilarityKernel.create(scanParameters.vectorized());
+        this.pool = scanParameters.parallelism() == 0
+                ? ForkJoinPool.commonPool()
+                : new ForkJoinPool(scanParameters.parallelism());
+        this.parallelThreshold = scanParameters.parallelThreshold();
+    }
+    
+    /**
+     * Open the store in the given directory, creating it if it does not exist yet.
+     * An existing store must have been created with the same vector dimension.
+     */
+    public static MappedEmbeddingStore open(Path directory, int dimension) {
+        return open(directory, dimension, null);
+    }
+    
+    /**
+     * Open the store and search it through an HNSW graph built with the given parameters.
+     */
+    public static MappedEmbeddingStore open(Path directory, int dimension, HnswIndex.Parameters hnswParameters) {
+        return open(directory, dimension, hnswParameters, null);
+    }
+    
+    /**
+     * Open the store with an optional HNSW graph and optional quantized first-pass scoring.
+     * Either parameter may be {@code null}.
+     */
+    public static MappedEmbeddingStore open(Path directory, int dimension, HnswIndex.Parameters hnswParameters,
+                                            QuantizedVectors.Parameters quantization) {
+        return open(directory, dimension, hnswParameters, quantization, FlatEmbeddingStore.Parameters.defaults());
+    }
+    
+    /**
+     * Open the store with an optional HNSW graph and quantized first pass, scanning records without a graph
+     * with the kernel and parallel range split of the given flat search settings.
+     */
+    public static MappedEmbeddingStore open(Path directory, int dimension, HnswIndex.Parameters hnswParameters,
+                                            QuantizedVectors.Parameters quantization,
+                                            FlatEmbeddingStore.Parameters scanParameters) {
+        try {
+            Files.createDirectories(directory);
+            finishCompaction(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open vector store at " + directory, e);
+        }
+        MappedEmbeddingStore store = new MappedEmbeddingStore(directory, dimension, hnswParameters, quantization,
+                scanParameters);
+        store.current = store.openGeneration();
+        return store;
+    }
+    
+    /**
+     * Map the files in the store directory and open the partition postings, quantized copy and graph on them.
+     */
+    private Generation openGeneration() {
+        try {
+            FileChannel vectorChannel = FileChannel.open(directory.resolve(VECTORS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel segmentChannel = FileChannel.open(directory.resolve(SEGMENTS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            
+            boolean created = vectorChannel.size() == 0;
+            MappedByteBuffer header = vectorChannel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            
+            if (created) {
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putInt(DIMENSION_OFFSET, dimension);
+                header.putLong(COUNT_OFFSET, 0L);
+            } else {
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IllegalStateException("Not a vector store file: " + directory.resolve(VECTORS_FILE));
+                }
+                int storedDimension = header.getInt(DIMENSION_OFFSET);
+                if (storedDimension != dimension) {
+                    throw new IllegalStateException("Vector store at " + directory + " has dimension "
+                            + storedDimension + " but " + dimension + " was requested");
+                }
+            }
+            
+            int count = (int) header.getLong(COUNT_OFFSET);
+            Generation generation = new Generation(vectorChannel, segmentChannel, header, count);
+            LOG.info("{} mapped vector store at {} with {} embeddings (dimension {})",
+                    created ? "Created" : "Opened", directory, count, dimension);
+            openPartitions(generation);
+            if (quantization != null) {
+                openQuantized(generation, quantization);
+            }
+            if (hnswParameters != null) {
+                openIndex(generation, hnswParameters);
+            }
+            return generation;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open vector store at " + directory, e);
+        }
+    }
+    
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+    
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+    
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(textSegment));
+        return id;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+    
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || (textSegments != null && textSegments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and text segments must have the same size");
+        }
+        for (Embedding embedding : embeddings) {
+            checkDimension(embedding.vector());
+        }
+        
+        // Encode all segment entries up front so the log is written with a single call
+        List<byte[]> entries = new ArrayList<>(ids.size());
+        int totalBytes = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] entry = encodeEntry(ids.get(i), textSegments != null ? textSegments.get(i) : null);
+            entries.add(entry);
+            totalBytes += entry.length;
+        }
+        ByteBuffer log = ByteBuffer.allocate(totalBytes);
+        entries.forEach(log::put);
+        log.flip();
+        
+        List<Metadata> metadata = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            metadata.add(textSegments != null && textSegments.get(i) != null ? textSegments.get(i).metadata() : null);
+        }
+        
+        Generation generation;
+        int first;
+        synchronized (this) {
+            // Held until the records are in the graph, so a compaction does not close the files meanwhile
+            generation = acquire();
+            generation.partitions.addAll(generation.count, metadata);
+            long offset = generation.segmentFileSize;
+            writeFully(generation.segmentChannel, log, offset);
+            generation.segmentFileSize += totalBytes;
+            
+            int ordinal = generation.count;
+            for (int i = 0; i < entries.size(); i++, ordinal++) {
+                float[] vector = embeddings.get(i).vector();
+                generation.writeRecord(ordinal, offset, entries.get(i).length, ids.get(i).hashCode(), vector);
+                if (generation.ids != null) {
+                    generation.ids.add(ordinal);
+                }
+                if (generation.quantized != null) {
+                    generation.quantized.write(ordinal, vector, norm(vector), 0);
+                }
+                offset += entries.get(i).length;
+            }
+            if (generation.quantized != null) {
+                generation.quantized.setSize(ordinal);
+            }
+            
+            // Publishing the count last makes the new records visible to concurrent searches
+            generation.header.putLong(COUNT_OFFSET, ordinal);
+            generation.count = ordinal;
+            first = ordinal - entries.size();
+        }
+        
+        try {
+            if (generation.index != null) {
+                for (int ordinal = first; ordinal < first + entries.size(); ordinal++) {
+                    generation.index.add(ordinal);
+                }
+            }
+        } finally {
+            generation.release();
+        }
+    }
+    
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = request.queryEmbedding().vector();
+        checkDimension(query);
+        
+        Generation generation = acquire();
+        try {
+            return search(generation, query, request.maxResults(), request.minScore(), request.filter());
+        } finally {
+            generation.release();
+        }
+    }
+    
+    private EmbeddingSearchResult<TextSegment> search(Generation generation, float[] query, int maxResults,
+                                                      double minScore, Filter filter) {
+        float queryNorm = norm(query);
+        if (queryNorm == 0f || maxResults < 1) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        int size = generation.count;
+        MappedByteBuffer[] snapshot = generation.regions;
+        int[] candidates = null;
+        if (filter instanceof PartitionFilter partitionFilter) {
+            int[] selected = generation.partitions.select(partitionFilter);
+            if (generation.index != null && !PartitionIndex.isSelective(selected.length, size)) {
+                // The graph walk stays efficient when many records match, it only needs the membership test
+                return searchIndex(generation, query, maxResults, minScore, null,
+                        generation.partitions.matcher(partitionFilter), snapshot);
+            }
+            // Only the matching postings are scored, so the filter does not need to be tested again
+            candidates = selected;
+            filter = null;
+        } else if (generation.index != null) {
+            return searchIndex(generation, query, maxResults, minScore, filter, null, snapshot);
+        }
+        
+        // Scores are compared as cosine similarities; this is the cosine matching minScore
+        float minCosine = (float) (2 * minScore - 1);
+        int[] ordinals = candidates;
+        Filter remaining = filter;
+        int scanned = ordinals != null ? ordinals.length : size;
+        TopK topK;
+        if (generation.quantized != null) {
+            int candidateCount = maxResults * generation.quantized.parameters().rescoreFactor();
+            TopK firstPass = scanInRanges(scanned, candidateCount, (from, to) -> scanQuantized(generation, snapshot,
+                    size, ordinals, query, queryNorm, remaining, candidateCount, from, to));
+            topK = rescore(snapshot, firstPass, query, queryNorm, minCosine, maxResults);
+        } else {
+            topK = scanInRanges(scanned, maxResults, (from, to) -> scan(generation, snapshot, size, ordinals, query,
+                    queryNorm, minCosine, remaining, maxResults, from, to));
+        }
+        return toResult(generation, topK, snapshot, minScore);
+    }
+    
+    /**
+     * Run a scan over {@code positions} positions, split into ranges on the search pool once there are at
+     * least {@code parallelThreshold} positions per range, and merge the heaps of the ranges.
+     */
+    private TopK scanInRanges(int positions, int maxResults, RangeScan scan) {
+        int ranges = Math.min(pool.getParallelism(), positions / parallelThreshold);
+        if (ranges <= 1) {
+            return scan.scan(0, positions);
+        }
+        List<Callable<TopK>> tasks = new ArrayList<>(ranges);
+        for (int range = 0; range < ranges; range++) {
+            int from = (int) ((long) positions * range / ranges);
+            int to = (int) ((long) positions * (range + 1) / ranges);
+            tasks.add(() -> scan.scan(from, to));
+        }
+        
+        TopK merged = new TopK(maxResults);
+        try {
+            for (Future<TopK> partial : pool.invokeAll(tasks)) {
+                merged.addAll(partial.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+        return merged;
+    }
+    
+    /**
+     * Score the full-precision records at positions {@code [from, to)} of the scan, all ordinals or the
+     * candidate postings, into a new heap. The filter is only evaluated for records that would enter the heap.
+     */
+    private TopK scan(Generation generation, MappedByteBuffer[] snapshot, int size, int[] ordinals, float[] query,
+                      float queryNorm, float minCosine, Filter filter, int maxResults, int from, int to) {
+        TopK topK = new TopK(maxResults);
+        VectorReader vectors = new VectorReader(snapshot);
+        for (int position = from; position < to; position++) {
+            int ordinal = ordinals != null ? ordinals[position] : position;
+            if (ordinal >= size) {
+                break;
+            }
+            MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            float norm = region.getFloat(base + NORM);
+            if ((region.getInt(base + FLAGS) & FLAG_DELETED) != 0 || norm == 0f) {
+                continue;
+            }
+            
+            float cosine = vectors.dot(ordinal, query) / (norm * queryNorm);
+            if (cosine < minCosine || !topK.accepts(cosine)) {
+                continue;
+            }
+            if (filter != null) {
+                TextSegment segment = generation.readEntry(region, base).segment;
+                if (segment == null || !filter.test(segment.metadata())) {
+                    continue;
+                }
+            }
+            topK.offer(ordinal, cosine);
+        }
+        return topK;
+    }
+    
+    /**
+     * First pass of a quantized search: select candidates at positions {@code [from, to)} by their
+     * quantized score, to be ranked at full precision by {@link #rescore}.
+     */
+    private TopK scanQuantized(Generation generation, MappedByteBuffer[] snapshot, int size, int[] ordinals,
+                               float[] query, float queryNorm, Filter filter, int candidateCount, int from, int to) {
+        QuantizedVectors quantized = generation.quantized;
+        MappedByteBuffer[] codes = quantized.regions();
+        TopK candidates = new TopK(candidateCount);
+        for (int position = from; position < to; position++) {
+            int ordinal = ordinals != null ? ordinals[position] : position;
+            if (ordinal >= size) {
+                break;
+            }
+            if (quantized.isFlagged(codes, ordinal, FLAG_DELETED)) {
+                continue;
+            }
+            float score = (float) quantized.cosine(codes, ordinal, query, queryNorm);
+            if (!candidates.accepts(score)) {
+                continue;
+            }
+            if (filter != null) {
+                TextSegment segment = generation.readEntry(snapshot[ordinal / recordsPerRegion],
+                        (ordinal % recordsPerRegion) * recordSize).segment;
+                if (segment == null || !filter.test(segment.metadata())) {
+                    continue;
+                }
+            }
+            candidates.offer(ordinal, score);
+        }
+        return candidates;
+    }
+    
+    /**
+     * Rank the candidates of the quantized pass by their full-precision cosine.
+     */
+    private TopK rescore(MappedByteBuffer[] snapshot, TopK candidates, float[] query, float queryNorm,
+                         float minCosine, int maxResults) {
+        TopK topK = new TopK(maxResults);
+        VectorReader vectors = new VectorReader(snapshot);
+        for (ScoredOrdinal candidate : candidates.toSortedList()) {
+            int ordinal = candidate.ordinal();
+            MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+            float norm = region.getFloat((ordinal % recordsPerRegion) * recordSize + NORM);
+            if (norm == 0f) {
+                continue;
+            }
+            float cosine = vectors.dot(ordinal, query) / (norm * queryNorm);
+            if (cosine >= minCosine) {
+                topK.offer(ordinal, cosine);
+            }
+        }
+        return topK;
+    }
+    
+    /**
+     * Read the segments of the hits, best first.
+     */
+    private EmbeddingSearchResult<TextSegment> toResult(Generation generation, TopK topK, MappedByteBuffer[] snapshot,
+                                                        double minScore) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(topK.size());
+        for (ScoredOrdinal hit : topK.toSortedList()) {
+            double score = RelevanceScore.fromCosineSimilarity(hit.score());
+            if (score < minScore) {
+                continue;
+            }
+            MappedByteBuffer region = snapshot[hit.ordinal() / recordsPerRegion];
+            int base = (hit.ordinal() % recordsPerRegion) * recordSize;
+            Entry entry = generation.readEntry(region, base);
+            matches.add(new EmbeddingMatch<>(score, entry.id, Embedding.from(readVector(region, base)), entry.segment));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+    
+    private EmbeddingSearchResult<TextSegment> searchIndex(Generation generation, float[] query, int maxResults,
+                                                           double minScore, Filter filter, IntPredicate inPartition,
+                                                           MappedByteBuffer[] snapshot) {
+        IntPredicate accept = ordinal -> {
+            if (inPartition != null && !inPartition.test(ordinal)) {
+                return false;
+            }
+            MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            if ((region.getInt(base + FLAGS) & FLAG_DELETED) != 0) {
+                return false;
+            }
+            if (filter == null) {
+                return true;
+            }
+            TextSegment segment = generation.readEntry(region, base).segment;
+            return segment != null && filter.test(segment.metadata());
+        };
+        
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (ScoredOrdinal hit : generation.index.search(query, maxResults, accept)) {
+            double score = RelevanceScore.fromCosineSimilarity(hit.score());
+            if (score < minScore) {
+                continue;
+            }
+            MappedByteBuffer region = generation.regions[hit.ordinal() / recordsPerRegion];
+            int base = (hit.ordinal() % recordsPerRegion) * recordSize;
+            Entry entry = generation.readEntry(region, base);
+            matches.add(new EmbeddingMatch<>(score, entry.id, Embedding.from(readVector(region, base)), entry.segment));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+    
+    @Override
+    public float[] vector(int ordinal) {
+        return current.vector(ordinal);
+    }
+    
+    @Override
+    public double similarity(float[] query, int ordinal) {
+        return current.similarity(query, ordinal);
+    }
+    
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+    
+    /**
+     * Flag the records with the given ids as deleted.
+     * Records are looked up by id hash, and only the segments of records whose hash matches are read.
+     */
+    @Override
+    public void removeAll(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Set<String> remaining = new HashSet<>(ids);
+        
+        synchronized (this) {
+            Generation generation = current;
+            if (generation.ids == null) {
+                indexIds(generation);
+            }
+            MappedByteBuffer[] snapshot = generation.regions;
+            int removed = 0;
+            for (String id : remaining) {
+                for (int ordinal : generation.ids.candidates(id.hashCode())) {
+                    MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+                    int base = (ordinal % recordsPerRegion) * recordSize;
+                    if ((region.getInt(base + FLAGS) & FLAG_DELETED) == 0
+                            && id.equals(generation.readEntry(region, base).id)) {
+                        generation.markDeleted(ordinal);
+                        removed++;
+                        break;
+                    }
+                }
+            }
+            generation.addDeleted(removed);
+        }
+    }
+    
+    /**
+     * Number of records in the store, including records flagged as deleted.
+     */
+    @Override
+    public int size() {
+        return current.count;
+    }
+    
+    /**
+     * Number of records that have not been deleted.
+     */
+    public int liveSize() {
+        Generation generation = current;
+        return generation.count - generation.deletedCount();
+    }
+    
+    @Override
+    public int deletedSize() {
+        return current.deletedCount();
+    }
+    
+    /**
+     * Copy the live records into a new store in {@code compaction/} and swap its files in.
+     * <p>
+     * The bulk of the records is copied without holding the store monitor, so adds and removes go on
+     * meanwhile. Under the monitor, the records added since are copied and the records removed since are
+     * flagged in the copy before its files are moved in and opened.
+     */
+    @Override
+    public int compact() {
+        compactionLock.lock();
+        try {
+            Generation source = current;
+            if (closed || source.deletedCount() == 0) {
+                return 0;
+            }
+            long start = System.currentTimeMillis();
+            Path work = directory.resolve(COMPACTION_DIRECTORY);
+            deleteTree(work);
+            MappedEmbeddingStore target = open(work, dimension, hnswParameters, quantization, scanParameters);
+            try {
+                int copied = source.count;
+                int[] copiedTo = copyLive(source, target, 0, copied);
+                synchronized (this) {
+                    if (closed) {
+                        throw new CancellationException("Vector store at " + directory + " closed during compaction");
+                    }
+                    copyLive(source, target, copied, source.count);
+                    int removedSince = 0;
+                    for (int ordinal = 0; ordinal < copied; ordinal++) {
+                        if (copiedTo[ordinal] >= 0 && source.isDeleted(ordinal)) {
+                            target.markDeleted(copiedTo[ordinal]);
+                            removedSince++;
+                        }
+                    }
+                    int reclaimed = source.deletedCount() - removedSince;
+                    target.close();
+                    target = null;
+                    
+                    installCompaction(work);
+                    Generation compacted = openGeneration();
+                    current = compacted;
+                    source.retire();
+                    LOG.info("Compacted vector store at {} from {} to {} records in {} ms", directory,
+                            source.count, compacted.count, System.currentTimeMillis() - start);
+                    return reclaimed;
+                }
+            } finally {
+                if (target != null) {
+                    closeQuietly(target);
+                    deleteTree(work);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact vector store at " + directory, e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+    
+    /**
+     * Copy the live records at ordinals {@code [from, to)} into {@code target} and return the ordinal of
+     * each of them in the copy, or -1 for a deleted record.
+     */
+    private int[] copyLive(Generation source, MappedEmbeddingStore target, int from, int to) {
+        int[] copiedTo = new int[to - from];
+        List<String> ids = new ArrayList<>(COMPACTION_BATCH);
+        List<Embedding> embeddings = new ArrayList<>(COMPACTION_BATCH);
+        List<TextSegment> segments = new ArrayList<>(COMPACTION_BATCH);
+        MappedByteBuffer[] snapshot = source.regions;
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            if ((region.getInt(base + FLAGS) & FLAG_DELETED) != 0) {
+                copiedTo[ordinal - from] = -1;
+                continue;
+            }
+            Entry entry = source.readEntry(region, base);
+            copiedTo[ordinal - from] = target.size() + ids.size();
+            ids.add(entry.id);
+            embeddings.add(Embedding.from(readVector(region, base)));
+            segments.add(entry.segment);
+            if (ids.size() == COMPACTION_BATCH) {
+                if (closed) {
+                    throw new CancellationException("Vector store at " + directory + " closed during compaction");
+                }
+                target.addAll(ids, embeddings, segments);
+                ids.clear();
+                embeddings.clear();
+                segments.clear();
+            }
+        }
+        if (!ids.isEmpty()) {
+            target.addAll(ids, embeddings, segments);
+        }
+        return copiedTo;
+    }
+    
+    private synchronized void markDeleted(int ordinal) {
+        current.markDeleted(ordinal);
+        current.addDeleted(1);
+    }
+    
+    /**
+     * Drop the files of other index and quantization settings, whose ordinals would no longer match,
+     * mark the copy complete and move it in.
+     */
+    private void installCompaction(Path work) throws IOException {
+        if (hnswParameters == null) {
+            Files.deleteIfExists(directory.resolve(GRAPH_FILE));
+        }
+        for (QuantizedVectors.Encoding encoding : QuantizedVectors.Encoding.values()) {
+            if (quantization == null || quantization.encoding() != encoding) {
+                Files.deleteIfExists(directory.resolve(encoding.fileName()));
+            }
+        }
+        Files.createFile(work.resolve(COMPACTION_COMPLETE));
+        finishCompaction(directory);
+    }
+    
+    /**
+     * Move the files of a complete compaction into the store directory, or delete those of an interrupted
+     * one. The record file is moved first, so a file system that cannot replace an open file fails before
+     * the store was changed.
+     */
+    private static void finishCompaction(Path directory) throws IOException {
+        Path work = directory.resolve(COMPACTION_DIRECTORY);
+        if (!Files.isDirectory(work)) {
+            return;
+        }
+        if (Files.exists(work.resolve(COMPACTION_COMPLETE))) {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(work)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (!name.equals(COMPACTION_COMPLETE) && !name.endsWith(".tmp")) {
+                        files.add(entry);
+                    }
+                }
+            }
+            files.sort((a, b) -> Boolean.compare(!a.getFileName().toString().equals(VECTORS_FILE),
+                    !b.getFileName().toString().equals(VECTORS_FILE)));
+            for (Path file : files) {
+                Files.move(file, directory.resolve(file.getFileName().toString()),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } else {
+            LOG.info("Discarding the files of an interrupted compaction in {}", work);
+        }
+        deleteTree(work);
+    }
+    
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+    
+    public Path directory() {
+        return directory;
+    }
+    
+    /**
+     * The kernel scoring full-precision records, for logging.
+     */
+    public String kernel() {
+        return kernel == SimilarityKernel.SCALAR ? "scalar" : kernel.toString();
+    }
+    
+    /**
+     * Size of one full-precision record in bytes.
+     */
+    public int recordSize() {
+        return recordSize;
+    }
+    
+    /**
+     * Estimate of the memory the open store occupies: the mapped records, the quantized copy, the id index
+     * and the links of the HNSW graph. Partition postings and segment text are not counted.
+     */
+    public long residentBytes() {
+        Generation generation = current;
+        long bytes = (long) generation.count * recordSize;
+        IdHashIndex ids = generation.ids;
+        if (ids != null) {
+            bytes += ids.memoryBytes();
+        }
+        QuantizedVectors compact = generation.quantized;
+        if (compact != null) {
+            bytes += (long) compact.size() * compact.recordSize();
+        }
+        HnswIndex graph = generation.index;
+        if (graph != null) {
+            // Nodes have up to 2 * m links on the bottom layer, which dominates the graph
+            bytes += (long) graph.size() * 2 * graph.parameters().m() * Integer.BYTES;
+        }
+        return bytes;
+    }
+    
+    /**
+     * The quantized copy used for the first search pass, or {@code null} when quantization is off.
+     */
+    public QuantizedVectors quantizedVectors() {
+        return current.quantized;
+    }
+    
+    /**
+     * Flush and close the store. A running compaction is abandoned first.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        compactionLock.lock();
+        try {
+            synchronized (this) {
+                current.close(true);
+                LOG.info("Closed mapped vector store at {} with {} embeddings", directory, current.count);
+            }
+        } finally {
+            compactionLock.unlock();
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+        }
+    }
+    
+    /**
+     * Register a use of the current files, so a compaction does not close them under a search.
+     * The caller must {@link Generation#release()} them.
+     */
+    private Generation acquire() {
+        while (true) {
+            Generation generation = current;
+            generation.users.incrementAndGet();
+            if (generation == current) {
+                return generation;
+            }
+            generation.release();
+        }
+    }
+    
+    /**
+     * Open the quantized copy and encode the records it does not hold yet.
+     */
+    private void openQuantized(Generation generation, QuantizedVectors.Parameters parameters) {
+        long start = System.currentTimeMillis();
+        QuantizedVectors vectors = QuantizedVectors.open(directory, dimension, parameters);
+        
+        int size = generation.count;
+        MappedByteBuffer[] snapshot = generation.regions;
+        int first = Math.min(vectors.size(), size);
+        for (int ordinal = first; ordinal < size; ordinal++) {
+            MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            vectors.write(ordinal, readVector(region, base), region.getFloat(base + NORM), region.getInt(base + FLAGS));
+        }
+        vectors.setSize(size);
+        generation.quantized = vectors;
+        LOG.info("Quantized vectors ready ({}, {} bytes per vector instead of {}, {} encoded) in {} ms",
+                parameters.encoding(), vectors.recordSize(), recordSize, size - first,
+                System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * Open the partition postings, indexing the records of a store written before they existed.
+     */
+    private void openPartitions(Generation generation) {
+        long start = System.currentTimeMillis();
+        MappedByteBuffer[] snapshot = generation.regions;
+        generation.partitions = PartitionIndex.open(directory, generation.count, ordinal -> {
+            TextSegment segment = generation.readEntry(snapshot[ordinal / recordsPerRegion],
+                    (ordinal % recordsPerRegion) * recordSize).segment;
+            return segment != null ? segment.metadata() : null;
+        });
+        LOG.info("Partition index ready with {} partitions in {} ms", generation.partitions.partitionCount(),
+                System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * Index the id hashes of the live records. Called under the store monitor, which keeps the index
+     * in step with adds from then on.
+     */
+    private void indexIds(Generation generation) {
+        long start = System.currentTimeMillis();
+        int size = generation.count;
+        IdHashIndex ids = new IdHashIndex(generation::idHash, size - generation.deletedCount());
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (!generation.isDeleted(ordinal)) {
+                ids.add(ordinal);
+            }
+        }
+        generation.ids = ids;
+        LOG.info("Id index of vector store at {} built over {} records in {} ms", directory, size,
+                System.currentTimeMillis() - start);
+    }
+    
+    private void openIndex(Generation generation, HnswIndex.Parameters parameters) {
+        long start = System.currentTimeMillis();
+        HnswIndex loaded = HnswIndex.load(directory.resolve(GRAPH_FILE), generation, parameters);
+        HnswIndex graph = loaded != null ? loaded : new HnswIndex(generation, parameters);
+        
+        int size = generation.count;
+        MappedByteBuffer[] snapshot = generation.regions;
+        int inserted = 0;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            if ((region.getInt(base + FLAGS) & FLAG_DELETED) == 0 && !graph.contains(ordinal)) {
+                graph.add(ordinal);
+                inserted++;
+            }
+        }
+        generation.index = graph;
+        LOG.info("HNSW index ready with {} nodes ({} loaded, {} inserted) in {} ms",
+                graph.size(), graph.size() - inserted, inserted, System.currentTimeMillis() - start);
+    }
+    
+    private double cosine(MappedByteBuffer region, int base, float[] query, float queryNorm) {
+        float norm = region.getFloat(base + NORM);
+        if (norm == 0f || queryNorm == 0f) {
+            return 0.0;
+        }
+        int vectorBase = base + RECORD_HEADER_SIZE;
+        float dot = 0f;
+        for (int i = 0; i < query.length; i++) {
+            dot += query[i] * region.getFloat(vectorBase + i * Float.BYTES);
+        }
+        return dot / (queryNorm * norm);
+    }
+    
+    private float[] readVector(MappedByteBuffer region, int base) {
+        float[] vector = new float[dimension];
+        int vectorBase = base + RECORD_HEADER_SIZE;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = region.getFloat(vectorBase + i * Float.BYTES);
+        }
+        return vector;
+    }
+    
+    private byte[] encodeEntry(String id, TextSegment segment) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("id", id);
+        if (segment != null) {
+            entry.put("text", segment.text());
+            entry.put("metadata", segment.metadata().toMap());
+        }
+        try {
+            return objectMapper.writeValueAsBytes(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode segment " + id, e);
+        }
+    }
+    
+    private Entry decodeEntry(byte[] bytes) throws IOException {
+        Map<String, Object> entry = objectMapper.readValue(bytes, new TypeReference<Map<String, Object>>() { });
+        String id = (String) entry.get("id");
+        String text = (String) entry.get("text");
+        if (text == null) {
+            return new Entry(id, null);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> metadata = (Map<String, Object>) entry.get("metadata");
+        return new Entry(id, TextSegment.from(text, metadata != null ? Metadata.from(metadata) : new Metadata()));
+    }
+    
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected embedding of dimension " + dimension
+                    + " but got " + vector.length);
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to segment log", e);
+        }
+    }
+    
+    private static void deleteTree(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                Files.delete(entry);
+            }
+        }
+        Files.delete(directory);
+    }
+    
+    private static void closeQuietly(MappedEmbeddingStore store) {
+        try {
+            store.close();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to close abandoned compaction at {}: {}", store.directory, e.getMessage());
+        }
+    }
+    
+    static float norm(float[] vector) {
+        float sum = 0f;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+    
+    private record Entry(String id, TextSegment segment) {
+    }
+    
+    /**
+     * Scan of the positions {@code [from, to)} into a heap of its own.
+     */
+    @FunctionalInterface
+    private interface RangeScan {
+        
+        TopK scan(int from, int to);
+    }
+    
+    /**
+     * Copies full-precision vectors out of the mapped regions into a scratch array for the
+     * {@link SimilarityKernel}, through float views of the regions created as a scan reaches them.
+     * Each scanning thread uses its own.
+     */
+    private final class VectorReader {
+        
+        private final MappedByteBuffer[] regions;
+        private final FloatBuffer[] views;
+        private final float[] scratch = new float[dimension];
+        
+        VectorReader(MappedByteBuffer[] regions) {
+            this.regions = regions;
+            this.views = new FloatBuffer[regions.length];
+        }
+        
+        float dot(int ordinal, float[] query) {
+            int regionIndex = ordinal / recordsPerRegion;
+            FloatBuffer view = views[regionIndex];
+            if (view == null) {
+                // A duplicate does not keep the byte order of the region
+                view = regions[regionIndex].duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+                views[regionIndex] = view;
+            }
+            int offset = ((ordinal % recordsPerRegion) * recordSize + RECORD_HEADER_SIZE) / Float.BYTES;
+            view.get(offset, scratch, 0, dimension);
+            return kernel.dot(scratch, 0, query);
+        }
+    }
+    
+    /**
+     * The open files of the store with the postings, quantized copy and graph built on them. A compaction
+     * replaces the generation; the old one is closed once the searches that started on it are done.
+     */
+    private final class Generation implements VectorValues {
+        
+        private final FileChannel vectorChannel;
+        private final FileChannel segmentChannel;
+        private final MappedByteBuffer header;
+        private final AtomicInteger users = new AtomicInteger();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean retired;
+        private HnswIndex index;
+        private QuantizedVectors quantized;
+        private PartitionIndex partitions;
+        // Built on the first removal, guarded by the store monitor
+        private IdHashIndex ids;
+        
+        private volatile MappedByteBuffer[] regions;
+        private volatile int count;
+        private long segmentFileSize;
+        
+        private Generation(FileChannel vectorChannel, FileChannel segmentChannel, MappedByteBuffer header,
+                           int count) throws IOException {
+            this.vectorChannel = vectorChannel;
+            this.segmentChannel = segmentChannel;
+            this.header = header;
+            this.count = count;
+            this.segmentFileSize = segmentChannel.size();
+            
+            int regionCount = (count + recordsPerRegion - 1) / recordsPerRegion;
+            MappedByteBuffer[] mapped = new MappedByteBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                mapped[i] = mapRegion(i);
+            }
+            this.regions = mapped;
+        }
+        
+        @Override
+        public int dimension() {
+            return dimension;
+        }
+        
+        @Override
+        public float[] vector(int ordinal) {
+            MappedByteBuffer region = regions[ordinal / recordsPerRegion];
+            return readVector(region, (ordinal % recordsPerRegion) * recordSize);
+        }
+        
+        @Override
+        public double similarity(float[] query, int ordinal) {
+            MappedByteBuffer region = regions[ordinal / recordsPerRegion];
+            return cosine(region, (ordinal % recordsPerRegion) * recordSize, query, norm(query));
+        }
+        
+        int deletedCount() {
+            return (int) header.getLong(DELETED_COUNT_OFFSET);
+        }
+        
+        void addDeleted(int removed) {
+            header.putLong(DELETED_COUNT_OFFSET, header.getLong(DELETED_COUNT_OFFSET) + removed);
+        }
+        
+        int idHash(int ordinal) {
+            return regions[ordinal / recordsPerRegion].getInt((ordinal % recordsPerRegion) * recordSize + ID_HASH);
+        }
+        
+        boolean isDeleted(int ordinal) {
+            MappedByteBuffer region = regions[ordinal / recordsPerRegion];
+            return (region.getInt((ordinal % recordsPerRegion) * recordSize + FLAGS) & FLAG_DELETED) != 0;
+        }
+        
+        void markDeleted(int ordinal) {
+            MappedByteBuffer region = regions[ordinal / recordsPerRegion];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            region.putInt(base + FLAGS, region.getInt(base + FLAGS) | FLAG_DELETED);
+            if (quantized != null) {
+                quantized.markDeleted(ordinal, FLAG_DELETED);
+            }
+        }
+        
+        void release() {
+            if (users.decrementAndGet() == 0 && retired) {
+                closeReplaced();
+            }
+        }
+        
+        /**
+         * Stop handing out this generation and close it once nothing uses it any more.
+         */
+        void retire() {
+            retired = true;
+            if (users.get() == 0) {
+                closeReplaced();
+            }
+        }
+        
+        private void closeReplaced() {
+            try {
+                close(false);
+            } catch (IOException e) {
+                LOG.warn("Failed to close replaced files of vector store at {}: {}", directory, e.getMessage());
+            }
+        }
+        
+        /**
+         * Close the files, first flushing them and saving the graph when they are still the store's files.
+         */
+        void close(boolean persist) throws IOException {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (persist) {
+                if (index != null) {
+                    index.save(directory.resolve(GRAPH_FILE));
+                }
+                for (MappedByteBuffer region : regions) {
+                    region.force();
+                }
+                header.force();
+            }
+            if (quantized != null) {
+                quantized.close();
+            }
+            partitions.close();
+            if (persist) {
+                segmentChannel.force(false);
+            }
+            segmentChannel.close();
+            vectorChannel.close();
+        }
+        
+        void writeRecord(int ordinal, long segmentOffset, int segmentLength, int idHash, float[] vector) {
+            int regionIndex = ordinal / recordsPerRegion;
+            MappedByteBuffer[] mapped = regions;
+            if (regionIndex >= mapped.length) {
+                mapped = Arrays.copyOf(mapped, regionIndex + 1);
+                mapped[regionIndex] = mapRegion(regionIndex);
+                regions = mapped;
+            }
+            
+            MappedByteBuffer region = mapped[regionIndex];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            region.putLong(base + SEGMENT_OFFSET, segmentOffset);
+            region.putInt(base + SEGMENT_LENGTH, segmentLength);
+            region.putInt(base + FLAGS, 0);
+            region.putFloat(base + NORM, norm(vector));
+            region.putInt(base + ID_HASH, idHash);
+            int vectorBase = base + RECORD_HEADER_SIZE;
+            for (int i = 0; i < vector.length; i++) {
+                region.putFloat(vectorBase + i * Float.BYTES, vector[i]);
+            }
+        }
+        
+        Entry readEntry(MappedByteBuffer region, int base) {
+            long offset = region.getLong(base + SEGMENT_OFFSET);
+            int length = region.getInt(base + SEGMENT_LENGTH);
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (segmentChannel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of segment log at offset " + offset);
+                    }
+                }
+                return decodeEntry(buffer.array());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read segment at offset " + offset, e);
+            }
+        }
+        
+        private MappedByteBuffer mapRegion(int regionIndex) {
+            try {
+                long position = FILE_HEADER_SIZE + (long) regionIndex * recordsPerRegion * recordSize;
+                MappedByteBuffer region = vectorChannel.map(FileChannel.MapMode.READ_WRITE, position,
+                        (long) recordsPerRegion * recordSize);
+                region.order(ByteOrder.LITTLE_ENDIAN);
+                return region;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map vector region " + regionIndex, e);
+            }
+        }
+    }
+
+}
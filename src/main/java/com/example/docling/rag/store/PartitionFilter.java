@@ -0,0 +1,89 @@
+package com.example.docling.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Search filter on the partition of a chunk: its {@code source} document, matched exactly or by
+ * prefix, and the {@code tags} supplied when the document was ingested, all of which must be present.
+ * <p>
+ * Stores with a {@link PartitionIndex} answer it from their postings and only score the matching
+ * vectors; other stores test it against the metadata of each candidate like any {@link Filter}.
+ *
+ * @param source       exact source document, or {@code null}
+ * @param sourcePrefix prefix of the source document, or {@code null}
+ * @param tags         tags the chunk must carry, empty for any
+ */
+public record PartitionFilter(String source, String sourcePrefix, Set<String> tags) implements Filter {
+    
+    /**
+     * Metadata key of the chunk source document.
+     */
+    public static final String SOURCE = "source";
+    
+    /**
+     * Metadata key of the comma-separated chunk tags.
+     */
+    public static final String TAGS = "tags";
+    
+    public PartitionFilter {
+        tags = tags == null ? Set.of() : Set.copyOf(tags);
+    }
+    
+    /**
+     * Build a filter from optional request values, or return {@code null} when none is set.
+     * Tags may be given as a collection or a comma-separated string.
+     */
+    public static PartitionFilter of(String source, String sourcePrefix, Object tags) {
+        Set<String> tagSet = parseTags(tags);
+        source = source == null || source.isBlank() ? null : source.strip();
+        sourcePrefix = sourcePrefix == null || sourcePrefix.isEmpty() ? null : sourcePrefix;
+        if (source == null && sourcePrefix == null && tagSet.isEmpty()) {
+            return null;
+        }
+        return new PartitionFilter(source, sourcePrefix, tagSet);
+    }
+    
+    /**
+     * Normalize tags given as a collection or a comma-separated string: trimmed, without empty values, sorted.
+     */
+    public static Set<String> parseTags(Object tags) {
+        if (tags == null) {
+            return Set.of();
+        }
+        Collection<?> values = tags instanceof Collection<?> collection
+                ? collection
+                : Arrays.asList(tags.toString().split(","));
+        return values.stream()
+                .map(value -> String.valueOf(value).strip())
+                .filter(value -> !value.isEmpty())
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+    
+    /**
+     * Whether a chunk of the given source with the given tags matches.
+     */
+    public boolean matches(String chunkSource, Set<String> chunkTags) {
+        if (source != null && !source.equals(chunkSource)) {
+            return false;
+        }
+        if (sourcePrefix != null && (chunkSource == null || !chunkSource.startsWith(sourcePrefix))) {
+            return false;
+        }
+        return chunkTags.containsAll(tags);
+    }
+    
+    @Override
+    public boolean test(Object object) {
+        if (!(object instanceof Metadata metadata)) {
+            return false;
+        }
+        return matches(metadata.getString(SOURCE), parseTags(metadata.getString(TAGS)));
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.docling.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Metadata;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Postings of vector ordinals by partition, where a partition is the set of chunks that share a
+ * source document and tags. A filtered search asks for the ordinals of the partitions matching a
+ * {@link PartitionFilter} and only scores those, instead of scanning every vector and testing its metadata.
+ * <p>
+ * Ordinals must be added in increasing order, so every posting list stays sorted. Removed vectors stay
+ * in their postings and are skipped by the store like in a full scan.
+ * <p>
+ * A persistent index keeps two files next to the store: {@code partitions.dat} with the partition id of
+ * every ordinal as a 4-byte integer, and {@code partitions.log} with one JSON line per partition.
+ */
+public class PartitionIndex implements Closeable {
+    
+    static final String ORDINALS_FILE = "partitions.dat";
+    static final String PARTITIONS_FILE = "partitions.log";
+    
+    private static final int NO_PARTITION = -1;
+    private static final int SELECTIVE_RATIO = 10;
+    
+    private final FileChannel ordinalsChannel;
+    private final Path partitionsFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private final List<Partition> partitions = new ArrayList<>();
+    private final Map<PartitionKey, Partition> partitionsByKey = new HashMap<>();
+    private final TreeMap<String, List<Partition>> partitionsBySource = new TreeMap<>();
+    private volatile int[] partitionOf = new int[1024];
+    private int size;
+    
+    private PartitionIndex(FileChannel ordinalsChannel, Path partitionsFile) {
+        this.ordinalsChannel = ordinalsChannel;
+        this.partitionsFile = partitionsFile;
+    }
+    
+    /**
+     * Create an index that only lives as long as its store.
+     */
+    public static PartitionIndex inMemory() {
+        return new PartitionIndex(null, null);
+    }
+    
+    /**
+     * Open the index of a persistent store holding {@code storeSize} vectors. Ordinals the files do not
+     * cover yet, such as those of a store created before the index existed, are added from the metadata
+     * returned by {@code metadataOf}.
+     */
+    public static PartitionIndex open(Path directory, int storeSize, IntFunction<Metadata> metadataOf) {
+        try {
+            FileChannel channel = FileChannel.open(directory.resolve(ORDINALS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            PartitionIndex index = new PartitionIndex(channel, directory.resolve(PARTITIONS_FILE));
+            index.load(storeSize);
+            for (int ordinal = index.size; ordinal < storeSize; ordinal++) {
+                index.addAll(ordinal, List.of(metadataOf.apply(ordinal)));
+            }
+            return index;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open partition index in " + directory, e);
+        }
+    }
+    
+    /**
+     * Record the partitions of the vectors stored at {@code first}, {@code first + 1}, ...
+     * A {@code null} metadata places the vector in no partition.
+     */
+    public synchronized void addAll(int first, List<Metadata> metadata) {
+        if (first != size) {
+            throw new IllegalStateException("Expected ordinal " + size + " but got " + first);
+        }
+        ensureCapacity(first + metadata.size());
+        ByteBuffer ids = ByteBuffer.allocate(metadata.size() * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < metadata.size(); i++) {
+            Partition partition = metadata.get(i) != null ? partitionFor(metadata.get(i)) : null;
+            int ordinal = first + i;
+            if (partition != null) {
+                partition.add(ordinal);
+            }
+            int id = partition != null ? partition.id : NO_PARTITION;
+            partitionOf[ordinal] = id;
+            ids.putInt(id);
+        }
+        size = first + metadata.size();
+        if (ordinalsChannel != null) {
+            ids.flip();
+            write(ids, (long) first * Integer.BYTES);
+        }
+    }
+    
+    /**
+     * Ordinals of the vectors in partitions matching the filter, in increasing order.
+     */
+    public synchronized int[] select(PartitionFilter filter) {
+        List<Partition> matching = matchingPartitions(filter);
+        int total = 0;
+        for (Partition partition : matching) {
+            total += partition.size;
+        }
+        int[] ordinals = new int[total];
+        int offset = 0;
+        for (Partition partition : matching) {
+            System.arraycopy(partition.ordinals, 0, ordinals, offset, partition.size);
+            offset += partition.size;
+        }
+        if (matching.size() > 1) {
+            Arrays.sort(ordinals);
+        }
+        return ordinals;
+    }
+    
+    /**
+     * Membership test for the partitions matching the filter, for searches that visit ordinals in
+     * another order, such as an HNSW graph walk.
+     */
+    public synchronized IntPredicate matcher(PartitionFilter filter) {
+        boolean[] matching = new boolean[partitions.size()];
+        matchingPartitions(filter).forEach(partition -> matching[partition.id] = true);
+        return ordinal -> {
+            int[] ids = partitionOf;
+            int id = ordinal < ids.length ? ids[ordinal] : NO_PARTITION;
+            return id >= 0 && id < matching.length && matching[id];
+        };
+    }
+    
+    /**
+     * Whether a filter matching {@code matching} of {@code storeSize} vectors is selective enough that an
+     * exact scan of its postings beats a filtered graph walk, which degrades when most visited nodes are rejected.
+     */
+    public static boolean isSelective(int matching, int storeSize) {
+        return (long) matching * SELECTIVE_RATIO <= storeSize;
+    }
+    
+    public synchronized int partitionCount() {
+        return partitions.size();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (ordinalsChannel != null) {
+            ordinalsChannel.close();
+        }
+    }
+    
+    private List<Partition> matchingPartitions(PartitionFilter filter) {
+        List<Partition> candidates;
+        if (filter.source() != null) {
+            candidates = partitionsBySource.getOrDefault(filter.source(), List.of());
+        } else if (filter.sourcePrefix() != null) {
+            candidates = new ArrayList<>();
+            for (Map.Entry<String, List<Partition>> entry : partitionsBySource.tailMap(filter.sourcePrefix()).entrySet()) {
+                if (!entry.getKey().startsWith(filter.sourcePrefix())) {
+                    break;
+                }
+                candidates.addAll(entry.getValue());
+            }
+        } else {
+            candidates = partitions;
+        }
+        
+        List<Partition> matching = new ArrayList<>();
+        for (Partition partition : candidates) {
+            if (filter.matches(partition.key.source(), partition.key.tags())) {
+                matching.add(partition);
+            }
+        }
+        return matching;
+    }
+    
+    private Partition partitionFor(Metadata metadata) {
+        PartitionKey key = new PartitionKey(metadata.getString(PartitionFilter.SOURCE),
+                PartitionFilter.parseTags(metadata.getString(PartitionFilter.TAGS)));
+        Partition partition = partitionsByKey.get(key);
+        if (partition == null) {
+            partition = register(new Partition(partitions.size(), key));
+            appendPartition(partition);
+        }
+        return partition;
+    }
+    
+    private Partition register(Partition partition) {
+        partitions.add(partition);
+        partitionsByKey.put(partition.key, partition);
+        if (partition.key.source() != null) {
+            partitionsBySource.computeIfAbsent(partition.key.source(), source -> new ArrayList<>()).add(partition);
+        }
+        return partition;
+    }
+    
+    /**
+     * Read the partitions and the partition ids of the first {@code storeSize} ordinals. Ids written
+     * for ordinals the store never published are ignored and overwritten by the next add.
+     */
+    private void load(int storeSize) throws IOException {
+        if (Files.exists(partitionsFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(partitionsFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    PartitionEntry entry = objectMapper.readValue(line, PartitionEntry.class);
+                    if (entry.id() != partitions.size()) {
+                        throw new IllegalStateException("Corrupt partition log " + partitionsFile + " at id " + entry.id());
+                    }
+                    register(new Partition(entry.id(), new PartitionKey(entry.source(), Set.copyOf(entry.tags()))));
+                }
+            }
+        }
+        
+        int stored = (int) Math.min(storeSize, ordinalsChannel.size() / Integer.BYTES);
+        ensureCapacity(stored);
+        ByteBuffer ids = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        int ordinal = 0;
+        long position = 0;
+        while (ordinal < stored) {
+            ids.clear();
+            ids.limit(Math.min(ids.capacity(), (stored - ordinal) * Integer.BYTES));
+            while (ids.hasRemaining()) {
+                int read = ordinalsChannel.read(ids, position + ids.position());
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + ORDINALS_FILE);
+                }
+            }
+            position += ids.limit();
+            ids.flip();
+            while (ids.hasRemaining()) {
+                int id = ids.getInt();
+                if (id >= partitions.size()) {
+                    throw new IllegalStateException("Unknown partition " + id + " for ordinal " + ordinal);
+                }
+                partitionOf[ordinal] = id;
+                if (id != NO_PARTITION) {
+                    partitions.get(id).add(ordinal);
+                }
+                ordinal++;
+            }
+        }
+        size = stored;
+    }
+    
+    private void appendPartition(Partition partition) {
+        if (partitionsFile == null) {
+            return;
+        }
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("id", partition.id);
+        entry.put("source", partition.key.source());
+        entry.put("tags", partition.key.tags());
+        try (BufferedWriter writer = Files.newBufferedWriter(partitionsFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(objectMapper.writeValueAsString(entry));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to " + partitionsFile, e);
+        }
+    }
+    
+    private void write(ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                position += ordinalsChannel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + ORDINALS_FILE, e);
+        }
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity > partitionOf.length) {
+            partitionOf = Arrays.copyOf(partitionOf, Math.max(capacity, partitionOf.length * 2));
+        }
+    }
+    
+    private record PartitionKey(String source, Set<String> tags) {
+    }
+    
+    private record PartitionEntry(int id, String source, List<String> tags) {
+    }
+    
+    /**
+     * A partition and its sorted posting list.
+     */
+    private static final class Partition {
+        
+        private final int id;
+        private final PartitionKey key;
+        private int[] ordinals = new int[16];
+        private int size;
+        
+        Partition(int id, PartitionKey key) {
+            this.id = id;
+            this.key = key;
+        }
+        
+        void add(int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.docling.rag.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compact copy of the vectors of a {@link MappedEmbeddingStore}, used for the first pass of a search.
+ * <p>
+ * Every vector is stored as one fixed-size record in a memory-mapped file next to the full-precision
+ * vectors: a flags word, the norm of the original vector and the encoded components. With
+ * {@link Encoding#INT8} each component is a signed byte scaled by a per-vector factor (max |v| / 127),
+ * about a quarter of the float record; with {@link Encoding#FLOAT16} each component is a half-precision
+ * float, about half. Scores computed from the codes approximate the cosine similarity closely enough
+ * to select candidates, which the store then rescores from the full-precision vectors.
+ */
+public class QuantizedVectors implements Closeable {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(QuantizedVectors.class);
+    
+    private static final int MAGIC = 0x44525651; // "DRVQ"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int ENCODING_OFFSET = 8;
+    private static final int DIMENSION_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+    
+    private static final int FLAGS = 0;
+    private static final int NORM = 4;
+    private static final int SCALE = 8;
+    private static final long REGION_TARGET_BYTES = 16L * 1024 * 1024;
+    
+    /**
+     * How each vector component is encoded.
+     */
+    public enum Encoding {
+        INT8(Byte.BYTES, "vectors.int8"),
+        FLOAT16(Short.BYTES, "vectors.f16");
+        
+        private final int bytesPerComponent;
+        private final String fileName;
+        
+        Encoding(int bytesPerComponent, String fileName) {
+            this.bytesPerComponent = bytesPerComponent;
+            this.fileName = fileName;
+        }
+        
+        public String fileName() {
+            return fileName;
+        }
+        
+        /**
+         * Parse a property value such as {@code int8} or {@code float16}.
+         */
+        public static Encoding parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown vector quantization: " + value);
+            }
+        }
+    }
+    
+    /**
+     * Quantization settings: the encoding and how many candidates per requested result are rescored
+     * at full precision.
+     */
+    public record Parameters(Encoding encoding, int rescoreFactor) {
+        
+        public Parameters {
+            if (encoding == null || rescoreFactor < 1) {
+                throw new IllegalArgumentException("Invalid quantization parameters: encoding=" + encoding
+                        + ", rescoreFactor=" + rescoreFactor);
+            }
+        }
+    }
+    
+    private final Path file;
+    private final Parameters parameters;
+    private final int dimension;
+    private final int codesOffset;
+    private final int recordSize;
+    private final int recordsPerRegion;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    
+    private volatile MappedByteBuffer[] regions;
+    private volatile int count;
+    
+    private QuantizedVectors(Path file, Parameters parameters, int dimension, FileChannel channel,
+                             MappedByteBuffer header, int count) {
+        this.file = file;
+        this.parameters = parameters;
+        this.dimension = dimension;
+        this.codesOffset = parameters.encoding() == Encoding.INT8 ? SCALE + Float.BYTES : SCALE;
+        // Records stay 4-byte aligned so the float fields never straddle a word
+        this.recordSize = (codesOffset + dimension * parameters.encoding().bytesPerComponent + 3) & ~3;
+        this.recordsPerRegion = (int) Math.max(1, REGION_TARGET_BYTES / recordSize);
+        this.channel = channel;
+        this.header = header;
+        this.count = count;
+        
+        int regionCount = (count + recordsPerRegion - 1) / recordsPerRegion;
+        MappedByteBuffer[] mapped = new MappedByteBuffer[regionCount];
+        for (int i = 0; i < regionCount; i++) {
+            mapped[i] = mapRegion(i);
+        }
+        this.regions = mapped;
+    }
+    
+    /**
+     * Open the quantized vectors in the given directory. A file written with a different encoding or
+     * dimension is discarded, so the caller has to re-encode everything from {@link #size()} on.
+     */
+    static QuantizedVectors open(Path directory, int dimension, Parameters parameters) {
+        Path file = directory.resolve(parameters.encoding().fileName());
+        try {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            
+            boolean valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getInt(ENCODING_OFFSET) == parameters.encoding().ordinal()
+                    && header.getInt(DIMENSION_OFFSET) == dimension;
+            if (!valid) {
+                if (channel.size() > FILE_HEADER_SIZE) {
+                    LOG.warn("Discarding quantized vectors in {} written with different settings", file);
+                    channel.truncate(FILE_HEADER_SIZE);
+                }
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putInt(ENCODING_OFFSET, parameters.encoding().ordinal());
+                header.putInt(DIMENSION_OFFSET, dimension);
+                header.putLong(COUNT_OFFSET, 0L);
+            }
+            return new QuantizedVectors(file, parameters, dimension, channel, header,
+                    (int) header.getLong(COUNT_OFFSET));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open quantized vectors at " + file, e);
+        }
+    }
+    
+    public Parameters parameters() {
+        return parameters;
+    }
+    
+    /**
+     * Number of encoded vectors.
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Size of one encoded record in bytes.
+     */
+    public int recordSize() {
+        return recordSize;
+    }
+    
+    /**
+     * Encode the vector at the given ordinal. Ordinals must be written in order; the caller publishes
+     * them with {@link #setSize(int)}.
+     */
+    void write(int ordinal, float[] vector, float norm, int flags) {
+        int regionIndex = ordinal / recordsPerRegion;
+        MappedByteBuffer[] current = regions;
+        if (regionIndex >= current.length) {
+            current = Arrays.copyOf(current, regionIndex + 1);
+            current[regionIndex] = mapRegion(regionIndex);
+            regions = current;
+        }
+        
+        MappedByteBuffer region = current[regionIndex];
+        int base = (ordinal % recordsPerRegion) * recordSize;
+        region.putInt(base + FLAGS, flags);
+        region.putFloat(base + NORM, norm);
+        int codesBase = base + codesOffset;
+        if (parameters.encoding() == Encoding.INT8) {
+            float max = 0f;
+            for (float value : vector) {
+                max = Math.max(max, Math.abs(value));
+            }
+            float scale = max == 0f ? 1f : max / 127f;
+            region.putFloat(base + SCALE, scale);
+            for (int i = 0; i < vector.length; i++) {
+                region.put(codesBase + i, (byte) Math.round(vector[i] / scale));
+            }
+        } else {
+            for (int i = 0; i < vector.length; i++) {
+                region.putShort(codesBase + i * Short.BYTES, Float.floatToFloat16(vector[i]));
+            }
+        }
+    }
+    
+    void setSize(int size) {
+        header.putLong(COUNT_OFFSET, size);
+        count = size;
+    }
+    
+    void markDeleted(int ordinal, int flag) {
+        if (ordinal < count) {
+            MappedByteBuffer region = regions[ordinal / recordsPerRegion];
+            int base = (ordinal % recordsPerRegion) * recordSize;
+            region.putInt(base + FLAGS, region.getInt(base + FLAGS) | flag);
+        }
+    }
+    
+    boolean isFlagged(MappedByteBuffer[] snapshot, int ordinal, int flag) {
+        MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+        return (region.getInt((ordinal % recordsPerRegion) * recordSize + FLAGS) & flag) != 0;
+    }
+    
+    /**
+     * Snapshot of the mapped regions for a search; records below the current size are all mapped.
+     */
+    MappedByteBuffer[] regions() {
+        return regions;
+    }
+    
+    /**
+     * Approximate cosine similarity between the query and the encoded vector.
+     */
+    double cosine(MappedByteBuffer[] snapshot, int ordinal, float[] query, float queryNorm) {
+        MappedByteBuffer region = snapshot[ordinal / recordsPerRegion];
+        int base = (ordinal % recordsPerRegion) * recordSize;
+        float norm = region.getFloat(base + NORM);
+        if (norm == 0f || queryNorm == 0f) {
+            return 0.0;
+        }
+        int codesBase = base + codesOffset;
+        float dot = 0f;
+        if (parameters.encoding() == Encoding.INT8) {
+            for (int i = 0; i < dimension; i++) {
+                dot += query[i] * region.get(codesBase + i);
+            }
+            dot *= region.getFloat(base + SCALE);
+        } else {
+            for (int i = 0; i < dimension; i++) {
+                dot += query[i] * Float.float16ToFloat(region.getShort(codesBase + i * Short.BYTES));
+            }
+        }
+        return dot / (queryNorm * norm);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+        header.force();
+        channel.close();
+    }
+    
+    private MappedByteBuffer mapRegion(int regionIndex) {
+        try {
+            long position = FILE_HEADER_SIZE + (long) regionIndex * recordsPerRegion * recordSize;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                    (long) recordsPerRegion * recordSize);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            return region;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map quantized region " + regionIndex + " of " + file, e);
+        }
+    }
+}
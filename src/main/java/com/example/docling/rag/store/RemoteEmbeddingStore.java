@@ -0,0 +1,132 @@
+package com.example.docling.rag.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Embedding store on another node, reached over HTTP with the {@link ShardProtocol}.
+ * The node serves its own store under {@code <baseUri>/search}, {@code /add} and {@code /remove}.
+ * <p>
+ * Every request is bounded by {@code requestTimeout}; searches are usually cut shorter by the
+ * {@link ShardedEmbeddingStore} they belong to.
+ */
+public class RemoteEmbeddingStore implements EmbeddingStore<TextSegment> {
+    
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() { };
+    
+    private final URI baseUri;
+    private final Duration requestTimeout;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /**
+     * @param baseUri URI of the shard API, such as {@code http://node2:8080/api/shard}
+     */
+    public RemoteEmbeddingStore(URI baseUri, Duration requestTimeout) {
+        this.baseUri = baseUri;
+        this.requestTimeout = requestTimeout;
+        this.client = HttpClient.newBuilder().connectTimeout(requestTimeout).build();
+    }
+    
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+    
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+    
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(textSegment));
+        return id;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+    
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || (textSegments != null && textSegments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and text segments must have the same size");
+        }
+        post("add", ShardProtocol.encodeAdd(ids, embeddings, textSegments));
+    }
+    
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return ShardProtocol.decodeResult(post("search", ShardProtocol.encodeSearch(request)));
+    }
+    
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+    
+    @Override
+    public void removeAll(Collection<String> ids) {
+        post("remove", ShardProtocol.encodeRemove(ids));
+    }
+    
+    private Map<String, Object> post(String operation, Map<String, Object> body) {
+        URI uri = URI.create(baseUri.toString().replaceAll("/+$", "") + "/" + operation);
+        try {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Shard " + uri + " answered " + response.statusCode() + ": "
+                        + new String(response.body()));
+            }
+            return objectMapper.readValue(response.body(), JSON_OBJECT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard request to " + uri + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while calling shard " + uri, e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return baseUri.toString();
+    }
+}
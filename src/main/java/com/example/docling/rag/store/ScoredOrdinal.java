@@ -0,0 +1,12 @@
+package com.example.docling.rag.store;
+
+/**
+ * A vector ordinal paired with its score, ordered by ascending score.
+ */
+public record ScoredOrdinal(int ordinal, double score) implements Comparable<ScoredOrdinal> {
+    
+    @Override
+    public int compareTo(ScoredOrdinal other) {
+        return Double.compare(score, other.score);
+    }
+}
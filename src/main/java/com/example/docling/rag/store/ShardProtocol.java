@@ -0,0 +1,170 @@
+package com.example.docling.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON messages between a {@link RemoteEmbeddingStore} and the node serving the shard.
+ * <p>
+ * Vectors travel as base64 of their little-endian floats, which is exact and about a third of the size of
+ * a JSON number array. Search matches carry the id, score and text segment but not the vector, which
+ * scatter-gather searches never read. Only {@link PartitionFilter} filters can be sent.
+ */
+public final class ShardProtocol {
+    
+    /**
+     * Path under which a node serves its store: {@code /search}, {@code /add} and {@code /remove}.
+     */
+    public static final String BASE_PATH = "/api/shard";
+    
+    private ShardProtocol() {
+    }
+    
+    public static Map<String, Object> encodeSearch(EmbeddingSearchRequest request) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("vector", encodeVector(request.queryEmbedding().vector()));
+        body.put("maxResults", request.maxResults());
+        body.put("minScore", request.minScore());
+        if (request.filter() instanceof PartitionFilter filter) {
+            Map<String, Object> encoded = new LinkedHashMap<>();
+            encoded.put("source", filter.source());
+            encoded.put("sourcePrefix", filter.sourcePrefix());
+            encoded.put("tags", filter.tags());
+            body.put("filter", encoded);
+        } else if (request.filter() != null) {
+            throw new IllegalArgumentException("Remote shards only support a PartitionFilter, got "
+                    + request.filter().getClass().getSimpleName());
+        }
+        return body;
+    }
+    
+    public static EmbeddingSearchRequest decodeSearch(Map<String, Object> body) {
+        PartitionFilter filter = null;
+        if (body.get("filter") instanceof Map<?, ?> encoded) {
+            filter = PartitionFilter.of((String) encoded.get("source"), (String) encoded.get("sourcePrefix"),
+                    encoded.get("tags"));
+        }
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(decodeVector((String) body.get("vector"))))
+                .maxResults(((Number) body.get("maxResults")).intValue())
+                .minScore(((Number) body.get("minScore")).doubleValue())
+                .filter(filter)
+                .build();
+    }
+    
+    public static Map<String, Object> encodeResult(EmbeddingSearchResult<TextSegment> result) {
+        List<Map<String, Object>> matches = new ArrayList<>(result.matches().size());
+        for (EmbeddingMatch<TextSegment> match : result.matches()) {
+            Map<String, Object> encoded = new LinkedHashMap<>();
+            encoded.put("id", match.embeddingId());
+            encoded.put("score", match.score());
+            encoded.put("segment", encodeSegment(match.embedded()));
+            matches.add(encoded);
+        }
+        return Map.of("matches", matches);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public static EmbeddingSearchResult<TextSegment> decodeResult(Map<String, Object> body) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (Map<String, Object> match : (List<Map<String, Object>>) body.get("matches")) {
+            matches.add(new EmbeddingMatch<>(((Number) match.get("score")).doubleValue(), (String) match.get("id"),
+                    null, decodeSegment((Map<String, Object>) match.get("segment"))));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+    
+    public static Map<String, Object> encodeAdd(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        List<String> vectors = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            vectors.add(encodeVector(embedding.vector()));
+        }
+        List<Map<String, Object>> encodedSegments = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            encodedSegments.add(segments != null ? encodeSegment(segments.get(i)) : null);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ids", ids);
+        body.put("vectors", vectors);
+        body.put("segments", encodedSegments);
+        return body;
+    }
+    
+    /**
+     * Apply an add request to the served store.
+     */
+    @SuppressWarnings("unchecked")
+    public static void applyAdd(EmbeddingStore<TextSegment> store, Map<String, Object> body) {
+        List<String> ids = (List<String>) body.get("ids");
+        List<Embedding> embeddings = new ArrayList<>(ids.size());
+        for (String vector : (List<String>) body.get("vectors")) {
+            embeddings.add(Embedding.from(decodeVector(vector)));
+        }
+        List<TextSegment> segments = new ArrayList<>(ids.size());
+        for (Map<String, Object> segment : (List<Map<String, Object>>) body.get("segments")) {
+            segments.add(decodeSegment(segment));
+        }
+        store.addAll(ids, embeddings, segments);
+    }
+    
+    public static Map<String, Object> encodeRemove(Collection<String> ids) {
+        return Map.of("ids", List.copyOf(ids));
+    }
+    
+    /**
+     * Apply a remove request to the served store.
+     */
+    @SuppressWarnings("unchecked")
+    public static void applyRemove(EmbeddingStore<TextSegment> store, Map<String, Object> body) {
+        List<String> ids = (List<String>) body.get("ids");
+        if (!ids.isEmpty()) {
+            store.removeAll(ids);
+        }
+    }
+    
+    private static Map<String, Object> encodeSegment(TextSegment segment) {
+        if (segment == null) {
+            return null;
+        }
+        Map<String, Object> encoded = new LinkedHashMap<>();
+        encoded.put("text", segment.text());
+        encoded.put("metadata", segment.metadata().toMap());
+        return encoded;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static TextSegment decodeSegment(Map<String, Object> encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        Map<String, Object> metadata = (Map<String, Object>) encoded.getOrDefault("metadata", Map.of());
+        return TextSegment.from((String) encoded.get("text"), Metadata.from(metadata));
+    }
+    
+    static String encodeVector(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+    
+    static float[] decodeVector(String encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+}
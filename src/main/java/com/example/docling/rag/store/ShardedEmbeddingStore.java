@@ -0,0 +1,392 @@
+package com.example.docling.rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedding store split into shards, each an {@link EmbeddingStore} of its own: in this JVM or on
+ * another node behind a {@link RemoteEmbeddingStore}.
+ * <p>
+ * Chunks are routed to a shard by the hash of their {@code source} document, so all chunks of a
+ * document live on one shard and a search filtered on an exact source only asks that shard. Other
+ * searches are scattered to every shard in parallel and the per-shard top-k lists merged by score.
+ * A shard that does not answer within {@code searchTimeout}, or fails, is left out of the merge: the
+ * search returns the best matches of the remaining shards as a {@link Result} that is not
+ * {@linkplain Result#isComplete() complete}, and only fails if no shard answered.
+ * <p>
+ * Writes wait for every shard involved and fail if any of them fails.
+ */
+public class ShardedEmbeddingStore implements EmbeddingStore<TextSegment>, CompactableStore, Closeable {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedEmbeddingStore.class);
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+    
+    /**
+     * Search result of a scatter-gather search, telling how many of the shards asked contributed to it.
+     */
+    public static class Result extends EmbeddingSearchResult<TextSegment> {
+        
+        private final int shardsAsked;
+        private final int shardsAnswered;
+        
+        Result(List<EmbeddingMatch<TextSegment>> matches, int shardsAsked, int shardsAnswered) {
+            super(matches);
+            this.shardsAsked = shardsAsked;
+            this.shardsAnswered = shardsAnswered;
+        }
+        
+        public int shardsAsked() {
+            return shardsAsked;
+        }
+        
+        public int shardsAnswered() {
+            return shardsAnswered;
+        }
+        
+        public boolean isComplete() {
+            return shardsAnswered == shardsAsked;
+        }
+    }
+    
+    private final List<EmbeddingStore<TextSegment>> shards;
+    private final Duration searchTimeout;
+    private final Path directory;
+    private final ExecutorService executor;
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong partialSearches = new AtomicLong();
+    
+    /**
+     * @param directory directory of the local shards and the ingestion manifest, or {@code null} if they
+     *                  are not persistent
+     */
+    public ShardedEmbeddingStore(List<EmbeddingStore<TextSegment>> shards, Duration searchTimeout, Path directory) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A sharded store needs at least one shard");
+        }
+        this.shards = List.copyOf(shards);
+        this.searchTimeout = searchTimeout;
+        this.directory = directory;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("shard-", 0).factory());
+    }
+    
+    /**
+     * Shard holding the chunks of a source document.
+     */
+    public int shardOf(String source) {
+        return Math.floorMod(source.hashCode(), shards.size());
+    }
+    
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+    
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+    
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(textSegment));
+        return id;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+    
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+    
+    /**
+     * Add the embeddings to the shards of their source documents, in parallel. Segments without a source
+     * are placed by the hash of their id.
+     */
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || (textSegments != null && textSegments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and text segments must have the same size");
+        }
+        Map<Integer, List<Integer>> positionsByShard = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            TextSegment segment = textSegments != null ? textSegments.get(i) : null;
+            String source = segment != null ? segment.metadata().getString(PartitionFilter.SOURCE) : null;
+            positionsByShard.computeIfAbsent(shardOf(source != null ? source : ids.get(i)), shard -> new ArrayList<>())
+                    .add(i);
+        }
+        
+        List<Future<?>> writes = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : positionsByShard.entrySet()) {
+            List<Integer> positions = entry.getValue();
+            List<String> shardIds = new ArrayList<>(positions.size());
+            List<Embedding> shardEmbeddings = new ArrayList<>(positions.size());
+            List<TextSegment> shardSegments = textSegments != null ? new ArrayList<>(positions.size()) : null;
+            for (int position : positions) {
+                shardIds.add(ids.get(position));
+                shardEmbeddings.add(embeddings.get(position));
+                if (shardSegments != null) {
+                    shardSegments.add(textSegments.get(position));
+                }
+            }
+            EmbeddingStore<TextSegment> shard = shards.get(entry.getKey());
+            writes.add(executor.submit(() -> shard.addAll(shardIds, shardEmbeddings, shardSegments)));
+        }
+        awaitAll(writes, "add");
+    }
+    
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        List<Integer> asked = new ArrayList<>();
+        if (request.filter() instanceof PartitionFilter filter && filter.source() != null) {
+            asked.add(shardOf(filter.source()));
+        } else {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                asked.add(shard);
+            }
+        }
+        
+        List<Future<EmbeddingSearchResult<TextSegment>>> searches = new ArrayList<>(asked.size());
+        for (int shard : asked) {
+            EmbeddingStore<TextSegment> store = shards.get(shard);
+            searches.add(executor.submit(() -> store.search(request)));
+        }
+        
+        long deadline = System.nanoTime() + searchTimeout.toNanos();
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        int answered = 0;
+        RuntimeException lastFailure = null;
+        for (int i = 0; i < searches.size(); i++) {
+            Future<EmbeddingSearchResult<TextSegment>> search = searches.get(i);
+            EmbeddingStore<TextSegment> shard = shards.get(asked.get(i));
+            try {
+                matches.addAll(search.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS).matches());
+                answered++;
+            } catch (TimeoutException e) {
+                // Left to finish on its own: interrupting a local shard closes the file channels it reads
+                search.cancel(false);
+                timeouts.incrementAndGet();
+                LOG.warn("Shard {} ({}) did not answer within {} ms, searching without it", asked.get(i), shard,
+                        searchTimeout.toMillis());
+            } catch (ExecutionException e) {
+                failures.incrementAndGet();
+                lastFailure = e.getCause() instanceof RuntimeException cause ? cause : new CompletionException(e.getCause());
+                LOG.warn("Shard {} ({}) failed, searching without it: {}", asked.get(i), shard, e.getCause().toString());
+            } catch (InterruptedException e) {
+                searches.forEach(pending -> pending.cancel(false));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while searching shards", e);
+            }
+        }
+        
+        if (answered == 0) {
+            throw new IllegalStateException("No shard answered the search (" + asked.size() + " asked)", lastFailure);
+        }
+        if (answered < asked.size()) {
+            partialSearches.incrementAndGet();
+        }
+        matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+        return new Result(matches.size() > request.maxResults()
+                ? new ArrayList<>(matches.subList(0, request.maxResults()))
+                : matches, asked.size(), answered);
+    }
+    
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+    
+    /**
+     * Remove chunks of one source document from the shard that holds them.
+     */
+    public void removeAll(String source, Collection<String> ids) {
+        shards.get(shardOf(source)).removeAll(ids);
+    }
+    
+    /**
+     * Remove the ids from every shard, since an id does not tell which shard holds it. Callers that know
+     * the source document of the ids use {@link #removeAll(String, Collection)} instead.
+     */
+    @Override
+    public void removeAll(Collection<String> ids) {
+        List<Future<?>> removals = new ArrayList<>(shards.size());
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            removals.add(executor.submit(() -> shard.removeAll(ids)));
+        }
+        awaitAll(removals, "remove");
+    }
+    
+    public int shardCount() {
+        return shards.size();
+    }
+    
+    /**
+     * Directory of the local shards and the ingestion manifest, or {@code null} if they are not persistent.
+     */
+    public Path directory() {
+        return directory;
+    }
+    
+    /**
+     * Number of live vectors in the shards of this JVM; remote shards are not counted.
+     */
+    public int localLiveSize() {
+        int size = 0;
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            if (shard instanceof MappedEmbeddingStore mapped) {
+                size += mapped.liveSize();
+            } else if (shard instanceof FlatEmbeddingStore flat) {
+                size += flat.size();
+            } else if (shard instanceof HnswEmbeddingStore hnsw) {
+                size += hnsw.size();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Number of records in the compactable shards of this JVM, including deleted records.
+     */
+    @Override
+    public int size() {
+        return localShards().stream().mapToInt(CompactableStore::size).sum();
+    }
+    
+    @Override
+    public int deletedSize() {
+        return localShards().stream().mapToInt(CompactableStore::deletedSize).sum();
+    }
+    
+    /**
+     * Compact the shards of this JVM one after the other, so at most one of them is being copied at a time.
+     * Remote shards compact on their own node.
+     */
+    @Override
+    public int compact() {
+        int reclaimed = 0;
+        for (CompactableStore shard : localShards()) {
+            reclaimed += shard.compact();
+        }
+        return reclaimed;
+    }
+    
+    private List<CompactableStore> localShards() {
+        List<CompactableStore> local = new ArrayList<>();
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            if (shard instanceof CompactableStore compactable) {
+                local.add(compactable);
+            }
+        }
+        return local;
+    }
+    
+    /**
+     * Shards that missed the search deadline, summed over all searches.
+     */
+    public long timeouts() {
+        return timeouts.get();
+    }
+    
+    /**
+     * Shards that failed a search, summed over all searches.
+     */
+    public long failures() {
+        return failures.get();
+    }
+    
+    /**
+     * Searches answered without at least one of the shards asked.
+     */
+    public long partialSearches() {
+        return partialSearches.get();
+    }
+    
+    /**
+     * Close the shards once the searches and writes still running on them have finished. They are not
+     * interrupted, since an interrupt closes the file channels of a local shard before it is persisted.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Shard operations still running after {} s, closing the shards anyway",
+                        CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException failure = null;
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            if (shard instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private static void awaitAll(List<Future<?>> futures, String operation) {
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException cause
+                            ? cause
+                            : new IllegalStateException("Shard " + operation + " failed", e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted during shard " + operation, e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
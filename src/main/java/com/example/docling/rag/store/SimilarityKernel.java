@@ -0,0 +1,33 @@
+package com.example.docling.rag.store;
+
+/**
+ * Dot product of a query with a vector stored at an offset in a flat {@code float[]} arena.
+ * <p>
+ * {@link #create(boolean)} returns a kernel using the JDK Vector API when the
+ * {@code jdk.incubator.vector} module is present (started with {@code --add-modules jdk.incubator.vector}),
+ * and the scalar loop otherwise.
+ */
+interface SimilarityKernel {
+    
+    SimilarityKernel SCALAR = SimilarityKernel::scalarDot;
+    
+    float dot(float[] arena, int offset, float[] query);
+    
+    /**
+     * The vectorized kernel if requested and available, otherwise the scalar one.
+     */
+    static SimilarityKernel create(boolean vectorized) {
+        if (vectorized && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return new VectorizedSimilarityKernel();
+        }
+        return SCALAR;
+    }
+    
+    static float scalarDot(float[] arena, int offset, float[] query) {
+        float dot = 0f;
+        for (int i = 0; i < query.length; i++) {
+            dot += arena[offset + i] * query[i];
+        }
+        return dot;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.docling.rag.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded min-heap of the {@code k} best scored ordinals, kept in primitive arrays so offering a
+ * candidate never allocates. Not thread-safe: each search thread fills its own instance.
+ */
+final class TopK {
+    
+    private final int[] ordinals;
+    private final float[] scores;
+    private int size;
+    
+    TopK(int k) {
+        this.ordinals = new int[k];
+        this.scores = new float[k];
+    }
+    
+    /**
+     * Whether a candidate with this score would be kept.
+     */
+    boolean accepts(float score) {
+        return size < ordinals.length || score > scores[0];
+    }
+    
+    void offer(int ordinal, float score) {
+        if (size < ordinals.length) {
+            ordinals[size] = ordinal;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            ordinals[0] = ordinal;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+    
+    /**
+     * Offer every entry of another heap, for merging the results of parallel scans.
+     */
+    void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ordinals[i], other.scores[i]);
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * The kept entries, best first.
+     */
+    List<ScoredOrdinal> toSortedList() {
+        List<ScoredOrdinal> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(new ScoredOrdinal(ordinals[i], scores[i]));
+        }
+        sorted.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return sorted;
+    }
+    
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+    
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+    
+    private void swap(int a, int b) {
+        int ordinal = ordinals[a];
+        ordinals[a] = ordinals[b];
+        ordinals[b] = ordinal;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
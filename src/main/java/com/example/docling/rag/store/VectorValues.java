@@ -0,0 +1,37 @@
+package com.example.docling.rag.store;
+
+/**
+ * Random access to stored vectors by ordinal.
+ * Implemented by the embedding stores so an index can score vectors without copying them.
+ */
+public interface VectorValues {
+    
+    int dimension();
+    
+    /**
+     * Return the vector stored at the given ordinal.
+     */
+    float[] vector(int ordinal);
+    
+    /**
+     * Cosine similarity between a query and the vector stored at the given ordinal.
+     */
+    default double similarity(float[] query, int ordinal) {
+        return cosine(query, vector(ordinal));
+    }
+    
+    static double cosine(float[] a, float[] b) {
+        float dot = 0f;
+        float normA = 0f;
+        float normB = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0f || normB == 0f) {
+            return 0.0;
+        }
+        return dot / Math.sqrt((double) normA * normB);
+    }
+}
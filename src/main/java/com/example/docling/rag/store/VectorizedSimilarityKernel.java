@@ -0,0 +1,36 @@
+package com.example.docling.rag.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link SimilarityKernel} on the JDK Vector API, using the widest lanes the CPU supports.
+ * Only loaded when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorizedSimilarityKernel implements SimilarityKernel {
+    
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    
+    @Override
+    public float dot(float[] arena, int offset, float[] query) {
+        int dimension = query.length;
+        int bound = SPECIES.loopBound(dimension);
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vector = FloatVector.fromArray(SPECIES, arena, offset + i);
+            sum = vector.fma(FloatVector.fromArray(SPECIES, query, i), sum);
+        }
+        float dot = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            dot += arena[offset + i] * query[i];
+        }
+        return dot;
+    }
+    
+    @Override
+    public String toString() {
+        return "Vector API (" + SPECIES.length() + " lanes)";
+    }
+}